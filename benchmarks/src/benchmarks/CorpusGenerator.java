@@ -0,0 +1,149 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Reproducible synthetic corpus: Zipf distributed words, fixed length documents.
+//
+// The vocabulary grows with the corpus following Heaps' law and the word of rank r is r written in bijective base 26
+// (a, b, ..., z, aa, ab, ...), so frequent words are short like in natural text and prefixes of every length have
+// many completions. Document i only depends on the seed and i, so a corpus can be regenerated or streamed to a file
+// without keeping it in memory.
+public final class CorpusGenerator {
+
+    public static final long DEFAULT_SEED = 42;
+    public static final int WORDS_PER_DOCUMENT = 50;
+    public static final double ZIPF_EXPONENT = 1.0;
+
+    private final long seed;
+    private final int wordsPerDocument;
+    private final double[] cumulative;
+    private final String[] words;
+
+    public CorpusGenerator(long seed, int vocabularySize, double exponent, int wordsPerDocument) {
+        this.seed = seed;
+        this.wordsPerDocument = wordsPerDocument;
+        this.cumulative = new double[vocabularySize];
+        this.words = new String[vocabularySize];
+        double sum = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+            words[rank] = word(rank);
+        }
+    }
+
+    // The corpus used by the benchmarks for the given number of documents.
+    public static CorpusGenerator forDocuments(int documentCount) {
+        return new CorpusGenerator(DEFAULT_SEED, vocabularySize(documentCount), ZIPF_EXPONENT, WORDS_PER_DOCUMENT);
+    }
+
+    // Heaps' law V = K * N^beta with K = 40 and beta = 0.5, N the total number of words.
+    public static int vocabularySize(int documentCount) {
+        double tokens = (double) documentCount * WORDS_PER_DOCUMENT;
+        return (int) Math.min(2_000_000, Math.max(1_000, 40 * Math.sqrt(tokens)));
+    }
+
+    public int vocabularySize() {
+        return words.length;
+    }
+
+    public String document(int id) {
+        SplittableRandom random = random(id);
+        StringBuilder text = new StringBuilder(wordsPerDocument * 6);
+        for (int i = 0; i < wordsPerDocument; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(words[sampleRank(random)]);
+        }
+        return text.toString();
+    }
+
+    // One document per line, line number = doc ID, the format MemoryMappedSearchImpl.scanning reads.
+    public void writeLines(Path file, int documentCount) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int id = 0; id < documentCount; id++) {
+                writer.write(document(id));
+                writer.newLine();
+            }
+        }
+    }
+
+    // Query words drawn from the same distribution as the documents, so popular words are queried most.
+    public String[] words(int count, long querySeed) {
+        SplittableRandom random = new SplittableRandom(querySeed);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = words[sampleRank(random)];
+        }
+        return result;
+    }
+
+    // Two consecutive words of a random document, so every phrase matches at least once.
+    public String[] phrases(int count, int documentCount, long querySeed) {
+        SplittableRandom random = new SplittableRandom(querySeed);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            String[] tokens = document(random.nextInt(documentCount)).split(" ");
+            int start = random.nextInt(tokens.length - 1);
+            result[i] = tokens[start] + " " + tokens[start + 1];
+        }
+        return result;
+    }
+
+    // The first one to three chars of query words.
+    public String[] prefixes(int count, long querySeed) {
+        SplittableRandom random = new SplittableRandom(querySeed);
+        String[] result = words(count, querySeed);
+        for (int i = 0; i < count; i++) {
+            result[i] = result[i].substring(0, Math.min(result[i].length(), 1 + random.nextInt(3)));
+        }
+        return result;
+    }
+
+    // A mix of AND, OR and NOT over query words.
+    public String[] booleanQueries(int count, long querySeed) {
+        String[] terms = words(count * 3, querySeed);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            String a = terms[3 * i];
+            String b = terms[3 * i + 1];
+            String c = terms[3 * i + 2];
+            switch (i % 3) {
+                case 0:
+                    result[i] = a + " AND " + b;
+                    break;
+                case 1:
+                    result[i] = a + " OR " + b + " AND NOT " + c;
+                    break;
+                default:
+                    result[i] = "(" + a + " OR " + b + ") AND " + c;
+                    break;
+            }
+        }
+        return result;
+    }
+
+    private SplittableRandom random(int id) {
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + id);
+    }
+
+    private int sampleRank(SplittableRandom random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+        return rank < 0 ? Math.min(-rank - 1, cumulative.length - 1) : rank;
+    }
+
+    static String word(int rank) {
+        StringBuilder word = new StringBuilder();
+        for (int n = rank + 1; n > 0; n = (n - 1) / 26) {
+            word.append((char) ('a' + (n - 1) % 26));
+        }
+        return word.reverse().toString();
+    }
+}
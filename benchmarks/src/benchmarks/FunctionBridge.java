@@ -0,0 +1,127 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+// Calls into Function and FunctionOverloadResolver, which live in the default package; see SearchBridge for why.
+final class FunctionBridge {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> FUNCTION = SearchBridge.load("Function");
+    private static final Class<?> BRUTE_FORCE = SearchBridge.load("Function$FunctionLibraryBruteForce");
+    private static final Class<?> TRIE = SearchBridge.load("Function$FunctionTrieBasedApproach");
+    private static final Class<?> RESOLVER = SearchBridge.load("FunctionOverloadResolver");
+
+    private static final MethodHandle NEW_FUNCTION = constructor(FUNCTION, String.class, List.class, boolean.class);
+    private static final MethodHandle NEW_BRUTE_FORCE = constructor(BRUTE_FORCE);
+    private static final MethodHandle NEW_TRIE = constructor(TRIE);
+    private static final MethodHandle NEW_RESOLVER = constructor(RESOLVER, long.class);
+
+    private static final MethodHandle REGISTER_BRUTE_FORCE = register(BRUTE_FORCE);
+    private static final MethodHandle REGISTER_TRIE = register(TRIE);
+    private static final MethodHandle REGISTER_RESOLVER = register(RESOLVER);
+    private static final MethodHandle FIND_BRUTE_FORCE = findMatches(BRUTE_FORCE);
+    private static final MethodHandle FIND_TRIE = findMatches(TRIE);
+    private static final MethodHandle FIND_RESOLVER = findMatches(RESOLVER);
+
+    private FunctionBridge() {
+    }
+
+    // new Function(name, argumentTypes, isVariadic)
+    static Object function(String name, List<String> argumentTypes, boolean variadic) {
+        try {
+            return NEW_FUNCTION.invoke(name, argumentTypes, variadic);
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    static Object newBruteForce(List<Object> functions) {
+        try {
+            Object library = NEW_BRUTE_FORCE.invoke();
+            for (Object function : functions) {
+                REGISTER_BRUTE_FORCE.invoke(library, function);
+            }
+            return library;
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    static Object newTrie(List<Object> functions) {
+        try {
+            Object library = NEW_TRIE.invoke();
+            for (Object function : functions) {
+                REGISTER_TRIE.invoke(library, function);
+            }
+            return library;
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    // A FunctionOverloadResolver with the given cache weight, 0 for none.
+    static Object newResolver(List<Object> functions, long cacheWeight) {
+        try {
+            Object resolver = NEW_RESOLVER.invoke(cacheWeight);
+            for (Object function : functions) {
+                REGISTER_RESOLVER.invoke(resolver, function);
+            }
+            return resolver;
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    static List<?> bruteForceMatches(Object library, List<String> args) {
+        try {
+            return (List<?>) FIND_BRUTE_FORCE.invokeExact(library, args);
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    static List<?> trieMatches(Object library, List<String> args) {
+        try {
+            return (List<?>) FIND_TRIE.invokeExact(library, args);
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    static List<?> resolverMatches(Object resolver, List<String> args) {
+        try {
+            return (List<?>) FIND_RESOLVER.invokeExact(resolver, args);
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    private static MethodHandle register(Class<?> library) {
+        return virtual(library, "registerFunction", void.class, FUNCTION)
+                .asType(MethodType.methodType(void.class, Object.class, Object.class));
+    }
+
+    private static MethodHandle findMatches(Class<?> library) {
+        return virtual(library, "findMatches", List.class, List.class)
+                .asType(MethodType.methodType(List.class, Object.class, List.class));
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return LOOKUP.findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            return LOOKUP.findConstructor(owner, MethodType.methodType(void.class, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Overload resolution on the brute-force library, the HashMap trie and FunctionOverloadResolver with and without its
+// cache, over the same seeded library of functions.
+//
+// Signatures have up to 6 argument types out of 64, the common types much more likely than the rare ones; a quarter
+// of the functions are variadic. Half of the calls are the signature of a registered function, variadic tails
+// repeated up to 5 more times; the other half are random argument lists, most of which match nothing. The calls are
+// drawn with a skew from 4096 distinct argument lists, so the cached resolver mostly measures repeated lists.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class FunctionResolutionBenchmark {
+
+    private static final int TYPE_COUNT = 64;
+    private static final int MAX_ARITY = 6;
+    private static final int DISTINCT_CALLS = 4096;
+    private static final int CALL_COUNT = 4096;
+    private static final long SEED = 11;
+    private static final long CACHE_WEIGHT = 1 << 16;
+
+    @Param({"100", "1000", "10000"})
+    public int functions;
+
+    private Object bruteForce;
+    private Object trie;
+    private Object resolver;
+    private Object cachedResolver;
+    private List<List<String>> calls;
+
+    @State(Scope.Thread)
+    public static class CallCursor {
+        private int next;
+
+        int next() {
+            return next++ & (CALL_COUNT - 1);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        List<Object> library = new ArrayList<>(functions);
+        List<List<String>> signatures = new ArrayList<>(functions);
+        List<Boolean> variadic = new ArrayList<>(functions);
+        for (int i = 0; i < functions; i++) {
+            int arity = random.nextInt(MAX_ARITY + 1);
+            boolean isVariadic = arity > 0 && random.nextInt(4) == 0;
+            List<String> argumentTypes = new ArrayList<>(arity);
+            for (int j = 0; j < arity; j++) {
+                argumentTypes.add(type(random));
+            }
+            library.add(FunctionBridge.function("f" + i, argumentTypes, isVariadic));
+            signatures.add(argumentTypes);
+            variadic.add(isVariadic);
+        }
+        bruteForce = FunctionBridge.newBruteForce(library);
+        trie = FunctionBridge.newTrie(library);
+        resolver = FunctionBridge.newResolver(library, 0);
+        cachedResolver = FunctionBridge.newResolver(library, CACHE_WEIGHT);
+
+        List<List<String>> distinct = new ArrayList<>(DISTINCT_CALLS);
+        for (int i = 0; i < DISTINCT_CALLS; i++) {
+            List<String> args;
+            if (random.nextBoolean()) {
+                int function = random.nextInt(functions);
+                args = new ArrayList<>(signatures.get(function));
+                if (variadic.get(function)) {
+                    for (int extra = random.nextInt(6); extra > 0; extra--) {
+                        args.add(args.get(args.size() - 1));
+                    }
+                }
+            } else {
+                args = new ArrayList<>();
+                for (int arity = random.nextInt(MAX_ARITY + 2); arity > 0; arity--) {
+                    args.add(type(random));
+                }
+            }
+            distinct.add(List.copyOf(args));
+        }
+        calls = new ArrayList<>(CALL_COUNT);
+        for (int i = 0; i < CALL_COUNT; i++) {
+            int call = (int) Math.abs(random.nextGaussian() * DISTINCT_CALLS / 4);
+            calls.add(distinct.get(Math.min(DISTINCT_CALLS - 1, call)));
+        }
+    }
+
+    @Benchmark
+    public List<?> bruteForce(CallCursor cursor) {
+        return FunctionBridge.bruteForceMatches(bruteForce, calls.get(cursor.next()));
+    }
+
+    @Benchmark
+    public List<?> trie(CallCursor cursor) {
+        return FunctionBridge.trieMatches(trie, calls.get(cursor.next()));
+    }
+
+    @Benchmark
+    public List<?> resolver(CallCursor cursor) {
+        return FunctionBridge.resolverMatches(resolver, calls.get(cursor.next()));
+    }
+
+    @Benchmark
+    public List<?> cachedResolver(CallCursor cursor) {
+        return FunctionBridge.resolverMatches(cachedResolver, calls.get(cursor.next()));
+    }
+
+    // Type 0 is the most common, like int or string in real signatures.
+    private static String type(Random random) {
+        return "type" + Math.min(TYPE_COUNT - 1, (int) Math.abs(random.nextGaussian() * TYPE_COUNT / 6));
+    }
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+// Retained heap of each implementation's index, measured as the used heap after a full GC with and without it.
+// JMH has no good way to report this, so it is a plain main:
+//
+//   java -Xmx8g -cp ... benchmarks.HeapFootprint 1000 10000 100000
+public final class HeapFootprint {
+
+    private HeapFootprint() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] sizes = args.length > 0 ? args : new String[]{"1000", "10000", "100000"};
+        System.out.printf("%-18s %10s %10s %12s %12s%n", "implementation", "documents", "vocabulary", "heap MB",
+                "bytes/doc");
+        for (String size : sizes) {
+            int documents = Integer.parseInt(size);
+            try (Implementation.Corpus corpus = new Implementation.Corpus(documents)) {
+                for (Implementation implementation : Implementation.values()) {
+                    long before = usedAfterGc();
+                    List<Object> retained = new ArrayList<>();
+                    retained.add(implementation.build(corpus));
+                    long after = usedAfterGc();
+                    System.out.printf("%-18s %10d %10d %12.1f %12.0f%n", implementation, documents,
+                            corpus.generator().vocabularySize(), (after - before) / 1e6,
+                            (double) (after - before) / documents);
+                    retained.clear();
+                }
+            }
+        }
+    }
+
+    private static long usedAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
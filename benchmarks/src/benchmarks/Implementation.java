@@ -0,0 +1,101 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// The SearchService implementations under benchmark and how to build each of them from the loaded corpus.
+public enum Implementation {
+
+    NAIVE {
+        @Override
+        Object build(Corpus corpus) {
+            return SearchBridge.create("SearchNaiveImplementation");
+        }
+    },
+    INVERTED_INDEX {
+        @Override
+        Object build(Corpus corpus) {
+            return SearchBridge.create("InvertedIndexBasedSearch");
+        }
+    },
+    TRIE {
+        @Override
+        Object build(Corpus corpus) {
+            return SearchBridge.create("TrieBasedSearchImpl");
+        }
+    },
+    DOUBLE_ARRAY_TRIE {
+        @Override
+        Object build(Corpus corpus) {
+            return SearchBridge.create("DoubleArrayTrieSearchImpl");
+        }
+    },
+    // Scans the raw line file for every query.
+    MMAP_SCAN {
+        @Override
+        Object build(Corpus corpus) {
+            return SearchBridge.callStatic("MemoryMappedSearchImpl", "scanning", corpus.lineFile());
+        }
+    },
+    // Writes an index segment and maps it; build time includes writing the file.
+    MMAP_SEGMENT {
+        @Override
+        Object build(Corpus corpus) {
+            Path segment = corpus.directory().resolve("index.seg");
+            SearchBridge.writeSegment(segment, SearchBridge.documents());
+            return SearchBridge.create("MemoryMappedSearchImpl", segment);
+        }
+    };
+
+    // Builds the service over the documents currently in DocumentService.
+    abstract Object build(Corpus corpus);
+
+    // A generated corpus loaded into DocumentService, plus its line file in a temporary directory.
+    public static final class Corpus implements AutoCloseable {
+        private final CorpusGenerator generator;
+        private final int documentCount;
+        private final Path directory;
+        private final Path lineFile;
+
+        public Corpus(int documentCount) {
+            this.generator = CorpusGenerator.forDocuments(documentCount);
+            this.documentCount = documentCount;
+            try {
+                this.directory = Files.createTempDirectory("search-bench");
+                this.lineFile = directory.resolve("documents.txt");
+                generator.writeLines(lineFile, documentCount);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            SearchBridge.loadDocuments(generator, documentCount);
+        }
+
+        public CorpusGenerator generator() {
+            return generator;
+        }
+
+        public int documentCount() {
+            return documentCount;
+        }
+
+        Path directory() {
+            return directory;
+        }
+
+        Path lineFile() {
+            return lineFile;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+}
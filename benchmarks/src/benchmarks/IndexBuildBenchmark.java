@@ -0,0 +1,51 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Time to build each implementation's index over the corpus, one cold build per iteration.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class IndexBuildBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int documents;
+
+    @Param({"INVERTED_INDEX", "TRIE", "DOUBLE_ARRAY_TRIE", "MMAP_SEGMENT"})
+    public Implementation implementation;
+
+    private Implementation.Corpus corpus;
+
+    @Setup(Level.Trial)
+    public void loadCorpus() {
+        corpus = new Implementation.Corpus(documents);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        corpus.close();
+    }
+
+    @Benchmark
+    public Object build() {
+        return implementation.build(corpus);
+    }
+}
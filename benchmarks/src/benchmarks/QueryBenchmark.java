@@ -0,0 +1,113 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Throughput and latency distribution of every query type on every implementation.
+//
+// Each invocation runs the next query of a fixed, seeded list drawn from the corpus distribution, so popular words
+// are queried most often, as in real traffic. Query types an implementation does not support fail with
+// UnsupportedOperationException and show up as errors in the JMH report.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+    private static final long QUERY_SEED = 7;
+    private static final int PAGE_SIZE = 10;
+
+    @Param({"1000", "10000", "100000"})
+    public int documents;
+
+    @Param({"NAIVE", "INVERTED_INDEX", "TRIE", "DOUBLE_ARRAY_TRIE", "MMAP_SCAN", "MMAP_SEGMENT"})
+    public Implementation implementation;
+
+    private Implementation.Corpus corpus;
+    private Object service;
+    private String[] words;
+    private String[] phrases;
+    private String[] prefixes;
+    private String[] booleanQueries;
+
+    @State(Scope.Thread)
+    public static class QueryCursor {
+        private final int[] page = new int[PAGE_SIZE];
+        private int next;
+
+        int next() {
+            return next++ & (QUERY_COUNT - 1);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = new Implementation.Corpus(documents);
+        service = implementation.build(corpus);
+        CorpusGenerator generator = corpus.generator();
+        words = generator.words(QUERY_COUNT, QUERY_SEED);
+        phrases = generator.phrases(QUERY_COUNT, documents, QUERY_SEED);
+        prefixes = generator.prefixes(QUERY_COUNT, QUERY_SEED);
+        booleanQueries = generator.booleanQueries(QUERY_COUNT, QUERY_SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        corpus.close();
+    }
+
+    @Benchmark
+    public Set<Integer> word(QueryCursor cursor) {
+        return SearchBridge.searchWord(service, words[cursor.next()]);
+    }
+
+    @Benchmark
+    public Set<Integer> phrase(QueryCursor cursor) {
+        return SearchBridge.searchPhrase(service, phrases[cursor.next()]);
+    }
+
+    @Benchmark
+    public Set<Integer> prefix(QueryCursor cursor) {
+        return SearchBridge.searchPrefix(service, prefixes[cursor.next()]);
+    }
+
+    @Benchmark
+    public Set<Integer> booleanQuery(QueryCursor cursor) {
+        return SearchBridge.searchBooleanQuery(service, booleanQueries[cursor.next()]);
+    }
+
+    // The first page of results through the lazy iterators, for comparison with the full word and prefix results.
+    @Benchmark
+    public int wordPage(QueryCursor cursor) {
+        return SearchBridge.wordPage(service, words[cursor.next()], cursor.page);
+    }
+
+    @Benchmark
+    public int prefixPage(QueryCursor cursor) {
+        return SearchBridge.prefixPage(service, prefixes[cursor.next()], cursor.page);
+    }
+
+    @Benchmark
+    public List<String> autoComplete(QueryCursor cursor) {
+        return SearchBridge.autoCompleteSuggestions(service, prefixes[cursor.next()]);
+    }
+}
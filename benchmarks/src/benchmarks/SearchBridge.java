@@ -0,0 +1,210 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+// Calls into the search classes, which live in the default package.
+//
+// JMH refuses benchmarks in the default package and Java cannot import default-package classes from a named one, so
+// the benchmarks hold the services as Object and go through method handles. The handles are static final constants,
+// which the JIT inlines like a direct interface call.
+final class SearchBridge {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> SEARCH_SERVICE = load("SearchService");
+    private static final Class<?> DOCUMENT = load("Document");
+    private static final Class<?> DOCUMENT_SERVICE = load("DocumentService");
+    private static final Class<?> DOC_ID_ITERATOR = load("DocIdIterator");
+
+    private static final MethodHandle SEARCH_WORD = service("searchWord", Set.class, String.class);
+    private static final MethodHandle SEARCH_PHRASE = service("searchPhrase", Set.class, String.class);
+    private static final MethodHandle SEARCH_PREFIX = service("searchPrefix", Set.class, String.class);
+    private static final MethodHandle SEARCH_BOOLEAN = service("searchBooleanQuery", Set.class, String.class);
+    private static final MethodHandle AUTO_COMPLETE = service("autoCompleteSuggestions", List.class, String.class);
+    private static final MethodHandle ITERATE_WORD = service("iterateWord", DOC_ID_ITERATOR, String.class)
+            .asType(MethodType.methodType(Object.class, Object.class, String.class));
+    private static final MethodHandle ITERATE_PREFIX = service("iteratePrefix", DOC_ID_ITERATOR, String.class)
+            .asType(MethodType.methodType(Object.class, Object.class, String.class));
+    private static final MethodHandle NEXT_DOCS = virtual(DOC_ID_ITERATOR, "nextDocs", int.class, int[].class)
+            .asType(MethodType.methodType(int.class, Object.class, int[].class));
+
+    private static final MethodHandle NEW_DOCUMENT = constructor(DOCUMENT, int.class, String.class);
+    private static final MethodHandle NEW_DOCUMENT_SERVICE = constructor(DOCUMENT_SERVICE);
+    private static final MethodHandle ADD_DOCUMENT = virtual(DOCUMENT_SERVICE, "addDocument", void.class, DOCUMENT);
+    private static final MethodHandle DELETE_DOCUMENT = virtual(DOCUMENT_SERVICE, "deleteDocument", boolean.class, int.class);
+    private static final MethodHandle GET_DOCUMENTS = virtual(DOCUMENT_SERVICE, "getDocuments", List.class);
+
+    private SearchBridge() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<Integer> searchWord(Object service, String word) {
+        try {
+            return (Set<Integer>) SEARCH_WORD.invokeExact(service, word);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<Integer> searchPhrase(Object service, String phrase) {
+        try {
+            return (Set<Integer>) SEARCH_PHRASE.invokeExact(service, phrase);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<Integer> searchPrefix(Object service, String prefix) {
+        try {
+            return (Set<Integer>) SEARCH_PREFIX.invokeExact(service, prefix);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<Integer> searchBooleanQuery(Object service, String query) {
+        try {
+            return (Set<Integer>) SEARCH_BOOLEAN.invokeExact(service, query);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<String> autoCompleteSuggestions(Object service, String prefix) {
+        try {
+            return (List<String>) AUTO_COMPLETE.invokeExact(service, prefix);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // The first page.length documents of iterateWord; returns how many there were.
+    static int wordPage(Object service, String word, int[] page) {
+        try {
+            return (int) NEXT_DOCS.invokeExact(ITERATE_WORD.invokeExact(service, word), page);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // The first page.length documents of iteratePrefix; returns how many there were.
+    static int prefixPage(Object service, String prefix, int[] page) {
+        try {
+            return (int) NEXT_DOCS.invokeExact(ITERATE_PREFIX.invokeExact(service, prefix), page);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // Replaces everything in DocumentService with the first count documents of the corpus.
+    static void loadDocuments(CorpusGenerator corpus, int count) {
+        try {
+            Object documentService = NEW_DOCUMENT_SERVICE.invoke();
+            for (Object document : (List<?>) GET_DOCUMENTS.invoke(documentService)) {
+                DELETE_DOCUMENT.invoke(documentService, id(document));
+            }
+            for (int id = 0; id < count; id++) {
+                ADD_DOCUMENT.invoke(documentService, NEW_DOCUMENT.invoke(id, corpus.document(id)));
+            }
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static List<?> documents() {
+        try {
+            return (List<?>) GET_DOCUMENTS.invoke(NEW_DOCUMENT_SERVICE.invoke());
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // new className()
+    static Object create(String className) {
+        try {
+            return LOOKUP.findConstructor(load(className), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // new className(path)
+    static Object create(String className, Path path) {
+        try {
+            return LOOKUP.findConstructor(load(className), MethodType.methodType(void.class, Path.class)).invoke(path);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // className.method(path)
+    static Object callStatic(String className, String method, Path path) {
+        try {
+            Class<?> type = load(className);
+            return LOOKUP.findStatic(type, method, MethodType.methodType(type, Path.class)).invoke(path);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // SegmentWriter.write(path, documents)
+    static void writeSegment(Path path, List<?> documents) {
+        try {
+            LOOKUP.findStatic(load("SegmentWriter"), "write", MethodType.methodType(void.class, Path.class, List.class))
+                    .invoke(path, documents);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    private static int id(Object document) throws Throwable {
+        return (int) LOOKUP.findVirtual(DOCUMENT, "getId", MethodType.methodType(int.class)).invoke(document);
+    }
+
+    private static MethodHandle service(String name, Class<?> returnType, Class<?> parameter) {
+        return virtual(SEARCH_SERVICE, name, returnType, parameter)
+                .asType(MethodType.methodType(returnType, Object.class, parameter));
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return LOOKUP.findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            return LOOKUP.findConstructor(owner, MethodType.methodType(void.class, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Class<?> load(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Search classes must be on the class path: " + className, e);
+        }
+    }
+
+    static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,146 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// SudokuEngine validating and solving one board at a time and in batches, in boards per second.
+//
+// Puzzles are random solved grids (a base grid with its digits, rows within a band, bands, columns within a stack and
+// stacks shuffled) with all but the given number of clues removed at random, so a puzzle can have several solutions.
+// Fewer clues means more search; the batch benchmarks hand all BATCH puzzles to the engine at once and spread them
+// over the cores.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SudokuBenchmark {
+
+    private static final int BATCH = 1 << 16;
+    private static final long SEED = 17;
+
+    @Param({"25", "35"})
+    public int clues;
+
+    private byte[][] puzzles;
+
+    @State(Scope.Thread)
+    public static class Solver {
+        private final Object engine = SudokuBridge.newEngine();
+        private final byte[] board = new byte[81];
+        private int next;
+
+        byte[] next(byte[][] puzzles) {
+            System.arraycopy(puzzles[next++ & (BATCH - 1)], 0, board, 0, board.length);
+            return board;
+        }
+    }
+
+    // Fresh copies of the puzzles for a batch, since solving fills them in.
+    @State(Scope.Thread)
+    public static class Batch {
+        private byte[][] boards;
+
+        @Setup(Level.Invocation)
+        public void copy(SudokuBenchmark benchmark) {
+            if (boards == null) {
+                boards = new byte[BATCH][81];
+            }
+            for (int i = 0; i < BATCH; i++) {
+                System.arraycopy(benchmark.puzzles[i], 0, boards[i], 0, 81);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        puzzles = new byte[BATCH][];
+        for (int i = 0; i < BATCH; i++) {
+            puzzles[i] = puzzle(random, clues);
+        }
+    }
+
+    @Benchmark
+    public boolean validate(Solver solver) {
+        return SudokuBridge.isValid(solver.next(puzzles));
+    }
+
+    @Benchmark
+    public boolean solve(Solver solver) {
+        return SudokuBridge.solve(solver.engine, solver.next(puzzles));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean[] validateBatch() {
+        return SudokuBridge.validateAll(puzzles);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean[] solveBatch(Batch batch) {
+        return SudokuBridge.solveAll(batch.boards);
+    }
+
+    private static byte[] puzzle(Random random, int clues) {
+        int[] digits = shuffled(random, 9);
+        int[] rows = lines(random);
+        int[] columns = lines(random);
+        byte[] board = new byte[81];
+        for (int row = 0; row < 9; row++) {
+            for (int column = 0; column < 9; column++) {
+                int r = rows[row];
+                int c = columns[column];
+                board[row * 9 + column] = (byte) (digits[(r * 3 + r / 3 + c) % 9] + 1);
+            }
+        }
+        int[] cells = shuffled(random, 81);
+        for (int i = clues; i < 81; i++) {
+            board[cells[i]] = 0;
+        }
+        return board;
+    }
+
+    // A permutation of the 9 rows (or columns) that keeps the grid valid: bands shuffled, lines within each band too.
+    private static int[] lines(Random random) {
+        int[] bands = shuffled(random, 3);
+        int[] lines = new int[9];
+        for (int band = 0; band < 3; band++) {
+            int[] within = shuffled(random, 3);
+            for (int i = 0; i < 3; i++) {
+                lines[band * 3 + i] = bands[band] * 3 + within[i];
+            }
+        }
+        return lines;
+    }
+
+    private static int[] shuffled(Random random, int size) {
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+        return values;
+    }
+}
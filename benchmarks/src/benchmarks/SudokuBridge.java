@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// Calls into SudokuEngine, which lives in the default package; see SearchBridge for why.
+final class SudokuBridge {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> ENGINE = SearchBridge.load("SudokuEngine");
+
+    private static final MethodHandle NEW_ENGINE = constructor();
+    private static final MethodHandle IS_VALID = method(false, "isValid", boolean.class, byte[].class);
+    private static final MethodHandle SOLVE = method(true, "solve", boolean.class, byte[].class)
+            .asType(MethodType.methodType(boolean.class, Object.class, byte[].class));
+    private static final MethodHandle SOLVE_ALL = method(false, "solveAll", boolean[].class, byte[][].class);
+    private static final MethodHandle VALIDATE_ALL = method(false, "validateAll", boolean[].class, byte[][].class);
+
+    private SudokuBridge() {
+    }
+
+    static Object newEngine() {
+        try {
+            return NEW_ENGINE.invoke();
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    static boolean isValid(byte[] board) {
+        try {
+            return (boolean) IS_VALID.invokeExact(board);
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    static boolean solve(Object engine, byte[] board) {
+        try {
+            return (boolean) SOLVE.invokeExact(engine, board);
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    static boolean[] solveAll(byte[][] boards) {
+        try {
+            return (boolean[]) SOLVE_ALL.invokeExact(boards);
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    static boolean[] validateAll(byte[][] boards) {
+        try {
+            return (boolean[]) VALIDATE_ALL.invokeExact(boards);
+        } catch (Throwable t) {
+            throw SearchBridge.propagate(t);
+        }
+    }
+
+    private static MethodHandle method(boolean virtual, String name, Class<?> returnType, Class<?>... parameters) {
+        MethodType type = MethodType.methodType(returnType, parameters);
+        try {
+            return virtual ? LOOKUP.findVirtual(ENGINE, name, type) : LOOKUP.findStatic(ENGINE, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle constructor() {
+        try {
+            return LOOKUP.findConstructor(ENGINE, MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
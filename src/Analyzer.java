@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// Turns text into index terms: tokenize -> lowercase -> drop stopwords -> stem, in one pass over the chars.
+//
+// A token is a run of letters and digits, everything else separates tokens, so "Hello, World!" gives "hello" and
+// "world". Tokens are never materialised: every term is written into one char buffer that is reused for the whole text
+// and handed to a TokenConsumer as (buffer, offset, length, position). Builders look the term up in a TermDictionary
+// and only create a String the first time they see it, so indexing allocates per distinct term instead of per word.
+// Positions count the emitted terms, a dropped stopword does not leave a gap.
+//
+// Index builders and query parsers must use the same analyzer, otherwise query terms do not match indexed terms.
+// Instances are immutable and safe to share between threads.
+public class Analyzer {
+
+    // Receives the terms of a text. The buffer is only valid during the call and is overwritten by the next term.
+    public interface TokenConsumer {
+        void accept(char[] buffer, int offset, int length, int position);
+    }
+
+    // What every index in this project uses: lowercased letter/digit runs, no stopwords, no stemming.
+    public static final Analyzer STANDARD = new Analyzer(null, false);
+
+    public static final List<String> ENGLISH_STOPWORDS = List.of("a", "an", "and", "are", "as", "at", "be", "but",
+            "by", "for", "if", "in", "into", "is", "it", "no", "not", "of", "on", "or", "such", "that", "the", "their",
+            "then", "there", "these", "they", "this", "to", "was", "will", "with");
+
+    private final TermDictionary stopwords;
+    private final boolean stemming;
+
+    private Analyzer(TermDictionary stopwords, boolean stemming) {
+        this.stopwords = stopwords;
+        this.stemming = stemming;
+    }
+
+    // A copy of this analyzer that drops the given words; they are matched after lowercasing.
+    public Analyzer withStopwords(Collection<String> words) {
+        TermDictionary set = new TermDictionary();
+        for (String word : words) {
+            set.add(word.toLowerCase());
+        }
+        return new Analyzer(set, stemming);
+    }
+
+    // A copy of this analyzer that strips English plural endings, see stem().
+    public Analyzer withStemming() {
+        return new Analyzer(stopwords, true);
+    }
+
+    // Streams the terms of the text to the consumer and returns how many there were.
+    public int analyze(CharSequence text, TokenConsumer consumer) {
+        return analyze(text, 0, text.length(), consumer);
+    }
+
+    // Same for the chars [from, to) of the text, e.g. one line of a decoded file.
+    public int analyze(CharSequence text, int from, int to, TokenConsumer consumer) {
+        char[] buffer = new char[32];
+        int position = 0;
+        int length = 0;
+        for (int i = from; i <= to; i++) {
+            char c = i < to ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length << 1);
+                }
+                buffer[length++] = Character.toLowerCase(c);
+            } else if (length > 0) {
+                // Stopwords are matched before stemming, which would turn "this" into "thi".
+                if (stopwords == null || stopwords.id(buffer, 0, length) == TermDictionary.NO_TERM) {
+                    consumer.accept(buffer, 0, stemming ? stem(buffer, length) : length, position++);
+                }
+                length = 0;
+            }
+        }
+        return position;
+    }
+
+    public int countTerms(CharSequence text) {
+        return analyze(text, (buffer, offset, length, position) -> {
+        });
+    }
+
+    // The terms of a query, in order.
+    public String[] terms(CharSequence text) {
+        List<String> terms = new ArrayList<>();
+        analyze(text, (buffer, offset, length, position) -> terms.add(new String(buffer, offset, length)));
+        return terms.toArray(new String[0]);
+    }
+
+    // The terms of a query without repeats, for scoring.
+    public String[] distinctTerms(CharSequence text) {
+        return Arrays.stream(terms(text)).distinct().toArray(String[]::new);
+    }
+
+    // A prefix as typed by a user, in the form of the indexed terms it should match: lowercased, with everything
+    // that is not a letter or digit removed. Prefixes are not stemmed, "bus" must still find "business".
+    public String normalizePrefix(CharSequence prefix) {
+        StringBuilder sb = new StringBuilder(prefix.length());
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Whether the terms of the text contain the phrase terms one after another. Streams the text, allocating only a
+    // flag per phrase term.
+    public boolean containsPhrase(CharSequence text, String[] phrase) {
+        if (phrase.length == 0) {
+            return false;
+        }
+        // matched[j]: the last j terms seen equal phrase[0 .. j).
+        boolean[] matched = new boolean[phrase.length + 1];
+        boolean[] found = new boolean[1];
+        analyze(text, (buffer, offset, length, position) -> {
+            if (found[0]) {
+                return;
+            }
+            for (int j = phrase.length; j > 0; j--) {
+                matched[j] = (j == 1 || matched[j - 1]) && equals(phrase[j - 1], buffer, offset, length);
+            }
+            found[0] = matched[phrase.length];
+        });
+        return found[0];
+    }
+
+    // Whether any term of the text starts with the prefix.
+    public boolean containsPrefix(CharSequence text, String prefix) {
+        boolean[] found = new boolean[1];
+        analyze(text, (buffer, offset, length, position) -> {
+            if (!found[0] && length >= prefix.length()) {
+                found[0] = equals(prefix, buffer, offset, prefix.length());
+            }
+        });
+        return found[0];
+    }
+
+    static boolean equals(String term, char[] buffer, int offset, int length) {
+        if (term.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (term.charAt(i) != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Harman's "S" stemmer, which only conflates singular and plural: -ies -> -y, -es -> -e, -s -> "", leaving words
+    // ending in -aies, -eies, -aes, -ees, -oes, -us and -ss alone. Cheap, in place and rarely wrong, unlike a full
+    // suffix stripper. Returns the new length.
+    static int stem(char[] term, int length) {
+        if (length < 3 || term[length - 1] != 's') {
+            return length;
+        }
+        char second = term[length - 2];
+        char third = term[length - 3];
+        if (second == 'e' && third == 'i' && !(length >= 4 && (term[length - 4] == 'e' || term[length - 4] == 'a'))) {
+            term[length - 3] = 'y';
+            return length - 2;
+        }
+        if (second == 'e' && (third == 'a' || third == 'e' || third == 'o')) {
+            return length;
+        }
+        if (second == 'e') {
+            return length - 1;
+        }
+        if (second == 'u' || second == 's') {
+            return length;
+        }
+        return length - 1;
+    }
+}
@@ -0,0 +1,372 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Boolean query parsing, planning and evaluation over posting lists.
+//
+// Grammar (operators are upper case, adjacent terms are an implicit AND):
+//   or      := and ("OR" and)*
+//   and     := not (["AND"] not)*
+//   not     := "NOT" not | primary
+//   primary := "(" or ")" | term
+//
+// parse() only builds the syntax tree. plan() resolves every term to its postings once, flattens nested AND/OR,
+// and orders each conjunction from the cheapest operand to the most expensive so intersections start from the
+// smallest set; NOT operands of a conjunction become ANDNOTs applied last. Evaluation short-circuits as soon as a
+// conjunction is empty and works on DocIdBitmaps instead of HashSets. Terms that are ANDed onto a small intermediate
+// result are probed by galloping through their postings rather than being materialized.
+//
+// Terms go through the same Analyzer as the indexed documents. A term that analyzes into several terms ("e-mail") is
+// the AND of them, one that analyzes into none ("!!!") matches nothing.
+public class BooleanQuery {
+
+    // What a plan needs from an index.
+    public interface TermIndex {
+
+        // Postings of the term, or null if the index does not contain it.
+        PostingList postings(String term);
+
+        // Every live document, the universe that a top level NOT is evaluated against.
+        DocIdBitmap allDocuments();
+
+        // Documents of the term, empty if the index does not contain it. A QueryBatch hands out one shared copy per
+        // term.
+        default DocIdBitmap documents(String term) {
+            PostingList postings = postings(term);
+            return postings == null ? DocIdBitmap.EMPTY : DocIdBitmap.of(postings);
+        }
+    }
+
+    private BooleanQuery() {
+    }
+
+    public static DocIdBitmap search(String query, TermIndex index) {
+        return search(query, index, Analyzer.STANDARD);
+    }
+
+    public static DocIdBitmap search(String query, TermIndex index, Analyzer analyzer) {
+        return plan(parse(query, analyzer), index).evaluate(index);
+    }
+
+    public static Node parse(String query) {
+        return parse(query, Analyzer.STANDARD);
+    }
+
+    public static Node parse(String query, Analyzer analyzer) {
+        Parser parser = new Parser(tokenize(query), analyzer);
+        if (parser.tokens.isEmpty()) {
+            return new Or(new ArrayList<>());
+        }
+        Node node = parser.parseOr();
+        if (parser.position != parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + parser.tokens.get(parser.position) + "' in query: " + query);
+        }
+        return node;
+    }
+
+    public static Node plan(Node node, TermIndex index) {
+        return node.plan(index);
+    }
+
+    // How the query runs against the index, for slow query logs: the planned tree of a boolean query, e.g.
+    // AND(rare[3], common[1200], NOT spam[40]), and the terms with their document counts for word, phrase and ranked
+    // queries. Prefixes depend on the index's dictionary and only get their text.
+    public static String explain(SearchQuery query, TermIndex index, Analyzer analyzer) {
+        switch (query.getType()) {
+            case BOOLEAN:
+                return plan(parse(query.getText(), analyzer), index).toString();
+            case WORD:
+            case PHRASE:
+                return query.getType() + termCosts(analyzer.terms(query.getText()), index);
+            case RANKED:
+                return "TOP " + query.getK() + " " + termCosts(analyzer.distinctTerms(query.getText()), index);
+            default:
+                return query.getType() + "(" + query.getText() + ")";
+        }
+    }
+
+    private static String termCosts(String[] terms, TermIndex index) {
+        List<String> parts = new ArrayList<>();
+        for (String term : terms) {
+            parts.add(new Term(term).plan(index).toString());
+        }
+        return "(" + String.join(", ", parts) + ")";
+    }
+
+    public abstract static class Node {
+
+        // Upper bound of the number of documents this node can match, known once planned.
+        long cost;
+
+        abstract Node plan(TermIndex index);
+
+        abstract DocIdBitmap evaluate(TermIndex index);
+
+        public long cost() {
+            return cost;
+        }
+    }
+
+    static class Term extends Node {
+        final String term;
+        PostingList postings;
+
+        Term(String term) {
+            this.term = term;
+        }
+
+        @Override
+        Node plan(TermIndex index) {
+            Term planned = new Term(term);
+            planned.postings = index.postings(term);
+            planned.cost = planned.postings == null ? 0 : planned.postings.docCount();
+            return planned;
+        }
+
+        @Override
+        DocIdBitmap evaluate(TermIndex index) {
+            return postings == null ? DocIdBitmap.EMPTY : index.documents(term);
+        }
+
+        @Override
+        public String toString() {
+            return term + "[" + cost + "]";
+        }
+    }
+
+    static class Not extends Node {
+        final Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        Node plan(TermIndex index) {
+            Not planned = new Not(child.plan(index));
+            planned.cost = Long.MAX_VALUE;
+            return planned;
+        }
+
+        @Override
+        DocIdBitmap evaluate(TermIndex index) {
+            return index.allDocuments().andNot(child.evaluate(index));
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + child;
+        }
+    }
+
+    static class And extends Node {
+        final List<Node> children;
+        // Filled in by plan(): positive operands cheapest first, and the operands of NOT children.
+        final List<Node> excluded = new ArrayList<>();
+
+        And(List<Node> children) {
+            this.children = children;
+        }
+
+        @Override
+        Node plan(TermIndex index) {
+            And planned = new And(new ArrayList<>());
+            for (Node child : flatten(children, And.class)) {
+                Node plannedChild = child.plan(index);
+                if (plannedChild instanceof Not) {
+                    planned.excluded.add(((Not) plannedChild).child);
+                } else {
+                    planned.children.add(plannedChild);
+                }
+            }
+            planned.children.sort(Comparator.comparingLong(Node::cost));
+            planned.cost = planned.children.isEmpty() ? Long.MAX_VALUE : planned.children.get(0).cost;
+            return planned;
+        }
+
+        @Override
+        DocIdBitmap evaluate(TermIndex index) {
+            if (cost == 0) {
+                return DocIdBitmap.EMPTY;
+            }
+            DocIdBitmap result = children.isEmpty() ? index.allDocuments() : children.get(0).evaluate(index);
+            for (int i = 1; i < children.size() && !result.isEmpty(); i++) {
+                Node child = children.get(i);
+                if (child instanceof Term) {
+                    PostingList postings = ((Term) child).postings;
+                    result = postings == null ? DocIdBitmap.EMPTY : result.and(postings);
+                } else {
+                    result = result.and(child.evaluate(index));
+                }
+            }
+            for (int i = 0; i < excluded.size() && !result.isEmpty(); i++) {
+                result = result.andNot(excluded.get(i).evaluate(index));
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            List<String> parts = new ArrayList<>();
+            children.forEach(child -> parts.add(child.toString()));
+            excluded.forEach(child -> parts.add("NOT " + child));
+            return "AND(" + String.join(", ", parts) + ")";
+        }
+    }
+
+    static class Or extends Node {
+        final List<Node> children;
+
+        Or(List<Node> children) {
+            this.children = children;
+        }
+
+        @Override
+        Node plan(TermIndex index) {
+            Or planned = new Or(new ArrayList<>());
+            long cost = 0;
+            for (Node child : flatten(children, Or.class)) {
+                Node plannedChild = child.plan(index);
+                // Empty operands contribute nothing to a union.
+                if (plannedChild.cost == 0) {
+                    continue;
+                }
+                planned.children.add(plannedChild);
+                cost = cost + plannedChild.cost < 0 ? Long.MAX_VALUE : cost + plannedChild.cost;
+            }
+            planned.cost = cost;
+            return planned;
+        }
+
+        @Override
+        DocIdBitmap evaluate(TermIndex index) {
+            DocIdBitmap result = DocIdBitmap.EMPTY;
+            for (Node child : children) {
+                result = result.or(child.evaluate(index));
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            List<String> parts = new ArrayList<>();
+            children.forEach(child -> parts.add(child.toString()));
+            return "OR(" + String.join(", ", parts) + ")";
+        }
+    }
+
+    // Pulls the children of nested nodes of the same type up into one list, e.g. a AND (b AND c) -> AND(a, b, c).
+    private static List<Node> flatten(List<Node> children, Class<? extends Node> type) {
+        List<Node> flat = new ArrayList<>();
+        for (Node child : children) {
+            if (type == And.class && child instanceof And) {
+                flat.addAll(flatten(((And) child).children, type));
+            } else if (type == Or.class && child instanceof Or) {
+                flat.addAll(flatten(((Or) child).children, type));
+            } else {
+                flat.add(child);
+            }
+        }
+        return flat;
+    }
+
+    private static class Parser {
+        private final List<String> tokens;
+        private final Analyzer analyzer;
+        private int position;
+
+        Parser(List<String> tokens, Analyzer analyzer) {
+            this.tokens = tokens;
+            this.analyzer = analyzer;
+        }
+
+        Node parseOr() {
+            List<Node> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (accept("OR")) {
+                children.add(parseAnd());
+            }
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        Node parseAnd() {
+            List<Node> children = new ArrayList<>();
+            children.add(parseNot());
+            while (position < tokens.size() && !peek("OR") && !peek(")")) {
+                accept("AND");
+                children.add(parseNot());
+            }
+            return children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        Node parseNot() {
+            if (accept("NOT")) {
+                return new Not(parseNot());
+            }
+            if (accept("(")) {
+                Node node = parseOr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Missing ')' in query");
+                }
+                return node;
+            }
+            if (position == tokens.size() || isOperator(tokens.get(position))) {
+                throw new IllegalArgumentException("Expected a term at token " + position);
+            }
+            return term(tokens.get(position++));
+        }
+
+        private Node term(String token) {
+            String[] terms = analyzer.terms(token);
+            if (terms.length == 1) {
+                return new Term(terms[0]);
+            }
+            List<Node> children = new ArrayList<>();
+            for (String term : terms) {
+                children.add(new Term(term));
+            }
+            return terms.length == 0 ? new Or(children) : new And(children);
+        }
+
+        private boolean peek(String token) {
+            return position < tokens.size() && tokens.get(position).equals(token);
+        }
+
+        private boolean accept(String token) {
+            if (peek(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean isOperator(String token) {
+            return token.equals("AND") || token.equals("OR") || token.equals("NOT") || token.equals(")");
+        }
+    }
+
+    private static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (char c : query.toCharArray()) {
+            if (c == '(' || c == ')') {
+                if (sb.length() > 0) {
+                    tokens.add(sb.toString());
+                    sb.setLength(0);
+                }
+                tokens.add(String.valueOf(c));
+            } else if (Character.isWhitespace(c)) {
+                if (sb.length() > 0) {
+                    tokens.add(sb.toString());
+                    sb.setLength(0);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        if (sb.length() > 0) {
+            tokens.add(sb.toString());
+        }
+        return tokens;
+    }
+}
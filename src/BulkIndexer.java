@@ -0,0 +1,408 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+
+// Builds an index segment straight from a one-document-per-line file, the format MemoryMappedSearchImpl and
+// MappedFileScanner read, without ever holding the corpus or a Document in memory. The document ID of a line is its
+// zero-based line number, so the segment answers with the same IDs as a scan of the raw file.
+//
+// The file is mapped in windows of at most WINDOW_SIZE bytes that end on a newline, and every window is cut into
+// newline-aligned chunks. The newlines of all chunks are counted first (in parallel) so every chunk knows the ID of its
+// first line. Chunks are then decoded and analyzed in parallel, a batch of one chunk per worker at a time, each into a
+// TermPostings.Builder of its own, and the batch is folded into one in-memory run. When the estimated size of the run
+// reaches the memory budget, its terms are sorted, their postings compressed and the run is spilled to a temporary
+// file. Runs cover increasing line ranges, so at the end a k-way merge over the runs' sorted terms only has to append
+// postings in run order, and streams every term straight into a SegmentWriter. A term found in a single run is copied
+// without re-encoding.
+public class BulkIndexer {
+
+    static final long WINDOW_SIZE = 1L << 30;
+    static final int CHUNK_SIZE = 1 << 22;
+    // Rough heap cost of a collected occurrence (a packed long plus array growth) and of a new term (String, dictionary
+    // slots, builder).
+    static final int BYTES_PER_OCCURRENCE = 12;
+    static final int BYTES_PER_TERM = 128;
+
+    private final Analyzer analyzer;
+    private final long memoryBudget;
+    private final ForkJoinPool pool;
+    private final Path tempDirectory;
+
+    public BulkIndexer() {
+        this(Analyzer.STANDARD, 256L << 20, ForkJoinPool.commonPool(), Path.of(System.getProperty("java.io.tmpdir")));
+    }
+
+    // memoryBudget bounds the postings collected before a run is spilled to tempDirectory. The chunks of the batch
+    // being analyzed come on top, about parallelism * CHUNK_SIZE worth of text.
+    public BulkIndexer(Analyzer analyzer, long memoryBudget, ForkJoinPool pool, Path tempDirectory) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("memoryBudget must be positive: " + memoryBudget);
+        }
+        this.analyzer = analyzer;
+        this.memoryBudget = memoryBudget;
+        this.pool = pool;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public static class Stats {
+        private final int documentCount;
+        private final int termCount;
+        private final int runCount;
+
+        Stats(int documentCount, int termCount, int runCount) {
+            this.documentCount = documentCount;
+            this.termCount = termCount;
+            this.runCount = runCount;
+        }
+
+        public int documentCount() {
+            return documentCount;
+        }
+
+        public int termCount() {
+            return termCount;
+        }
+
+        // Runs spilled to disk, 0 if the whole index fit in the memory budget.
+        public int runCount() {
+            return runCount;
+        }
+
+        @Override
+        public String toString() {
+            return "documents=" + documentCount + " terms=" + termCount + " runs=" + runCount;
+        }
+    }
+
+    // Indexes every line of the file into a new segment at segmentPath.
+    public Stats index(Path lines, Path segmentPath) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        try {
+            Ingestion ingestion = new Ingestion(runs);
+            ingestion.readFile(lines);
+            DocLengths docLengths = DocLengths.ofPacked(ingestion.lengths, ingestion.documentCount);
+            int termCount;
+            if (runs.isEmpty()) {
+                TermPostings postings = ingestion.current.build();
+                SegmentWriter.write(segmentPath, postings, docLengths);
+                termCount = postings.termCount();
+            } else {
+                ingestion.spill();
+                termCount = mergeRuns(runs, segmentPath, docLengths);
+            }
+            return new Stats(ingestion.documentCount, termCount, runs.size());
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    // State of one index() call.
+    private class Ingestion {
+        private final List<Path> runs;
+        private TermPostings.Builder current = new TermPostings.Builder();
+        private long currentBytes;
+        private long[] lengths = new long[1024];
+        private int documentCount;
+
+        Ingestion(List<Path> runs) {
+            this.runs = runs;
+        }
+
+        void readFile(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                long start = 0;
+                while (start < size) {
+                    long length = Math.min(WINDOW_SIZE, size - start);
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    int end = (int) length;
+                    if (start + length < size) {
+                        end = lastNewline(window, end) + 1;
+                        if (end == 0) {
+                            throw new IOException("Line longer than " + WINDOW_SIZE + " bytes at offset " + start);
+                        }
+                    }
+                    readWindow(window, end, start + end == size);
+                    start += end;
+                }
+            }
+        }
+
+        private void readWindow(MappedByteBuffer window, int end, boolean lastWindow) throws IOException {
+            IntList bounds = new IntList();
+            bounds.add(0);
+            while (bounds.get(bounds.size() - 1) < end) {
+                int from = bounds.get(bounds.size() - 1);
+                int next = from + CHUNK_SIZE >= end ? end : nextLineStart(window, from + CHUNK_SIZE, end);
+                bounds.add(next);
+            }
+            int chunkCount = bounds.size() - 1;
+
+            // Lines of a chunk are the newlines in it, plus the unterminated last line of the file.
+            int[] firstDocs = new int[chunkCount + 1];
+            pool.invoke(new ParallelIndexBuilder.RangeTask(0, chunkCount,
+                    chunk -> firstDocs[chunk + 1] = countNewlines(window, bounds.get(chunk), bounds.get(chunk + 1))));
+            firstDocs[0] = documentCount;
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                firstDocs[chunk + 1] += firstDocs[chunk];
+            }
+            if (lastWindow && end > 0 && window.get(end - 1) != '\n') {
+                firstDocs[chunkCount]++;
+            }
+
+            int batchSize = pool.getParallelism();
+            for (int batchStart = 0; batchStart < chunkCount; batchStart += batchSize) {
+                int batchEnd = Math.min(chunkCount, batchStart + batchSize);
+                ChunkResult[] results = new ChunkResult[batchEnd - batchStart];
+                int first = batchStart;
+                pool.invoke(new ParallelIndexBuilder.RangeTask(batchStart, batchEnd, chunk -> results[chunk - first] =
+                        indexChunk(window, bounds.get(chunk), bounds.get(chunk + 1), firstDocs[chunk], firstDocs[chunk + 1])));
+                for (ChunkResult result : results) {
+                    add(result);
+                }
+            }
+        }
+
+        // Folds a chunk into the current run, spilling the run first if the chunk would push it over the budget.
+        private void add(ChunkResult result) throws IOException {
+            long bytes = result.occurrences * BYTES_PER_OCCURRENCE + (long) result.postings.terms().size() * BYTES_PER_TERM;
+            if (currentBytes > 0 && currentBytes + bytes > memoryBudget) {
+                spill();
+            }
+            TermDictionary terms = result.postings.terms();
+            for (int termId = 0; termId < terms.size(); termId++) {
+                current.merge(terms.term(termId), result.postings.postingsAt(termId));
+            }
+            currentBytes += bytes;
+
+            int count = result.lengths.length;
+            if (documentCount + count > lengths.length) {
+                lengths = Arrays.copyOf(lengths, Math.max(lengths.length << 1, documentCount + count));
+            }
+            System.arraycopy(result.lengths, 0, lengths, documentCount, count);
+            documentCount += count;
+        }
+
+        // Writes the current run as (term, encoded postings) records in segment term order.
+        void spill() throws IOException {
+            TermPostings postings = compress(current);
+            byte[][] termBytes = new byte[postings.termCount()][];
+            Integer[] order = new Integer[termBytes.length];
+            for (int termId = 0; termId < termBytes.length; termId++) {
+                termBytes[termId] = postings.term(termId).getBytes(StandardCharsets.UTF_8);
+                order[termId] = termId;
+            }
+            Arrays.sort(order, (a, b) -> SegmentWriter.compareUtf8(termBytes[a], termBytes[b]));
+
+            Path run = Files.createTempFile(tempDirectory, "bulk-run-", ".tmp");
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                byte[] copy = new byte[256];
+                for (int termId : order) {
+                    // The encoded buffer is read only, so it goes out through a reused copy.
+                    ByteBuffer encoded = postings.postingsAt(termId).encoded();
+                    int length = encoded.remaining();
+                    if (length > copy.length) {
+                        copy = new byte[Math.max(length, copy.length << 1)];
+                    }
+                    encoded.get(copy, 0, length);
+                    out.writeInt(termBytes[termId].length);
+                    out.write(termBytes[termId]);
+                    out.writeInt(length);
+                    out.write(copy, 0, length);
+                }
+            }
+            current = new TermPostings.Builder();
+            currentBytes = 0;
+        }
+
+        // Encoding is the expensive part of a spill, so it runs on all workers.
+        private TermPostings compress(TermPostings.Builder builder) {
+            TermDictionary terms = builder.terms();
+            PostingList[] postings = new PostingList[terms.size()];
+            int tasks = Math.max(1, Math.min(terms.size(), pool.getParallelism() * 4));
+            pool.invoke(new ParallelIndexBuilder.RangeTask(0, tasks, task -> {
+                for (int termId = task; termId < postings.length; termId += tasks) {
+                    postings[termId] = builder.postingsAt(termId).build();
+                }
+            }));
+            return new TermPostings(terms, postings);
+        }
+    }
+
+    private static class ChunkResult {
+        final TermPostings.Builder postings;
+        final long occurrences;
+        // pack(docId, length) of every line.
+        final long[] lengths;
+
+        ChunkResult(TermPostings.Builder postings, long occurrences, long[] lengths) {
+            this.postings = postings;
+            this.occurrences = occurrences;
+            this.lengths = lengths;
+        }
+    }
+
+    // Analyzes the lines of bytes [from, to); their IDs are firstDoc .. endDoc - 1.
+    private ChunkResult indexChunk(MappedByteBuffer window, int from, int to, int firstDoc, int endDoc) {
+        ByteBuffer bytes = window.duplicate();
+        bytes.position(from).limit(to);
+        CharBuffer chars;
+        try {
+            chars = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(bytes);
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        TermPostings.Builder postings = new TermPostings.Builder();
+        long[] lengths = new long[endDoc - firstDoc];
+        long occurrences = 0;
+        int lineStart = 0;
+        for (int doc = firstDoc; doc < endDoc; doc++) {
+            int lineEnd = lineStart;
+            while (lineEnd < chars.length() && chars.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int docId = doc;
+            int length = analyzer.analyze(chars, lineStart, lineEnd,
+                    (buffer, offset, termLength, position) -> postings.add(buffer, offset, termLength, docId, position));
+            lengths[doc - firstDoc] = DocLengths.pack(docId, length);
+            occurrences += length;
+            lineStart = lineEnd + 1;
+        }
+        return new ChunkResult(postings, occurrences, lengths);
+    }
+
+    // K-way merge of the sorted runs into the segment. Returns the number of distinct terms.
+    private static int mergeRuns(List<Path> runs, Path segmentPath, DocLengths docLengths) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        PriorityQueue<RunReader> heap = new PriorityQueue<>((a, b) -> {
+            int order = SegmentWriter.compareUtf8(a.term, b.term);
+            // Equal terms in run order, which is doc ID order.
+            return order != 0 ? order : Integer.compare(a.index, b.index);
+        });
+        int termCount = 0;
+        try (SegmentWriter writer = new SegmentWriter(segmentPath)) {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run, readers.size());
+                readers.add(reader);
+                if (reader.next()) {
+                    heap.add(reader);
+                }
+            }
+            List<PostingList> parts = new ArrayList<>();
+            while (!heap.isEmpty()) {
+                RunReader first = heap.poll();
+                byte[] term = first.term;
+                parts.clear();
+                parts.add(first.postings);
+                advance(first, heap);
+                while (!heap.isEmpty() && Arrays.equals(heap.peek().term, term)) {
+                    RunReader same = heap.poll();
+                    parts.add(same.postings);
+                    advance(same, heap);
+                }
+                writer.addTerm(new String(term, StandardCharsets.UTF_8), PostingList.concatenate(parts));
+                termCount++;
+            }
+            writer.setDocLengths(docLengths);
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        return termCount;
+    }
+
+    private static void advance(RunReader reader, PriorityQueue<RunReader> heap) throws IOException {
+        if (reader.next()) {
+            heap.add(reader);
+        }
+    }
+
+    private static class RunReader implements AutoCloseable {
+        private final DataInputStream in;
+        final int index;
+        byte[] term;
+        PostingList postings;
+
+        RunReader(Path run, int index) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            this.index = index;
+        }
+
+        // Reads the next record, false at the end of the run.
+        boolean next() throws IOException {
+            int termLength;
+            try {
+                termLength = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            term = new byte[termLength];
+            in.readFully(term);
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            postings = PostingList.wrap(ByteBuffer.wrap(encoded));
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static int lastNewline(MappedByteBuffer buffer, int to) {
+        for (int i = to - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Start of the first line at or after from, or end.
+    private static int nextLineStart(MappedByteBuffer buffer, int from, int end) {
+        for (int i = from - 1; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static int countNewlines(MappedByteBuffer buffer, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,210 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Caches the results of any SearchService, keyed by the normalized query.
+//
+// The cache is bounded by weight, one unit per entry plus one per doc ID or suggestion, and admits entries with
+// W-TinyLFU so the few hundred hot queries stay cached while the long tail passes through. Every result remembers the
+// index generation it was computed at; when the delegate reports a new generation the whole cache is dropped, and a
+// result computed concurrently with the change is never served because its generation no longer matches.
+//
+// Cached results are shared between callers and are returned unmodifiable.
+public class CachingSearchService implements SearchService {
+
+    private final SearchService delegate;
+    private final WTinyLfuCache<SearchQuery, CachedResult> cache;
+    private final AtomicLong generation;
+    private final LongAdder invalidations = new LongAdder();
+
+    private static class CachedResult {
+        final long generation;
+        final Object result;
+
+        CachedResult(long generation, Object result) {
+            this.generation = generation;
+            this.result = result;
+        }
+    }
+
+    public CachingSearchService(SearchService delegate, long maximumWeight) {
+        this.delegate = delegate;
+        this.cache = new WTinyLfuCache<>(maximumWeight, cached -> 1 + sizeOf(cached.result));
+        this.generation = new AtomicLong(delegate.indexGeneration());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchWord(String word) {
+        return (Set<Integer>) lookup(SearchQuery.word(word));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchPhrase(String phrase) {
+        return (Set<Integer>) lookup(SearchQuery.phrase(phrase));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchPrefix(String prefix) {
+        return (Set<Integer>) lookup(SearchQuery.prefix(prefix));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> autoCompleteSuggestions(String prefix) {
+        return (List<String>) lookup(SearchQuery.autoComplete(prefix));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchBooleanQuery(String query) {
+        return (Set<Integer>) lookup(SearchQuery.booleanQuery(query));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ScoredDocument> searchRanked(String query, int k) {
+        return (List<ScoredDocument>) lookup(SearchQuery.ranked(query, k));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchFuzzy(String word, int maxEdits) {
+        return (Set<Integer>) lookup(SearchQuery.fuzzy(word, maxEdits));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> fuzzyAutoCompleteSuggestions(String prefix, int maxEdits) {
+        return (List<String>) lookup(SearchQuery.fuzzyAutoComplete(prefix, maxEdits));
+    }
+
+    // A lazy query that is already cached iterates the cached result; any other goes to the delegate uncached, the
+    // caller may stop after a few documents and there would be no complete result to keep.
+    @Override
+    public DocIdIterator iterateWord(String word) {
+        Set<Integer> cached = cached(SearchQuery.word(word));
+        return cached != null ? DocIdIterator.of(cached) : delegate.iterateWord(word);
+    }
+
+    @Override
+    public DocIdIterator iteratePhrase(String phrase) {
+        Set<Integer> cached = cached(SearchQuery.phrase(phrase));
+        return cached != null ? DocIdIterator.of(cached) : delegate.iteratePhrase(phrase);
+    }
+
+    @Override
+    public DocIdIterator iteratePrefix(String prefix) {
+        Set<Integer> cached = cached(SearchQuery.prefix(prefix));
+        return cached != null ? DocIdIterator.of(cached) : delegate.iteratePrefix(prefix);
+    }
+
+    @Override
+    public DocIdIterator iterateBooleanQuery(String query) {
+        Set<Integer> cached = cached(SearchQuery.booleanQuery(query));
+        return cached != null ? DocIdIterator.of(cached) : delegate.iterateBooleanQuery(query);
+    }
+
+    // Cache hits are answered here; the misses go to the delegate as one batch, so it can still share work between
+    // them.
+    @Override
+    public List<Object> searchBatch(List<SearchQuery> queries) {
+        long current = currentGeneration();
+        Object[] results = new Object[queries.size()];
+        List<SearchQuery> misses = new ArrayList<>();
+        List<Integer> missSlots = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            CachedResult cached = cache.get(queries.get(i));
+            if (cached != null && cached.generation == current) {
+                SearchMetrics.cacheHit();
+                results[i] = cached.result;
+            } else {
+                SearchMetrics.cacheMiss();
+                misses.add(queries.get(i));
+                missSlots.add(i);
+            }
+        }
+        if (!misses.isEmpty()) {
+            List<Object> computed = delegate.searchBatch(misses);
+            for (int i = 0; i < misses.size(); i++) {
+                Object result = unmodifiable(computed.get(i));
+                cache.put(misses.get(i), new CachedResult(current, result));
+                results[missSlots.get(i)] = result;
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    @Override
+    public long indexGeneration() {
+        return delegate.indexGeneration();
+    }
+
+    @Override
+    public String explain(SearchQuery query) {
+        return delegate.explain(query);
+    }
+
+    public WTinyLfuCache.Stats stats() {
+        return cache.stats();
+    }
+
+    // How many times a new index generation emptied the cache.
+    public long invalidationCount() {
+        return invalidations.sum();
+    }
+
+    private Object lookup(SearchQuery query) {
+        long current = currentGeneration();
+        CachedResult cached = cache.get(query);
+        if (cached != null && cached.generation == current) {
+            SearchMetrics.cacheHit();
+            return cached.result;
+        }
+        SearchMetrics.cacheMiss();
+        Object result = unmodifiable(query.execute(delegate));
+        cache.put(query, new CachedResult(current, result));
+        return result;
+    }
+
+    // The cached documents of the query, or null if it is not cached at the current generation.
+    @SuppressWarnings("unchecked")
+    private Set<Integer> cached(SearchQuery query) {
+        long current = currentGeneration();
+        CachedResult cached = cache.get(query);
+        return cached != null && cached.generation == current ? (Set<Integer>) cached.result : null;
+    }
+
+    // The delegate's generation, emptying the cache first if it changed since the last query.
+    private long currentGeneration() {
+        long current = delegate.indexGeneration();
+        long seen = generation.get();
+        if (current != seen && generation.compareAndSet(seen, current)) {
+            cache.invalidateAll();
+            invalidations.increment();
+        }
+        return current;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Object unmodifiable(Object result) {
+        if (result instanceof Set) {
+            return Collections.unmodifiableSet((Set<Object>) result);
+        }
+        if (result instanceof List) {
+            return Collections.unmodifiableList((List<Object>) result);
+        }
+        return result;
+    }
+
+    private static int sizeOf(Object result) {
+        return result instanceof Collection ? ((Collection<?>) result).size() : 0;
+    }
+}
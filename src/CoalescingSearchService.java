@@ -0,0 +1,187 @@
+import lombok.Data;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Answers concurrent identical queries with one evaluation on any SearchService.
+//
+// The first caller of a query evaluates it; callers of the same query (equal SearchQuery) that arrive before the
+// result is ready wait for it and share it instead of evaluating the query again. With a window, the first caller
+// waits that long before evaluating so that a burst of identical requests is gathered first, trading that much
+// latency on every distinct query for fewer evaluations under load. Without one only the requests that overlap an
+// evaluation already running are coalesced. Every distinct query is evaluated on the thread of its first caller, so
+// the work of a burst stays spread over the connections that sent it.
+//
+// A caller never gets a result that was finished before it asked, a query is removed from the in-flight table before
+// its result is published. Nor does it join an evaluation that started at an older index generation than the one it
+// saw on arrival, so a caller that has just changed the index reads its own write. Shared results are returned
+// unmodifiable.
+public class CoalescingSearchService implements SearchService {
+
+    private final SearchService delegate;
+    private final long windowNanos;
+    private final ConcurrentHashMap<InFlightKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    // A query together with the index generation its caller saw; only callers of the same generation share a result.
+    @Data
+    private static class InFlightKey {
+        private final long generation;
+        private final SearchQuery query;
+    }
+
+    public CoalescingSearchService(SearchService delegate) {
+        this(delegate, 0);
+    }
+
+    public CoalescingSearchService(SearchService delegate, long windowMicros) {
+        this.delegate = delegate;
+        this.windowNanos = windowMicros * 1000;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchWord(String word) {
+        return (Set<Integer>) execute(SearchQuery.word(word));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchPhrase(String phrase) {
+        return (Set<Integer>) execute(SearchQuery.phrase(phrase));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchPrefix(String prefix) {
+        return (Set<Integer>) execute(SearchQuery.prefix(prefix));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> autoCompleteSuggestions(String prefix) {
+        return (List<String>) execute(SearchQuery.autoComplete(prefix));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchBooleanQuery(String query) {
+        return (Set<Integer>) execute(SearchQuery.booleanQuery(query));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ScoredDocument> searchRanked(String query, int k) {
+        return (List<ScoredDocument>) execute(SearchQuery.ranked(query, k));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchFuzzy(String word, int maxEdits) {
+        return (Set<Integer>) execute(SearchQuery.fuzzy(word, maxEdits));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> fuzzyAutoCompleteSuggestions(String prefix, int maxEdits) {
+        return (List<String>) execute(SearchQuery.fuzzyAutoComplete(prefix, maxEdits));
+    }
+
+    // Batches go to the delegate as they are, which already evaluates equal queries of a batch once.
+    @Override
+    public List<Object> searchBatch(List<SearchQuery> queries) {
+        return delegate.searchBatch(queries);
+    }
+
+    // Every caller walks its own iterator, there is no result to share; lazy queries go straight through.
+    @Override
+    public DocIdIterator iterateWord(String word) {
+        return delegate.iterateWord(word);
+    }
+
+    @Override
+    public DocIdIterator iteratePhrase(String phrase) {
+        return delegate.iteratePhrase(phrase);
+    }
+
+    @Override
+    public DocIdIterator iteratePrefix(String prefix) {
+        return delegate.iteratePrefix(prefix);
+    }
+
+    @Override
+    public DocIdIterator iterateBooleanQuery(String query) {
+        return delegate.iterateBooleanQuery(query);
+    }
+
+    @Override
+    public long indexGeneration() {
+        return delegate.indexGeneration();
+    }
+
+    @Override
+    public String explain(SearchQuery query) {
+        return delegate.explain(query);
+    }
+
+    // Queries the delegate actually evaluated.
+    public long evaluationCount() {
+        return evaluations.sum();
+    }
+
+    // Queries answered with the result of another caller's evaluation.
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public Object execute(SearchQuery query) {
+        InFlightKey key = new InFlightKey(delegate.indexGeneration(), query);
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, result);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+        long deadline = System.nanoTime() + windowNanos;
+        for (long left = windowNanos; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+        }
+        evaluate(key, result);
+        return await(result);
+    }
+
+    private void evaluate(InFlightKey key, CompletableFuture<Object> result) {
+        evaluations.increment();
+        Object value;
+        try {
+            value = CachingSearchService.unmodifiable(key.getQuery().execute(delegate));
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, result);
+            result.completeExceptionally(e);
+            return;
+        }
+        inFlight.remove(key, result);
+        result.complete(value);
+    }
+
+    private static Object await(CompletableFuture<Object> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
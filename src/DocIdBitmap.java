@@ -0,0 +1,513 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+// Compressed set of non-negative doc IDs in the style of a Roaring bitmap.
+//
+// IDs are split by their high 16 bits into chunks. Each chunk is stored in the cheaper of two containers: a sorted
+// char[] of low 16 bits while it holds at most ARRAY_LIMIT values, or a 1024-word bitmap once it is denser. Set
+// algebra works chunk by chunk on matching keys, so AND/ANDNOT only touch chunks both sides have and dense chunks are
+// combined 64 IDs per instruction.
+//
+// Bitmaps are immutable once built; and/or/andNot return new instances.
+public class DocIdBitmap {
+
+    static final int ARRAY_LIMIT = 4096;
+
+    public static final DocIdBitmap EMPTY = new DocIdBitmap(new char[0], new Container[0], 0);
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int size;
+
+    private DocIdBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    public static DocIdBitmap of(PostingList postings) {
+        Builder builder = new Builder();
+        PostingList.Cursor cursor = postings.cursor();
+        for (int doc = cursor.nextDoc(); doc != PostingList.Cursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+            builder.add(doc);
+        }
+        return builder.build();
+    }
+
+    // Union of several posting lists by a k-way merge: a min-heap of cursors ordered by their current doc ID, so the
+    // IDs come out ascending and go straight into the builder without any intermediate set.
+    public static DocIdBitmap union(PostingList[] lists) {
+        PostingList.Cursor[] heap = new PostingList.Cursor[lists.length];
+        int size = 0;
+        for (PostingList list : lists) {
+            PostingList.Cursor cursor = list.cursor();
+            if (cursor.nextDoc() != PostingList.Cursor.NO_MORE_DOCS) {
+                heap[size++] = cursor;
+            }
+        }
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(heap, i, size);
+        }
+        Builder builder = new Builder();
+        while (size > 0) {
+            PostingList.Cursor top = heap[0];
+            builder.add(top.docId());
+            if (top.nextDoc() == PostingList.Cursor.NO_MORE_DOCS) {
+                heap[0] = heap[--size];
+            }
+            siftDown(heap, 0, size);
+        }
+        return builder.build();
+    }
+
+    private static void siftDown(PostingList.Cursor[] heap, int index, int size) {
+        PostingList.Cursor cursor = heap[index];
+        int doc = cursor.docId();
+        while (true) {
+            int child = (index << 1) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].docId() < heap[child].docId()) {
+                child++;
+            }
+            if (heap[child].docId() >= doc) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = cursor;
+    }
+
+    public int cardinality() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int docId) {
+        int index = Arrays.binarySearch(keys, (char) (docId >>> 16));
+        return index >= 0 && containers[index].contains((char) docId);
+    }
+
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    // The IDs in increasing order, read straight from the containers.
+    public DocIdIterator iterator() {
+        return new BitmapIterator();
+    }
+
+    public Set<Integer> toSet() {
+        Set<Integer> result = new HashSet<>(size * 2);
+        forEach(result::add);
+        return result;
+    }
+
+    public DocIdBitmap and(DocIdBitmap other) {
+        Merger merger = new Merger(Math.min(keys.length, other.keys.length));
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                merger.add(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return merger.build();
+    }
+
+    public DocIdBitmap or(DocIdBitmap other) {
+        Merger merger = new Merger(keys.length + other.keys.length);
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                merger.add(keys[i], containers[i]);
+                i++;
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                merger.add(other.keys[j], other.containers[j]);
+                j++;
+            } else {
+                merger.add(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return merger.build();
+    }
+
+    public DocIdBitmap andNot(DocIdBitmap other) {
+        Merger merger = new Merger(keys.length);
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.keys.length && other.keys[j] == keys[i]) {
+                merger.add(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                merger.add(keys[i], containers[i]);
+            }
+        }
+        return merger.build();
+    }
+
+    // Keeps only the IDs that the postings also contain, by galloping the cursor through them. Cheaper than building
+    // a bitmap of the postings when this bitmap is much smaller than the list.
+    public DocIdBitmap and(PostingList postings) {
+        Builder builder = new Builder();
+        PostingList.Cursor cursor = postings.cursor();
+        forEach(doc -> {
+            if (cursor.advance(doc) == doc) {
+                builder.add(doc);
+            }
+        });
+        return builder.build();
+    }
+
+    // Accumulates IDs in ascending order.
+    public static class Builder {
+        private final Merger merger = new Merger(4);
+        private int currentKey = -1;
+        private char[] values = new char[16];
+        private int count;
+        private int last = -1;
+
+        public void add(int docId) {
+            if (docId < 0) {
+                throw new IllegalArgumentException("Doc IDs must be non-negative: " + docId);
+            }
+            if (docId <= last) {
+                if (docId == last) {
+                    return;
+                }
+                throw new IllegalArgumentException("Doc IDs must be added in ascending order: " + docId + " after " + last);
+            }
+            last = docId;
+            int key = docId >>> 16;
+            if (key != currentKey) {
+                flush();
+                currentKey = key;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, values.length << 1);
+            }
+            values[count++] = (char) docId;
+        }
+
+        public DocIdBitmap build() {
+            flush();
+            return merger.build();
+        }
+
+        private void flush() {
+            if (count > 0) {
+                merger.add((char) currentKey, Container.fromSorted(values, count));
+                count = 0;
+            }
+        }
+    }
+
+    private static class Merger {
+        private char[] keys;
+        private Container[] containers;
+        private int count;
+        private int size;
+
+        Merger(int capacity) {
+            keys = new char[Math.max(capacity, 1)];
+            containers = new Container[Math.max(capacity, 1)];
+        }
+
+        void add(char key, Container container) {
+            if (container.cardinality() == 0) {
+                return;
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count << 1);
+                containers = Arrays.copyOf(containers, count << 1);
+            }
+            keys[count] = key;
+            containers[count++] = container;
+            size += container.cardinality();
+        }
+
+        DocIdBitmap build() {
+            return new DocIdBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(containers, count), size);
+        }
+    }
+
+    private class BitmapIterator extends DocIdIterator {
+        private int container;
+        // Position of the current ID in an array container.
+        private int index = -1;
+        private int docId = -1;
+        private int returned;
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        @Override
+        public int nextDoc() {
+            if (docId == NO_MORE_DOCS) {
+                return NO_MORE_DOCS;
+            }
+            if (docId >= 0 && containers[container] instanceof ArrayContainer) {
+                char[] values = ((ArrayContainer) containers[container]).values;
+                if (++index < values.length) {
+                    returned++;
+                    return docId = keys[container] << 16 | values[index];
+                }
+            }
+            return advance(docId + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            int key = target >>> 16;
+            while (container < keys.length && keys[container] < key) {
+                container++;
+            }
+            while (container < keys.length) {
+                int low = keys[container] == key ? target & 0xFFFF : 0;
+                int value = next(containers[container], low);
+                if (value >= 0) {
+                    returned++;
+                    return docId = keys[container] << 16 | value;
+                }
+                container++;
+            }
+            return docId = NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+            return docId == NO_MORE_DOCS ? 0 : size - returned;
+        }
+
+        // Smallest value >= low in the container, or -1.
+        private int next(Container current, int low) {
+            if (current instanceof ArrayContainer) {
+                char[] values = ((ArrayContainer) current).values;
+                int found = Arrays.binarySearch(values, (char) low);
+                index = found >= 0 ? found : -found - 1;
+                return index < values.length ? values[index] : -1;
+            }
+            long[] words = ((BitmapContainer) current).words;
+            int word = low >>> 6;
+            long bits = words[word] & (-1L << low);
+            while (bits == 0) {
+                if (++word == words.length) {
+                    return -1;
+                }
+                bits = words[word];
+            }
+            return word << 6 | Long.numberOfTrailingZeros(bits);
+        }
+    }
+
+    private abstract static class Container {
+
+        static Container fromSorted(char[] values, int count) {
+            if (count <= ARRAY_LIMIT) {
+                return new ArrayContainer(Arrays.copyOf(values, count));
+            }
+            long[] words = new long[1024];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return new BitmapContainer(words, count);
+        }
+
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract void forEach(int base, IntConsumer consumer);
+
+        abstract long[] toWords();
+
+        Container and(Container other) {
+            if (this instanceof ArrayContainer || other instanceof ArrayContainer) {
+                ArrayContainer small = this instanceof ArrayContainer ? (ArrayContainer) this : (ArrayContainer) other;
+                Container large = small == this ? other : this;
+                char[] result = new char[small.values.length];
+                int count = 0;
+                for (char value : small.values) {
+                    if (large.contains(value)) {
+                        result[count++] = value;
+                    }
+                }
+                return new ArrayContainer(Arrays.copyOf(result, count));
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            long[] result = new long[1024];
+            for (int i = 0; i < 1024; i++) {
+                result[i] = words[i] & otherWords[i];
+            }
+            return BitmapContainer.shrink(result);
+        }
+
+        Container or(Container other) {
+            if (this instanceof ArrayContainer && other instanceof ArrayContainer
+                    && cardinality() + other.cardinality() <= ARRAY_LIMIT) {
+                char[] left = ((ArrayContainer) this).values;
+                char[] right = ((ArrayContainer) other).values;
+                char[] result = new char[left.length + right.length];
+                int i = 0;
+                int j = 0;
+                int count = 0;
+                while (i < left.length || j < right.length) {
+                    if (j == right.length || (i < left.length && left[i] < right[j])) {
+                        result[count++] = left[i++];
+                    } else if (i == left.length || left[i] > right[j]) {
+                        result[count++] = right[j++];
+                    } else {
+                        result[count++] = left[i++];
+                        j++;
+                    }
+                }
+                return new ArrayContainer(Arrays.copyOf(result, count));
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            long[] result = new long[1024];
+            for (int i = 0; i < 1024; i++) {
+                result[i] = words[i] | otherWords[i];
+            }
+            return BitmapContainer.shrink(result);
+        }
+
+        Container andNot(Container other) {
+            if (this instanceof ArrayContainer) {
+                char[] values = ((ArrayContainer) this).values;
+                char[] result = new char[values.length];
+                int count = 0;
+                for (char value : values) {
+                    if (!other.contains(value)) {
+                        result[count++] = value;
+                    }
+                }
+                return new ArrayContainer(Arrays.copyOf(result, count));
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            long[] result = new long[1024];
+            for (int i = 0; i < 1024; i++) {
+                result[i] = words[i] & ~otherWords[i];
+            }
+            return BitmapContainer.shrink(result);
+        }
+    }
+
+    private static class ArrayContainer extends Container {
+        final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer consumer) {
+            for (char value : values) {
+                consumer.accept(base | value);
+            }
+        }
+
+        @Override
+        long[] toWords() {
+            long[] words = new long[1024];
+            for (char value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+            return words;
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        final long[] words;
+        final int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        // Turns the result of a word-wise operation back into an array container if it became sparse.
+        static Container shrink(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_LIMIT) {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer consumer) {
+            for (int i = 0; i < 1024; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        long[] toWords() {
+            return words;
+        }
+    }
+}
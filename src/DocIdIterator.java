@@ -0,0 +1,228 @@
+import java.util.Arrays;
+import java.util.Set;
+
+// Forward-only iterator over doc IDs in increasing order, for results that are produced while the caller walks them
+// instead of being collected into a Set<Integer> first. A caller that only wants the first page, a count or the
+// documents after some ID stops or skips ahead, and the rest of the result is never decoded.
+//
+// docId() is -1 before the first call and NO_MORE_DOCS once the iterator is exhausted. advance(target) moves to the
+// first document >= target and returns it; a target at or before the current document leaves the iterator where it
+// is. Not thread safe, create one per query.
+public abstract class DocIdIterator {
+
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    public abstract int docId();
+
+    public abstract int nextDoc();
+
+    public abstract int advance(int target);
+
+    // Upper bound on the number of documents left, e.g. to start a conjunction from its rarest part.
+    public abstract long cost();
+
+    // Fills the page with the next documents and returns how many it got, less than page.length only at the end.
+    public int nextDocs(int[] page) {
+        int count = 0;
+        while (count < page.length) {
+            int doc = nextDoc();
+            if (doc == NO_MORE_DOCS) {
+                break;
+            }
+            page[count++] = doc;
+        }
+        return count;
+    }
+
+    // Walks the remaining documents and returns how many there were.
+    public int count() {
+        int count = 0;
+        while (nextDoc() != NO_MORE_DOCS) {
+            count++;
+        }
+        return count;
+    }
+
+    public static DocIdIterator empty() {
+        return new ArrayIterator(new int[0], 0, 0);
+    }
+
+    // Doc IDs of a sorted slice of the array, without copying it.
+    public static DocIdIterator of(int[] sortedDocIds, int from, int to) {
+        return new ArrayIterator(sortedDocIds, from, to);
+    }
+
+    // A result that only exists as a set: the IDs are copied into a sorted int[] once.
+    public static DocIdIterator of(Set<Integer> docIds) {
+        int[] sorted = new int[docIds.size()];
+        int count = 0;
+        for (int docId : docIds) {
+            sorted[count++] = docId;
+        }
+        Arrays.sort(sorted);
+        return new ArrayIterator(sorted, 0, count);
+    }
+
+    // Documents of any of the iterators, each once. The iterators must not have been started.
+    public static DocIdIterator union(DocIdIterator[] iterators) {
+        if (iterators.length == 0) {
+            return empty();
+        }
+        return iterators.length == 1 ? iterators[0] : new Disjunction(iterators);
+    }
+
+    // Documents of the iterator that are not in the bitmap, e.g. the live documents of a segment with tombstones.
+    public static DocIdIterator excluding(DocIdIterator iterator, DocIdBitmap excluded) {
+        return excluded.isEmpty() ? iterator : new Exclusion(iterator, excluded);
+    }
+
+    private static class Exclusion extends DocIdIterator {
+        private final DocIdIterator iterator;
+        private final DocIdBitmap excluded;
+
+        Exclusion(DocIdIterator iterator, DocIdBitmap excluded) {
+            this.iterator = iterator;
+            this.excluded = excluded;
+        }
+
+        @Override
+        public int docId() {
+            return iterator.docId();
+        }
+
+        @Override
+        public int nextDoc() {
+            return skipExcluded(iterator.nextDoc());
+        }
+
+        @Override
+        public int advance(int target) {
+            return skipExcluded(iterator.advance(target));
+        }
+
+        @Override
+        public long cost() {
+            return iterator.cost();
+        }
+
+        private int skipExcluded(int doc) {
+            while (doc != NO_MORE_DOCS && excluded.contains(doc)) {
+                doc = iterator.nextDoc();
+            }
+            return doc;
+        }
+    }
+
+    private static class ArrayIterator extends DocIdIterator {
+        private final int[] docIds;
+        private final int to;
+        private int index;
+        private int docId = -1;
+
+        ArrayIterator(int[] docIds, int from, int to) {
+            this.docIds = docIds;
+            this.index = from - 1;
+            this.to = to;
+        }
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        @Override
+        public int nextDoc() {
+            if (docId == NO_MORE_DOCS) {
+                return NO_MORE_DOCS;
+            }
+            return docId = ++index < to ? docIds[index] : NO_MORE_DOCS;
+        }
+
+        @Override
+        public int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            index = PostingList.gallop(docIds, index + 1, to, target);
+            return docId = index < to ? docIds[index] : NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+            return Math.max(0, to - index - 1);
+        }
+    }
+
+    // k-way merge over a min-heap of the iterators ordered by their current document, the same merge as
+    // DocIdBitmap.union but one document per call. Moving on advances every iterator still behind the target, so
+    // documents shared by several iterators come out once and a skip ahead is passed down to each of them.
+    private static class Disjunction extends DocIdIterator {
+        private final DocIdIterator[] heap;
+        private final long cost;
+        private int size;
+        private int docId = -1;
+
+        Disjunction(DocIdIterator[] iterators) {
+            this.heap = iterators.clone();
+            this.size = heap.length;
+            long cost = 0;
+            for (DocIdIterator iterator : iterators) {
+                cost += iterator.cost();
+            }
+            this.cost = cost;
+        }
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        @Override
+        public int nextDoc() {
+            return docId == NO_MORE_DOCS ? NO_MORE_DOCS : advance(docId + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            // Every iterator sits at -1 until the first call, so the heap starts out valid.
+            while (size > 0 && heap[0].docId() < target) {
+                if (heap[0].advance(target) == NO_MORE_DOCS) {
+                    heap[0] = heap[--size];
+                }
+                siftDown(0);
+            }
+            return docId = size == 0 ? NO_MORE_DOCS : heap[0].docId();
+        }
+
+        @Override
+        public long cost() {
+            return cost;
+        }
+
+        private void siftDown(int index) {
+            if (size == 0) {
+                return;
+            }
+            DocIdIterator iterator = heap[index];
+            int doc = iterator.docId();
+            while (true) {
+                int child = (index << 1) + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1].docId() < heap[child].docId()) {
+                    child++;
+                }
+                if (heap[child].docId() >= doc) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = iterator;
+        }
+    }
+}
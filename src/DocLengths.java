@@ -0,0 +1,111 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+// Number of tokens in every document, needed for BM25 length normalization.
+//
+// Stored as (docId, length) pairs sorted by doc ID in an IntBuffer, so the table can live on the heap or be a view of
+// a memory-mapped segment. Lookups are a binary search and only use absolute gets, which keeps it thread safe.
+public class DocLengths {
+
+    public static final DocLengths EMPTY = new DocLengths(IntBuffer.allocate(0));
+
+    private final IntBuffer pairs;
+    private final int docCount;
+    private final double averageLength;
+    private final int minLength;
+
+    public DocLengths(IntBuffer pairs) {
+        this.pairs = pairs;
+        this.docCount = pairs.capacity() / 2;
+        long total = 0;
+        int min = docCount == 0 ? 0 : Integer.MAX_VALUE;
+        for (int i = 0; i < docCount; i++) {
+            int length = pairs.get(i * 2 + 1);
+            total += length;
+            min = Math.min(min, length);
+        }
+        this.averageLength = docCount == 0 ? 0 : (double) total / docCount;
+        this.minLength = min;
+    }
+
+    public static DocLengths of(List<Document> documents) {
+        return of(documents, Analyzer.STANDARD);
+    }
+
+    // Lengths in terms as the analyzer emits them, so they agree with the positions in the postings.
+    public static DocLengths of(List<Document> documents, Analyzer analyzer) {
+        long[] packed = new long[documents.size()];
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            packed[i] = pack(document.getId(), analyzer.countTerms(document.getStringContent()));
+        }
+        return ofPacked(packed, packed.length);
+    }
+
+    static long pack(int docId, int length) {
+        return ((long) docId << 32) | length;
+    }
+
+    // Builds the table from the first count entries of pack(docId, length) values, in any order.
+    static DocLengths ofPacked(long[] packed, int count) {
+        Arrays.sort(packed, 0, count);
+        int[] pairs = new int[count * 2];
+        for (int i = 0; i < count; i++) {
+            pairs[i * 2] = (int) (packed[i] >>> 32);
+            pairs[i * 2 + 1] = (int) packed[i];
+        }
+        return new DocLengths(IntBuffer.wrap(pairs));
+    }
+
+    public int docCount() {
+        return docCount;
+    }
+
+    public double averageLength() {
+        return averageLength;
+    }
+
+    public int minLength() {
+        return minLength;
+    }
+
+    public int docIdAt(int index) {
+        return pairs.get(index * 2);
+    }
+
+    public int lengthAt(int index) {
+        return pairs.get(index * 2 + 1);
+    }
+
+    // Length of the document, or 0 if it is unknown.
+    public int length(int docId) {
+        int low = 0;
+        int high = docCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = pairs.get(mid * 2);
+            if (id < docId) {
+                low = mid + 1;
+            } else if (id > docId) {
+                high = mid - 1;
+            } else {
+                return pairs.get(mid * 2 + 1);
+            }
+        }
+        return 0;
+    }
+
+    public DocIdBitmap docIds() {
+        DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+        for (int i = 0; i < docCount; i++) {
+            builder.add(docIdAt(i));
+        }
+        return builder.build();
+    }
+
+    // Raw (docId, length) pairs, used when the table is written into a segment.
+    IntBuffer pairs() {
+        return pairs.duplicate();
+    }
+}
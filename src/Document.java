@@ -8,28 +8,27 @@ public class Document {
 
         private int id;
         private String stringContent;
-        private List<Token> content;
 
         public Document(int id, String stringContent) {
             this.id = id;
             this.stringContent = stringContent;
-            this.content = tokenize(stringContent);
+        }
+
+        // The analyzed terms of the content with their positions. Computed on every call rather than kept alive for
+        // the whole life of the document; the index builders stream the terms from the Analyzer instead.
+        public List<Token> getContent() {
+            return tokenize(stringContent);
         }
 
         public List<Token> tokenize(String text) {
-            String[] words = text.split("\\s+");
             List<Token> tokens = new ArrayList<>();
-            int index =0;
-            for (String word: words) {
-            Token token = new Token(word, index);
-            tokens.add(token);
-            index++;
-            }
+            Analyzer.STANDARD.analyze(text,
+                    (buffer, offset, length, position) -> tokens.add(new Token(new String(buffer, offset, length), position)));
             return tokens;
         }
 
         @Data
-        public class Token {
+        public static class Token {
             private String word;
             private int index;
 
@@ -39,4 +38,3 @@ public class Document {
             }
         }
     }
-
@@ -1,16 +1,77 @@
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 
 public class DocumentService {
 
-    private static Map<String, Document> documents = new HashMap<>();
+    private static Map<String, Document> documents = new ConcurrentHashMap<>();
+    private static List<DocumentListener> listeners = new CopyOnWriteArrayList<>();
+    // Changes to one document are applied and announced under the same lock, so listeners see them in the order the
+    // store applied them. Ids are striped over the locks; changes to different documents rarely wait for each other.
+    private static final Object[] locks = new Object[64];
+
+    static {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Notified of every change so live indexes can follow the document store without rebuilding.
+    public interface DocumentListener {
+
+        // A new document, or a new version of an existing one.
+        void onUpsert(Document document);
+
+        void onDelete(int id);
+    }
 
     public List<Document> getDocuments() {
         return documents.entrySet()
                 .stream().map(Map.Entry::getValue)
                 .collect(Collectors.toList());
     }
+
+    public void addDocument(Document document) {
+        synchronized (lockOf(document.getId())) {
+            documents.put(key(document.getId()), document);
+            for (DocumentListener listener : listeners) {
+                listener.onUpsert(document);
+            }
+        }
+    }
+
+    public void updateDocument(Document document) {
+        addDocument(document);
+    }
+
+    public boolean deleteDocument(int id) {
+        synchronized (lockOf(id)) {
+            if (documents.remove(key(id)) == null) {
+                return false;
+            }
+            for (DocumentListener listener : listeners) {
+                listener.onDelete(id);
+            }
+            return true;
+        }
+    }
+
+    public void addListener(DocumentListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DocumentListener listener) {
+        listeners.remove(listener);
+    }
+
+    private static Object lockOf(int id) {
+        return locks[Math.floorMod(id, locks.length)];
+    }
+
+    private static String key(int id) {
+        return String.valueOf(id);
+    }
 }
@@ -0,0 +1,331 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+// Frozen term dictionary stored as a double-array trie: one int[] instead of one HashMap per node.
+//
+// A transition from node s on code c goes to slot t = base[s] + c and exists only if check[t] == s. Characters are
+// mapped to dense codes 1..alphabetSize in char order, code 0 is the end-of-term transition and its slot holds
+// base = -(termId + 1). Terms are numbered in sorted order and children are laid out in code order, so the terms below
+// any node form one contiguous range of IDs: a prefix query is a walk down the prefix plus a walk to the leftmost
+// and rightmost leaf. base and check of a slot sit next to each other in the same array, so a transition touches one
+// cache line instead of two.
+public class DoubleArrayTrie {
+
+    private static final int FREE = -1;
+    private static final int END = 0;
+
+    private final char[] alphabet;
+    // Code of each char, 0 if the char does not occur in any term.
+    private final char[] codes;
+    // base of slot i at 2 * i, check at 2 * i + 1.
+    private int[] units;
+    private final int termCount;
+
+    // Build state, only used while the constructor runs.
+    private int firstFree = 1;
+    private int slotCount = 1;
+
+    // The terms must be sorted (String.compareTo) and distinct; term i gets ID i.
+    public DoubleArrayTrie(List<String> sortedTerms) {
+        this.termCount = sortedTerms.size();
+        this.alphabet = alphabet(sortedTerms);
+        this.codes = new char[alphabet.length == 0 ? 0 : alphabet[alphabet.length - 1] + 1];
+        for (int i = 0; i < alphabet.length; i++) {
+            codes[alphabet[i]] = (char) (i + 1);
+        }
+        int capacity = Math.max(1024, termCount * 2);
+        this.units = new int[capacity * 2];
+        Arrays.fill(units, FREE);
+        setBase(0, 0);
+        setCheck(0, 0);
+        if (termCount > 0) {
+            insertChildren(0, sortedTerms, 0, termCount, 0);
+        }
+        units = Arrays.copyOf(units, slotCount * 2);
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    // ID of the term, or -1 if it is not in the dictionary.
+    public int termId(String term) {
+        int node = walk(term);
+        return node < 0 ? -1 : endTermId(node);
+    }
+
+    // IDs of the terms starting with the prefix as {from, to}, to exclusive; empty if there are none.
+    public int[] prefixRange(String prefix) {
+        int node = walk(prefix);
+        if (node < 0) {
+            return new int[]{0, 0};
+        }
+        return new int[]{firstTermId(node), lastTermId(node) + 1};
+    }
+
+    // Up to limit terms starting with the prefix, in sorted order.
+    public void collectTerms(String prefix, int limit, List<String> terms) {
+        int node = walk(prefix);
+        if (node >= 0 && limit > 0) {
+            SearchMetrics.trieNodesVisited(collect(node, new StringBuilder(prefix), limit, terms));
+        }
+    }
+
+    // Calls consumer with the ID of every term within the automaton's edit distance.
+    public void fuzzyTermIds(LevenshteinAutomaton automaton, IntConsumer consumer) {
+        walkFuzzy(automaton, null, (node, distance) -> {
+            int termId = endTermId(node);
+            if (termId >= 0) {
+                consumer.accept(termId);
+            }
+        });
+    }
+
+    // For every node whose path is within the automaton's edit distance, adds up to limit terms below it to terms
+    // with that distance, keeping the smallest distance of a term below several such nodes.
+    public void collectFuzzyTerms(LevenshteinAutomaton automaton, int limit, Map<String, Integer> terms) {
+        StringBuilder path = new StringBuilder();
+        List<String> below = new ArrayList<>(limit);
+        walkFuzzy(automaton, path, (node, distance) -> {
+            below.clear();
+            StringBuilder term = new StringBuilder(path);
+            SearchMetrics.trieNodesVisited(collect(node, term, limit, below));
+            for (String found : below) {
+                terms.merge(found, distance, Math::min);
+            }
+        });
+    }
+
+    // Heap used by the slot array, the alphabet tables excluded.
+    public long sizeInBytes() {
+        return (long) units.length * Integer.BYTES;
+    }
+
+    private int walk(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            int code = code(key.charAt(i));
+            node = code == 0 ? -1 : child(node, code);
+            if (node < 0) {
+                SearchMetrics.trieNodesVisited(i + 1);
+                return -1;
+            }
+        }
+        SearchMetrics.trieNodesVisited(key.length() + 1);
+        return node;
+    }
+
+    private int child(int node, int code) {
+        int slot = base(node) + code;
+        return slot > 0 && slot < slots() && check(slot) == node ? slot : -1;
+    }
+
+    private int endTermId(int node) {
+        int slot = base(node) + END;
+        return slot > 0 && slot < slots() && check(slot) == node ? -base(slot) - 1 : -1;
+    }
+
+    private int firstTermId(int node) {
+        for (int visited = 1; ; visited++) {
+            int termId = endTermId(node);
+            if (termId >= 0) {
+                SearchMetrics.trieNodesVisited(visited);
+                return termId;
+            }
+            for (int code = 1; code <= alphabet.length; code++) {
+                int next = child(node, code);
+                if (next >= 0) {
+                    node = next;
+                    break;
+                }
+            }
+        }
+    }
+
+    private int lastTermId(int node) {
+        for (int visited = 1; ; visited++) {
+            int next = -1;
+            for (int code = alphabet.length; code >= 1 && next < 0; code--) {
+                next = child(node, code);
+            }
+            if (next < 0) {
+                SearchMetrics.trieNodesVisited(visited);
+                return endTermId(node);
+            }
+            node = next;
+        }
+    }
+
+    // Returns the number of nodes it visited.
+    private int collect(int node, StringBuilder term, int limit, List<String> terms) {
+        if (endTermId(node) >= 0) {
+            terms.add(term.toString());
+        }
+        int visited = 1;
+        for (int code = 1; code <= alphabet.length && terms.size() < limit; code++) {
+            int next = child(node, code);
+            if (next >= 0) {
+                term.append(alphabet[code - 1]);
+                visited += collect(next, term, limit, terms);
+                term.setLength(term.length() - 1);
+            }
+        }
+        return visited;
+    }
+
+    private interface FuzzyVisitor {
+        void visit(int node, int distance);
+    }
+
+    // Depth first in lockstep with the automaton over the children in code order; a branch is left as soon as no term
+    // below it can match. The path of the current node is kept in path unless it is null.
+    private void walkFuzzy(LevenshteinAutomaton automaton, StringBuilder path, FuzzyVisitor visitor) {
+        long[] states = automaton.newStateStack();
+        automaton.start(states);
+        SearchMetrics.trieNodesVisited(walkFuzzy(0, automaton, states, 0, path, visitor));
+    }
+
+    // Returns the number of nodes it visited.
+    private int walkFuzzy(int node, LevenshteinAutomaton automaton, long[] states, int depth, StringBuilder path,
+                          FuzzyVisitor visitor) {
+        int distance = automaton.distance(states, depth);
+        if (distance >= 0) {
+            visitor.visit(node, distance);
+        }
+        int visited = 1;
+        for (int code = 1; code <= alphabet.length; code++) {
+            int next = child(node, code);
+            if (next >= 0 && automaton.step(states, depth, alphabet[code - 1])) {
+                if (path != null) {
+                    path.append(alphabet[code - 1]);
+                }
+                visited += walkFuzzy(next, automaton, states, depth + 1, path, visitor);
+                if (path != null) {
+                    path.setLength(path.length() - 1);
+                }
+            }
+        }
+        return visited;
+    }
+
+    private int base(int slot) {
+        return units[slot << 1];
+    }
+
+    private int check(int slot) {
+        return units[(slot << 1) + 1];
+    }
+
+    private void setBase(int slot, int value) {
+        units[slot << 1] = value;
+    }
+
+    private void setCheck(int slot, int value) {
+        units[(slot << 1) + 1] = value;
+    }
+
+    private int slots() {
+        return units.length >> 1;
+    }
+
+    private int code(char c) {
+        return c < codes.length ? codes[c] : 0;
+    }
+
+    // Places the children of node for terms [from, to), which all share their first depth chars, then recurses.
+    private void insertChildren(int node, List<String> terms, int from, int to, int depth) {
+        IntList childCodes = new IntList();
+        IntList childStarts = new IntList();
+        for (int i = from; i < to; i++) {
+            String term = terms.get(i);
+            int code = term.length() == depth ? END : codes[term.charAt(depth)];
+            if (childCodes.isEmpty() || childCodes.get(childCodes.size() - 1) != code) {
+                childCodes.add(code);
+                childStarts.add(i);
+            }
+        }
+        childStarts.add(to);
+
+        int nodeBase = findBase(childCodes);
+        setBase(node, nodeBase);
+        for (int i = 0; i < childCodes.size(); i++) {
+            setCheck(nodeBase + childCodes.get(i), node);
+        }
+        for (int i = 0; i < childCodes.size(); i++) {
+            int slot = nodeBase + childCodes.get(i);
+            if (childCodes.get(i) == END) {
+                setBase(slot, -(childStarts.get(i) + 1));
+            } else {
+                insertChildren(slot, terms, childStarts.get(i), childStarts.get(i + 1), depth + 1);
+            }
+        }
+    }
+
+    // First base at which every child code lands on a free slot. Regions that are almost full are skipped for good
+    // so the search does not rescan them for every node.
+    private int findBase(IntList childCodes) {
+        int firstCode = childCodes.get(0);
+        int lastCode = childCodes.get(childCodes.size() - 1);
+        int start = Math.max(firstFree, firstCode + 1);
+        int occupied = 0;
+        // Only a scan that starts at firstFree knows that nothing before the first free slot it meets is free.
+        boolean seenFree = start != firstFree;
+        for (int slot = start; ; slot++) {
+            ensureCapacity(slot + lastCode - firstCode + 1);
+            if (check(slot) != FREE) {
+                occupied++;
+                continue;
+            }
+            if (!seenFree) {
+                firstFree = slot;
+                seenFree = true;
+            }
+            int candidate = slot - firstCode;
+            boolean fits = true;
+            for (int i = 1; i < childCodes.size() && fits; i++) {
+                fits = check(candidate + childCodes.get(i)) == FREE;
+            }
+            if (fits) {
+                if (occupied >= 0.95 * (slot - start + 1)) {
+                    firstFree = slot;
+                }
+                slotCount = Math.max(slotCount, candidate + lastCode + 1);
+                return candidate;
+            }
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        int oldLength = slots();
+        if (size <= oldLength) {
+            return;
+        }
+        int newLength = Math.max(size, oldLength + (oldLength >> 1));
+        units = Arrays.copyOf(units, newLength * 2);
+        Arrays.fill(units, oldLength * 2, newLength * 2, FREE);
+    }
+
+    private static char[] alphabet(List<String> terms) {
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        int count = 0;
+        for (String term : terms) {
+            for (int i = 0; i < term.length(); i++) {
+                if (!seen[term.charAt(i)]) {
+                    seen[term.charAt(i)] = true;
+                    count++;
+                }
+            }
+        }
+        char[] alphabet = new char[count];
+        int next = 0;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (seen[c]) {
+                alphabet[next++] = (char) c;
+            }
+        }
+        return alphabet;
+    }
+}
@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Same queries as TrieBasedSearchImpl, backed by a frozen DoubleArrayTrie instead of HashMap nodes.
+//
+// The trie maps every term to a dense ID in sorted order; the doc IDs of term i are docIds[docOffsets[i] ..
+// docOffsets[i + 1]), sorted. A prefix covers a contiguous range of term IDs, so its documents are one slice of
+// docIds and no per-node sets are needed.
+public class DoubleArrayTrieSearchImpl implements SearchService {
+
+    private static final int MAX_SUGGESTIONS = 20;
+
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private DoubleArrayTrie dictionary;
+    private int[] docOffsets;
+    private int[] docIds;
+
+    public DoubleArrayTrieSearchImpl() {
+        this(new DocumentService().getDocuments());
+    }
+
+    public DoubleArrayTrieSearchImpl(List<Document> documents) {
+        for (Document document : documents) {
+            this.documents.put(document.getId(), document);
+        }
+        buildIndex(documents);
+    }
+
+    // Words are analyzed like the documents; one that analyzes into several terms is searched as a phrase.
+    @Override
+    public Set<Integer> searchWord(String word) {
+        String[] terms = Analyzer.STANDARD.terms(word);
+        return terms.length == 1 ? termDocuments(terms[0]) : searchPhrase(terms);
+    }
+
+    private Set<Integer> termDocuments(String term) {
+        int termId = dictionary.termId(term);
+        return termId < 0 ? Collections.emptySet() : docIdSet(termId, termId + 1);
+    }
+
+    @Override
+    public Set<Integer> searchPhrase(String phrase) {
+        return searchPhrase(Analyzer.STANDARD.terms(phrase));
+    }
+
+    private Set<Integer> searchPhrase(String[] words) {
+        if (words.length == 0) {
+            return new HashSet<>();
+        }
+        Set<Integer> candidates = new HashSet<>(termDocuments(words[0]));
+        for (int i = 1; i < words.length && !candidates.isEmpty(); i++) {
+            candidates.retainAll(termDocuments(words[i]));
+        }
+        Set<Integer> result = new HashSet<>();
+        for (int id : candidates) {
+            if (Analyzer.STANDARD.containsPhrase(documents.get(id).getStringContent(), words)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    // Every document with a word that starts with the prefix.
+    @Override
+    public Set<Integer> searchPrefix(String prefix) {
+        int[] range = dictionary.prefixRange(Analyzer.STANDARD.normalizePrefix(prefix));
+        return docIdSet(range[0], range[1]);
+    }
+
+    @Override
+    public DocIdIterator iterateWord(String word) {
+        String[] terms = Analyzer.STANDARD.terms(word);
+        if (terms.length != 1) {
+            return iteratePhrase(word);
+        }
+        int termId = dictionary.termId(terms[0]);
+        return termId < 0 ? DocIdIterator.empty() : docIdIterator(termId, termId + 1);
+    }
+
+    @Override
+    public DocIdIterator iteratePrefix(String prefix) {
+        int[] range = dictionary.prefixRange(Analyzer.STANDARD.normalizePrefix(prefix));
+        return docIdIterator(range[0], range[1]);
+    }
+
+    // Up to 20 words that start with the prefix, in alphabetical order.
+    @Override
+    public List<String> autoCompleteSuggestions(String prefix) {
+        if (prefix.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> suggestions = new ArrayList<>();
+        dictionary.collectTerms(Analyzer.STANDARD.normalizePrefix(prefix), MAX_SUGGESTIONS, suggestions);
+        return suggestions;
+    }
+
+    // Documents with a term within maxEdits of the given word. A word that analyzes into several terms matches the
+    // documents that have a close term for each of them, anywhere in the text.
+    @Override
+    public Set<Integer> searchFuzzy(String word, int maxEdits) {
+        LevenshteinAutomaton.checkMaxEdits(maxEdits);
+        String[] terms = Analyzer.STANDARD.terms(word);
+        Set<Integer> result = null;
+        for (int i = 0; i < terms.length && (result == null || !result.isEmpty()); i++) {
+            Set<Integer> termResult = new HashSet<>();
+            dictionary.fuzzyTermIds(new LevenshteinAutomaton(terms[i], maxEdits), termId -> {
+                for (int j = docOffsets[termId]; j < docOffsets[termId + 1]; j++) {
+                    termResult.add(docIds[j]);
+                }
+            });
+            if (result == null) {
+                result = termResult;
+            } else {
+                result.retainAll(termResult);
+            }
+        }
+        return result == null ? new HashSet<>() : result;
+    }
+
+    // Up to 20 words that start with something within maxEdits of the prefix, fewest edits first, then in
+    // alphabetical order.
+    @Override
+    public List<String> fuzzyAutoCompleteSuggestions(String prefix, int maxEdits) {
+        LevenshteinAutomaton.checkMaxEdits(maxEdits);
+        String normalized = Analyzer.STANDARD.normalizePrefix(prefix);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Integer> distances = new HashMap<>();
+        dictionary.collectFuzzyTerms(new LevenshteinAutomaton(normalized, maxEdits), MAX_SUGGESTIONS, distances);
+        List<String> suggestions = new ArrayList<>(distances.keySet());
+        suggestions.sort(Comparator.<String>comparingInt(distances::get).thenComparing(Comparator.naturalOrder()));
+        return new ArrayList<>(suggestions.subList(0, Math.min(MAX_SUGGESTIONS, suggestions.size())));
+    }
+
+    // Heap held by the dictionary and the doc ID arrays.
+    public long indexSizeInBytes() {
+        return dictionary.sizeInBytes() + (long) (docOffsets.length + docIds.length) * Integer.BYTES;
+    }
+
+    public int termCount() {
+        return dictionary.termCount();
+    }
+
+    private Set<Integer> docIdSet(int fromTerm, int toTerm) {
+        int from = docOffsets[fromTerm];
+        int to = docOffsets[toTerm];
+        Set<Integer> result = new HashSet<>((to - from) * 2);
+        for (int i = from; i < to; i++) {
+            result.add(docIds[i]);
+        }
+        return result;
+    }
+
+    // The doc IDs of a single term are already a sorted slice; a range of terms is merged from its slices.
+    private DocIdIterator docIdIterator(int fromTerm, int toTerm) {
+        if (toTerm - fromTerm == 1) {
+            return DocIdIterator.of(docIds, docOffsets[fromTerm], docOffsets[toTerm]);
+        }
+        DocIdIterator[] slices = new DocIdIterator[Math.max(0, toTerm - fromTerm)];
+        for (int i = 0; i < slices.length; i++) {
+            slices[i] = DocIdIterator.of(docIds, docOffsets[fromTerm + i], docOffsets[fromTerm + i + 1]);
+        }
+        return DocIdIterator.union(slices);
+    }
+
+    private void buildIndex(List<Document> documents) {
+        TermDictionary terms = new TermDictionary();
+        List<IntList> postings = new ArrayList<>();
+        for (Document document : documents) {
+            int docId = document.getId();
+            Analyzer.STANDARD.analyze(document.getStringContent(), (buffer, offset, length, position) -> {
+                int termId = terms.add(buffer, offset, length);
+                if (termId == postings.size()) {
+                    postings.add(new IntList());
+                }
+                postings.get(termId).add(docId);
+            });
+        }
+        // The trie numbers the terms in sorted order, which becomes the position in docOffsets.
+        Integer[] order = new Integer[terms.size()];
+        for (int termId = 0; termId < order.length; termId++) {
+            order[termId] = termId;
+        }
+        Arrays.sort(order, Comparator.comparing(terms::term));
+        List<String> sortedTerms = new ArrayList<>(order.length);
+
+        docOffsets = new int[order.length + 1];
+        IntList flat = new IntList();
+        for (int i = 0; i < order.length; i++) {
+            sortedTerms.add(terms.term(order[i]));
+            int[] ids = postings.get(order[i]).toArray();
+            Arrays.sort(ids);
+            for (int j = 0; j < ids.length; j++) {
+                if (j == 0 || ids[j] != ids[j - 1]) {
+                    flat.add(ids[j]);
+                }
+            }
+            docOffsets[i + 1] = flat.size();
+        }
+        docIds = flat.toArray();
+        dictionary = new DoubleArrayTrie(sortedTerms);
+    }
+}
@@ -0,0 +1,63 @@
+// Count-min sketch of how often keys were seen recently, with 4-bit counters.
+//
+// Each key increments one counter in each of four rows and its frequency is the smallest of the four, which can only
+// overestimate. Sixteen counters are packed into a long. Once the number of increments reaches ten times the width,
+// every counter is halved, so old popularity fades and the sketch follows the current traffic.
+public class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int width;
+    private final int sampleSize;
+    private int additions;
+
+    public FrequencySketch(long expectedEntries) {
+        long clamped = Math.max(16, Math.min(expectedEntries, 1 << 24));
+        this.width = Integer.highestOneBit((int) clamped - 1) << 1;
+        this.table = new long[width * SEEDS.length / 16];
+        this.sampleSize = 10 * width;
+    }
+
+    public int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            frequency = Math.min(frequency, counter(index(hash, row)));
+        }
+        return frequency;
+    }
+
+    public void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            int index = index(hash, row);
+            if (counter(index) < MAX_COUNT) {
+                table[index >>> 4] += 1L << ((index & 15) << 2);
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private int counter(int index) {
+        return (int) (table[index >>> 4] >>> ((index & 15) << 2)) & MAX_COUNT;
+    }
+
+    // Counter of the key in the given row; the rows are stored one after the other.
+    private int index(int hash, int row) {
+        long x = (hash + SEEDS[row]) * SEEDS[row];
+        x += x >>> 32;
+        return row * width + ((int) x & (width - 1));
+    }
+}
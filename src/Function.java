@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -7,15 +8,25 @@ public class Function {
     List<String> argumentTypes;
     boolean isVariadic;
 
-    Function(String name, List<String> argumentTypes, boolean isVariadic) {
+    // A variadic function takes one or more arguments of its last type in place of the last one.
+    public Function(String name, List<String> argumentTypes, boolean isVariadic) {
+        if (isVariadic && argumentTypes.isEmpty()) {
+            throw new IllegalArgumentException("A variadic function needs at least one argument type: " + name);
+        }
         this.name = name;
         this.argumentTypes = argumentTypes;
         this.isVariadic = isVariadic;
     }
 
-    class FunctionLibraryBruteForce {
+    @Override
+    public String toString() {
+        return name + argumentTypes + (isVariadic ? "..." : "");
+    }
+
+    // Reference implementation, checks every function on every call. See FunctionOverloadResolver for the one to use.
+    public static class FunctionLibraryBruteForce {
 
-        List<Function> functions;
+        List<Function> functions = new ArrayList<>();
 
         public void registerFunction(Function function) {
             functions.add(function);
@@ -37,12 +48,12 @@ public class Function {
                return functionArgumentTypes.equals(args);
            }
 
-           if (functionArgumentTypes.size() > argumentTypes.size()) {
+           if (functionArgumentTypes.size() > args.size()) {
                return false;
            }
 
            int size = functionArgumentTypes.size() -1;
-           for (int i =0; i < args.size(); i++) {
+           for (int i =0; i < size; i++) {
                if (!functionArgumentTypes.get(i).equals(args.get(i))) {
                    return false;
                }
@@ -59,9 +70,9 @@ public class Function {
         }
     }
 
-    class FunctionTrieBasedApproach {
+    public static class FunctionTrieBasedApproach {
         class TrieNode {
-            Map<String, TrieNode> children;
+            Map<String, TrieNode> children = new HashMap<>();
             List<Function> isVardicTrue = new ArrayList<>();
             List<Function> isVardicFalse = new ArrayList<>();
         }
@@ -84,8 +95,18 @@ public class Function {
             }
         }
 
-        private List<Function> findMatches(List<String> args) {
+        public List<Function> findMatches(List<String> args) {
             List<Function> result = new ArrayList<>();
+            if (args.isEmpty()) {
+                result.addAll(root.isVardicFalse);
+                return result;
+            }
+            // A variadic function ending at argument i matches if every argument from i on has the same type, which
+            // holds exactly for the i in the run of equal types at the end of the list.
+            int tailStart = args.size() - 1;
+            while (tailStart > 0 && args.get(tailStart - 1).equals(args.get(args.size() - 1))) {
+                tailStart--;
+            }
             TrieNode node = root;
             for (int i = 0; i < args.size(); i++) {
                 String arg = args.get(i);
@@ -96,25 +117,13 @@ public class Function {
                 if (i == args.size() - 1) {
                     result.addAll(next.isVardicFalse);
                     result.addAll(next.isVardicTrue);
-                } else {
-                    for (Function function : next.isVardicTrue) {
-                        if (allSame(args.subList(i, args.size()), arg)) {
-                            result.add(function);
-                        }
-                    }
+                } else if (i >= tailStart) {
+                    result.addAll(next.isVardicTrue);
                 }
+                node = next;
             }
             return result;
         }
 
-        private boolean allSame(List<String> args, String value) {
-            for (String arg : args) {
-                if (!arg.equals(value)) {
-                    return false;
-                }
-            }
-            return true;
-        }
-
     }
 }
@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Finds the registered functions a call with the given argument types can go to, for callers that resolve call
+// signatures at a high rate. Same matching rules as Function.FunctionLibraryBruteForce, on the trie of
+// Function.FunctionTrieBasedApproach.
+//
+// Argument type names are interned to dense int IDs when a function is registered, and a trie node keeps its children
+// in an array indexed by type ID, so a lookup is one hash lookup per argument plus an array index. A variadic function
+// ending at argument i matches when every argument from i on has its last type; the lookup tracks where the current
+// run of equal types started while it walks, so the tail is checked in the same single pass instead of once per
+// depth. Unknown type names never get an ID, a call that uses one matches nothing.
+//
+// Registration is copy-on-write: it copies the path of the new signature and publishes the new trie with a single
+// volatile write, so lookups never lock and always see a complete trie. Registrations are serialized among
+// themselves. Results of repeated argument lists come from a W-TinyLFU cache; every entry remembers the trie it was
+// computed on, so a lookup racing with a registration can never serve a result from before it.
+//
+// Matches are ordered most specific first: the non-variadic functions, then the variadic ones with the most fixed
+// arguments, each group in registration order. Returned lists are unmodifiable.
+public class FunctionOverloadResolver {
+
+    private static final long DEFAULT_CACHE_WEIGHT = 1 << 16;
+
+    private static final class Node {
+
+        static final Node EMPTY = new Node(new Node[0], new Function[0], new Function[0]);
+
+        // By type ID; shorter than the number of types when the highest IDs have no child here.
+        final Node[] children;
+        // Functions whose argument types end at this node.
+        final Function[] exact;
+        final Function[] variadic;
+
+        Node(Node[] children, Function[] exact, Function[] variadic) {
+            this.children = children;
+            this.exact = exact;
+            this.variadic = variadic;
+        }
+
+        Node child(int typeId) {
+            return typeId < children.length ? children[typeId] : null;
+        }
+
+        Node withChild(int typeId, Node child) {
+            Node[] copy = Arrays.copyOf(children, Math.max(children.length, typeId + 1));
+            copy[typeId] = child;
+            return new Node(copy, exact, variadic);
+        }
+
+        Node withFunction(Function function) {
+            if (function.isVariadic) {
+                return new Node(children, exact, append(variadic, function));
+            }
+            return new Node(children, append(exact, function), variadic);
+        }
+
+        private static Function[] append(Function[] functions, Function function) {
+            Function[] copy = Arrays.copyOf(functions, functions.length + 1);
+            copy[functions.length] = function;
+            return copy;
+        }
+    }
+
+    // A published trie; the version tells cached results of older tries apart.
+    private static final class Trie {
+        final Node root;
+        final long version;
+
+        Trie(Node root, long version) {
+            this.root = root;
+            this.version = version;
+        }
+    }
+
+    private static final class CachedMatches {
+        final long version;
+        final List<Function> matches;
+
+        CachedMatches(long version, List<Function> matches) {
+            this.version = version;
+            this.matches = matches;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Integer> typeIds = new ConcurrentHashMap<>();
+    private volatile Trie trie = new Trie(Node.EMPTY, 0);
+    // Null when caching is off.
+    private final WTinyLfuCache<List<String>, CachedMatches> cache;
+
+    public FunctionOverloadResolver() {
+        this(DEFAULT_CACHE_WEIGHT);
+    }
+
+    // Caches up to cacheWeight argument lists and matches, weighted by length; 0 turns the cache off.
+    public FunctionOverloadResolver(long cacheWeight) {
+        this.cache = cacheWeight == 0 ? null
+                : new WTinyLfuCache<>(cacheWeight, cached -> 1 + cached.matches.size());
+    }
+
+    public synchronized void registerFunction(Function function) {
+        int[] signature = new int[function.argumentTypes.size()];
+        for (int i = 0; i < signature.length; i++) {
+            // Only registrations add types and they hold the lock, so the next ID is the current size.
+            signature[i] = typeIds.computeIfAbsent(function.argumentTypes.get(i), type -> typeIds.size());
+        }
+        Trie current = trie;
+        trie = new Trie(insert(current.root, signature, 0, function), current.version + 1);
+        if (cache != null) {
+            // Entries of the old trie can no longer be served, this only gives their memory back early.
+            cache.invalidateAll();
+        }
+    }
+
+    public List<Function> findMatches(List<String> args) {
+        Trie current = trie;
+        if (cache == null) {
+            return resolve(current.root, args);
+        }
+        CachedMatches cached = cache.get(args);
+        if (cached != null && cached.version == current.version) {
+            return cached.matches;
+        }
+        List<Function> matches = resolve(current.root, args);
+        cache.put(List.copyOf(args), new CachedMatches(current.version, matches));
+        return matches;
+    }
+
+    public WTinyLfuCache.Stats cacheStats() {
+        return cache == null ? null : cache.stats();
+    }
+
+    private static Node insert(Node node, int[] signature, int depth, Function function) {
+        if (depth == signature.length) {
+            return node.withFunction(function);
+        }
+        Node child = node.child(signature[depth]);
+        return node.withChild(signature[depth], insert(child == null ? Node.EMPTY : child, signature, depth + 1,
+                function));
+    }
+
+    private List<Function> resolve(Node root, List<String> args) {
+        int argCount = args.size();
+        Node node = root;
+        // Nodes with variadic functions reached inside the current run of equal types, shallowest first. A node
+        // reached before the run started has an argument of another type after it and cannot match.
+        Node[] tails = null;
+        int tailCount = 0;
+        int runType = -1;
+        for (int i = 0; i < argCount; i++) {
+            Integer typeId = typeIds.get(args.get(i));
+            if (typeId == null) {
+                return Collections.emptyList();
+            }
+            if (typeId != runType) {
+                runType = typeId;
+                tailCount = 0;
+            }
+            if (node != null) {
+                node = node.child(typeId);
+                if (node != null && node.variadic.length > 0) {
+                    if (tails == null) {
+                        tails = new Node[Math.min(argCount - i, 8)];
+                    } else if (tailCount == tails.length) {
+                        tails = Arrays.copyOf(tails, tails.length * 2);
+                    }
+                    tails[tailCount++] = node;
+                }
+            } else if (tailCount == 0) {
+                // Off the trie with no variadic function left that could take the rest.
+                return Collections.emptyList();
+            }
+        }
+
+        int size = node == null ? 0 : node.exact.length;
+        for (int i = 0; i < tailCount; i++) {
+            size += tails[i].variadic.length;
+        }
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        List<Function> matches = new ArrayList<>(size);
+        if (node != null) {
+            matches.addAll(Arrays.asList(node.exact));
+        }
+        for (int i = tailCount - 1; i >= 0; i--) {
+            matches.addAll(Arrays.asList(tails[i].variadic));
+        }
+        return Collections.unmodifiableList(matches);
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Concurrent histogram of non-negative longs with a bounded relative error, the bucket layout of HdrHistogram.
+//
+// Values below 128 get a bucket each. Above that every power of two is split into 64 linear sub-buckets, so a bucket
+// is never wider than 1/64 of the values it holds and a percentile is off by less than 1.6%. Values up to 2^43 (two
+// and a half hours in nanoseconds) are tracked, bigger ones land in the last bucket. Recording is one atomic increment
+// in a fixed array, no allocation and no lock; reading takes a Snapshot, which can be a little torn while recording
+// goes on.
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+    private static final long MAX_TRACKABLE = (1L << 43) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long clamped = Math.max(0, Math.min(value, MAX_TRACKABLE));
+        counts.incrementAndGet(indexOf(clamped));
+        sum.addAndGet(clamped);
+        long seen = max.get();
+        while (clamped > seen && !max.compareAndSet(seen, clamped)) {
+            seen = max.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.get(), max.get());
+    }
+
+    // Values 0..127 map to themselves; a bigger value v with highest bit h goes to sub-bucket v >>> (h - 6) of the
+    // h - 6'th group of 64.
+    private static int indexOf(long value) {
+        if (value < 2 * HALF_SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // The largest value that lands in the bucket.
+    private static long highestValueOf(int index) {
+        if (index < 2 * HALF_SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKETS - 1;
+        long subBucket = index - (long) shift * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public static class Snapshot {
+
+        public static final Snapshot EMPTY = new Snapshot(new long[0], 0, 0, 0);
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        // The value that percentile percent of the recorded values are at or below, e.g. valueAt(99.9).
+        public long valueAt(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        // Percentiles with every value divided by scale, e.g. 1000 to print nanoseconds as microseconds.
+        public String toString(double scale) {
+            return String.format("count=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f", count,
+                    mean() / scale, valueAt(50) / scale, valueAt(90) / scale, valueAt(99) / scale,
+                    valueAt(99.9) / scale, max / scale);
+        }
+
+        @Override
+        public String toString() {
+            return toString(1);
+        }
+    }
+}
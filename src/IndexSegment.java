@@ -0,0 +1,168 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Immutable in-memory segment of a LiveIndex: compressed postings for a batch of documents plus a tombstone bitmap.
+//
+// Nothing in a segment ever changes after it is published. Deleting documents produces a new IndexSegment that shares
+// the postings and only carries a bigger tombstone bitmap, so readers holding the old instance keep a consistent view.
+public class IndexSegment implements BooleanQuery.TermIndex {
+
+    private final long id;
+    private final TermPostings postings;
+    private final SortedTermDictionary dictionary;
+    private final DocLengths docLengths;
+    private final DocIdBitmap docs;
+    private final DocIdBitmap deleted;
+    private final DocIdBitmap liveDocs;
+
+    private IndexSegment(long id, TermPostings postings, SortedTermDictionary dictionary,
+                         DocLengths docLengths, DocIdBitmap docs, DocIdBitmap deleted) {
+        this.id = id;
+        this.postings = postings;
+        this.dictionary = dictionary;
+        this.docLengths = docLengths;
+        this.docs = docs;
+        this.deleted = deleted;
+        this.liveDocs = docs.andNot(deleted);
+    }
+
+    public static IndexSegment build(long id, List<Document> documents) {
+        long[] lengths = new long[documents.size()];
+        TermPostings postings = InvertedIndexBasedSearch.buildPostings(documents, Analyzer.STANDARD, lengths);
+        return create(id, postings, DocLengths.ofPacked(lengths, lengths.length));
+    }
+
+    private static IndexSegment create(long id, TermPostings postings, DocLengths docLengths) {
+        return new IndexSegment(id, postings, SortedTermDictionary.of(postings), docLengths, docLengths.docIds(), DocIdBitmap.EMPTY);
+    }
+
+    // Rewrites the live documents of several segments into one, dropping everything that is tombstoned.
+    public static IndexSegment merge(long id, List<IndexSegment> segments) {
+        TermPostings.Builder builders = new TermPostings.Builder();
+        long[] lengths = new long[16];
+        int lengthCount = 0;
+        for (IndexSegment segment : segments) {
+            for (int termId = 0; termId < segment.postings.termCount(); termId++) {
+                PostingList.Builder builder = null;
+                PostingList.Cursor cursor = segment.postings.postingsAt(termId).cursor();
+                for (int doc = cursor.nextDoc(); doc != PostingList.Cursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+                    if (segment.deleted.contains(doc)) {
+                        continue;
+                    }
+                    if (builder == null) {
+                        builder = builders.postingsOf(segment.postings.term(termId));
+                    }
+                    int[] positions = cursor.positions();
+                    for (int i = 0; i < cursor.freq(); i++) {
+                        builder.add(doc, positions[i]);
+                    }
+                }
+            }
+            for (int i = 0; i < segment.docLengths.docCount(); i++) {
+                int doc = segment.docLengths.docIdAt(i);
+                if (segment.deleted.contains(doc)) {
+                    continue;
+                }
+                if (lengthCount == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, lengthCount << 1);
+                }
+                lengths[lengthCount++] = DocLengths.pack(doc, segment.docLengths.lengthAt(i));
+            }
+        }
+        return create(id, builders.build(), DocLengths.ofPacked(lengths, lengthCount));
+    }
+
+    // A copy of this segment with the given documents tombstoned as well, or this segment if none of them is in it.
+    public IndexSegment withDeletes(DocIdBitmap ids) {
+        DocIdBitmap newlyDeleted = liveDocs.and(ids);
+        if (newlyDeleted.isEmpty()) {
+            return this;
+        }
+        return new IndexSegment(id, postings, dictionary, docLengths, docs, deleted.or(newlyDeleted));
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public int liveDocCount() {
+        return liveDocs.cardinality();
+    }
+
+    public DocIdBitmap deleted() {
+        return deleted;
+    }
+
+    public DocLengths docLengths() {
+        return docLengths;
+    }
+
+    @Override
+    public PostingList postings(String term) {
+        return postings.get(term);
+    }
+
+    @Override
+    public DocIdBitmap allDocuments() {
+        return liveDocs;
+    }
+
+    public DocIdBitmap searchWord(String word) {
+        PostingList list = postings.get(word);
+        return list == null ? DocIdBitmap.EMPTY : DocIdBitmap.of(list).andNot(deleted);
+    }
+
+    public Set<Integer> searchPhrase(String[] words) {
+        PostingList[] lists = postings.postingsOf(postings.terms().ids(words));
+        for (PostingList list : lists) {
+            if (list == null) {
+                return new HashSet<>();
+            }
+        }
+        Set<Integer> result = PhraseMatcher.match(lists);
+        result.removeIf(deleted::contains);
+        return result;
+    }
+
+    public DocIdBitmap searchPrefix(String prefix) {
+        return dictionary.prefixDocuments(prefix).andNot(deleted);
+    }
+
+    public DocIdBitmap searchBooleanQuery(BooleanQuery.Node query) {
+        return BooleanQuery.plan(query, this).evaluate(this).andNot(deleted);
+    }
+
+    // Lazy versions of the searches above for LiveIndex: the postings are decoded as the caller iterates and the
+    // tombstoned documents are skipped on the way.
+    public DocIdIterator iterateWord(String word) {
+        PostingList list = postings.get(word);
+        return list == null ? DocIdIterator.empty() : DocIdIterator.excluding(list.cursor(), deleted);
+    }
+
+    public DocIdIterator iteratePhrase(String[] words) {
+        PostingList[] lists = postings.postingsOf(postings.terms().ids(words));
+        for (PostingList list : lists) {
+            if (list == null) {
+                return DocIdIterator.empty();
+            }
+        }
+        return DocIdIterator.excluding(PhraseMatcher.iterator(lists), deleted);
+    }
+
+    public DocIdIterator iteratePrefix(String prefix) {
+        return DocIdIterator.excluding(dictionary.prefixIterator(prefix), deleted);
+    }
+
+    public String explain(SearchQuery query) {
+        if (query.getType() == SearchQuery.Type.PREFIX) {
+            return dictionary.explainPrefix(Analyzer.STANDARD.normalizePrefix(query.getText()));
+        }
+        return BooleanQuery.explain(query, this, Analyzer.STANDARD);
+    }
+
+    public List<ScoredDocument> searchRanked(String[] words, int k) {
+        return RankedSearch.topK(postings.postingsOf(postings.terms().ids(words)), docLengths, k, deleted);
+    }
+}
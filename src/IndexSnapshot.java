@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Supplier;
+
+// Startup from an index snapshot instead of analyzing the whole corpus again.
+//
+// A snapshot is written to a temporary file next to its final path and renamed over it, so a reader sees either the
+// old file or the complete new one, never half of it, and an index still mapping the old file keeps working. The
+// formats carry a version and a CRC32C checksum; a snapshot that is missing, from another version or corrupt is
+// rebuilt from the documents and written again.
+//
+// A snapshot is not tied to the documents it was built from: after the corpus changed, delete it or write a new one.
+public class IndexSnapshot {
+
+    private static final System.Logger LOG = System.getLogger("IndexSnapshot");
+
+    public interface Writer<T> {
+        void write(T index, Path path) throws IOException;
+    }
+
+    public interface Loader<T> {
+        T load(Path path) throws IOException;
+    }
+
+    private IndexSnapshot() {
+    }
+
+    public static <T> void writeAtomically(T index, Path path, Writer<T> writer) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            writer.write(index, temporary);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Loads the snapshot if there is a usable one, otherwise builds the index and snapshots it for the next start.
+    // Failing to write the snapshot is logged, the index built is returned either way.
+    public static <T> T loadOrBuild(Path snapshot, Loader<T> loader, Supplier<T> builder, Writer<T> writer) {
+        if (Files.exists(snapshot)) {
+            try {
+                return loader.load(snapshot);
+            } catch (IOException | IllegalArgumentException e) {
+                LOG.log(System.Logger.Level.WARNING, "Rebuilding the index, cannot load snapshot " + snapshot, e);
+            }
+        }
+        T index = builder.get();
+        try {
+            writeAtomically(index, snapshot, writer);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Could not write snapshot " + snapshot, e);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+// Records the latency and result size of every query on any SearchService into SearchMetrics, and logs the slow ones
+// with the delegate's plan for them. The plan is only worked out after a query turned out to be slow, so fast queries
+// pay for two nanoTime calls and two histogram increments. With metrics disabled every call goes straight through.
+public class InstrumentedSearchService implements SearchService {
+
+    private final SearchService delegate;
+
+    public InstrumentedSearchService(SearchService delegate) {
+        this.delegate = delegate;
+        if (SearchMetrics.ENABLED) {
+            SearchMetrics.registerMBean();
+        }
+    }
+
+    @Override
+    public Set<Integer> searchWord(String word) {
+        if (!SearchMetrics.ENABLED) {
+            return delegate.searchWord(word);
+        }
+        long start = System.nanoTime();
+        Set<Integer> result = delegate.searchWord(word);
+        record(SearchQuery.Type.WORD, word, 0, start, result);
+        return result;
+    }
+
+    @Override
+    public Set<Integer> searchPhrase(String phrase) {
+        if (!SearchMetrics.ENABLED) {
+            return delegate.searchPhrase(phrase);
+        }
+        long start = System.nanoTime();
+        Set<Integer> result = delegate.searchPhrase(phrase);
+        record(SearchQuery.Type.PHRASE, phrase, 0, start, result);
+        return result;
+    }
+
+    @Override
+    public Set<Integer> searchPrefix(String prefix) {
+        if (!SearchMetrics.ENABLED) {
+            return delegate.searchPrefix(prefix);
+        }
+        long start = System.nanoTime();
+        Set<Integer> result = delegate.searchPrefix(prefix);
+        record(SearchQuery.Type.PREFIX, prefix, 0, start, result);
+        return result;
+    }
+
+    @Override
+    public List<String> autoCompleteSuggestions(String prefix) {
+        if (!SearchMetrics.ENABLED) {
+            return delegate.autoCompleteSuggestions(prefix);
+        }
+        long start = System.nanoTime();
+        List<String> result = delegate.autoCompleteSuggestions(prefix);
+        record(SearchQuery.Type.AUTOCOMPLETE, prefix, 0, start, result);
+        return result;
+    }
+
+    @Override
+    public Set<Integer> searchBooleanQuery(String query) {
+        if (!SearchMetrics.ENABLED) {
+            return delegate.searchBooleanQuery(query);
+        }
+        long start = System.nanoTime();
+        Set<Integer> result = delegate.searchBooleanQuery(query);
+        record(SearchQuery.Type.BOOLEAN, query, 0, start, result);
+        return result;
+    }
+
+    @Override
+    public List<ScoredDocument> searchRanked(String query, int k) {
+        if (!SearchMetrics.ENABLED) {
+            return delegate.searchRanked(query, k);
+        }
+        long start = System.nanoTime();
+        List<ScoredDocument> result = delegate.searchRanked(query, k);
+        record(SearchQuery.Type.RANKED, query, k, start, result);
+        return result;
+    }
+
+    @Override
+    public Set<Integer> searchFuzzy(String word, int maxEdits) {
+        if (!SearchMetrics.ENABLED) {
+            return delegate.searchFuzzy(word, maxEdits);
+        }
+        long start = System.nanoTime();
+        Set<Integer> result = delegate.searchFuzzy(word, maxEdits);
+        record(SearchQuery.Type.FUZZY, word, maxEdits, start, result);
+        return result;
+    }
+
+    @Override
+    public List<String> fuzzyAutoCompleteSuggestions(String prefix, int maxEdits) {
+        if (!SearchMetrics.ENABLED) {
+            return delegate.fuzzyAutoCompleteSuggestions(prefix, maxEdits);
+        }
+        long start = System.nanoTime();
+        List<String> result = delegate.fuzzyAutoCompleteSuggestions(prefix, maxEdits);
+        record(SearchQuery.Type.FUZZY_AUTOCOMPLETE, prefix, maxEdits, start, result);
+        return result;
+    }
+
+    // A batch shares work between its queries, so there is no latency per query to record; it goes straight through.
+    @Override
+    public List<Object> searchBatch(List<SearchQuery> queries) {
+        return delegate.searchBatch(queries);
+    }
+
+    // Lazy results are produced after the call returns, so there is no latency to record; they go straight through.
+    @Override
+    public DocIdIterator iterateWord(String word) {
+        return delegate.iterateWord(word);
+    }
+
+    @Override
+    public DocIdIterator iteratePhrase(String phrase) {
+        return delegate.iteratePhrase(phrase);
+    }
+
+    @Override
+    public DocIdIterator iteratePrefix(String prefix) {
+        return delegate.iteratePrefix(prefix);
+    }
+
+    @Override
+    public DocIdIterator iterateBooleanQuery(String query) {
+        return delegate.iterateBooleanQuery(query);
+    }
+
+    @Override
+    public long indexGeneration() {
+        return delegate.indexGeneration();
+    }
+
+    @Override
+    public String explain(SearchQuery query) {
+        return delegate.explain(query);
+    }
+
+    // Failed queries are not recorded, their latency says nothing about the index.
+    private void record(SearchQuery.Type type, String text, int k, long start, Collection<?> result) {
+        long nanos = System.nanoTime() - start;
+        SearchMetrics.recordQuery(type, nanos, result.size());
+        if (nanos >= SearchMetrics.SLOW_QUERY_NANOS) {
+            SearchQuery query = new SearchQuery(type, SearchQuery.normalize(text), k);
+            SearchMetrics.recordSlowQuery(query, nanos, result.size(), plan(query));
+        }
+    }
+
+    private String plan(SearchQuery query) {
+        try {
+            return delegate.explain(query);
+        } catch (RuntimeException e) {
+            return "unavailable: " + e;
+        }
+    }
+}
@@ -1,174 +1,179 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
-public class InvertedIndexBasedSearch implements SearchService {
+public class InvertedIndexBasedSearch implements SearchService, BooleanQuery.TermIndex {
 
-    private Map<String, Map<Integer, List<Integer>>> invertedIndex;
+    // Postings by term ID; queries resolve their terms to IDs once and then index into it.
+    private TermPostings invertedIndex;
+    private SortedTermDictionary dictionary;
+    private DocIdBitmap allDocuments;
+    private DocLengths docLengths;
+    private final Analyzer analyzer;
 
     public InvertedIndexBasedSearch() {
-        this.invertedIndex = buildInvertedIndex();
+        this(new DocumentService().getDocuments());
     }
 
+    // Indexes the given documents only, e.g. one shard of a ShardedSearchService.
+    public InvertedIndexBasedSearch(List<Document> documents) {
+        this(documents, Analyzer.STANDARD);
+    }
+
+    // Documents and queries both go through the analyzer, e.g. one that drops stopwords.
+    public InvertedIndexBasedSearch(List<Document> documents, Analyzer analyzer) {
+        this.analyzer = analyzer;
+        this.invertedIndex = buildInvertedIndex(documents);
+        this.dictionary = SortedTermDictionary.of(invertedIndex);
+    }
+
+    private InvertedIndexBasedSearch(TermPostings invertedIndex, DocLengths docLengths, Analyzer analyzer) {
+        this.analyzer = analyzer;
+        this.invertedIndex = invertedIndex;
+        this.docLengths = docLengths;
+        this.allDocuments = docLengths.docIds();
+        this.dictionary = SortedTermDictionary.of(invertedIndex);
+    }
+
+    public static InvertedIndexBasedSearch loadSnapshot(Path path) throws IOException {
+        return loadSnapshot(path, Analyzer.STANDARD);
+    }
+
+    // An index over a snapshot written by writeSnapshot, or any segment written with the same analyzer. Posting lists
+    // and document lengths stay in the mapped file; only the term dictionaries are built on the heap, so loading
+    // costs one pass over the terms and no document is analyzed.
+    public static InvertedIndexBasedSearch loadSnapshot(Path path, Analyzer analyzer) throws IOException {
+        SegmentReader segment = SegmentReader.open(path);
+        TermDictionary terms = new TermDictionary(segment.termCount());
+        PostingList[] postings = new PostingList[segment.termCount()];
+        for (int ordinal = 0; ordinal < postings.length; ordinal++) {
+            terms.add(segment.termAt(ordinal));
+            postings[ordinal] = segment.postingsAt(ordinal);
+        }
+        return new InvertedIndexBasedSearch(new TermPostings(terms, postings), segment.docLengths(), analyzer);
+    }
+
+    // Loads the snapshot at the path, or indexes the documents of the DocumentService and writes it there.
+    public static InvertedIndexBasedSearch loadOrBuild(Path snapshot) {
+        return IndexSnapshot.loadOrBuild(snapshot, InvertedIndexBasedSearch::loadSnapshot,
+                InvertedIndexBasedSearch::new, InvertedIndexBasedSearch::writeSnapshot);
+    }
+
+    // Writes the index as a segment, see SegmentWriter.
+    public void writeSnapshot(Path path) throws IOException {
+        SegmentWriter.write(path, invertedIndex, docLengths);
+    }
+
+    // A word that analyzes into several terms, like "e-mail", is searched as a phrase.
     @Override
     public Set<Integer> searchWord(String word) {
-        return invertedIndex.get(word) == null ? Collections.emptySet() : invertedIndex.get(word).keySet();
+        String[] terms = analyzer.terms(word);
+        if (terms.length != 1) {
+            return searchPhrase(terms);
+        }
+        int termId = invertedIndex.termId(terms[0]);
+        return termId == TermDictionary.NO_TERM ? Collections.emptySet() : invertedIndex.postingsAt(termId).docIdSet();
     }
 
-    public Set<Integer> phraseSearch(String phrase) {
-        Set<Integer> result = new HashSet();
-        String[] words = phrase.split("\\s+");
-        Map<Integer, List<Integer>> documentsWithWords = invertedIndex.get(words[0]);
-
-        for (int id : documentsWithWords.keySet()) {
-
-
-            for (int index : documentsWithWords.get(id)) {
-                boolean found = true;
-                for (int i = 1; i < words.length; i++) {
-                    int requiredIndex =index + i;
-                            List <Integer> possibleIndexes = invertedIndex
-                                    .getOrDefault(words[i], new HashMap<>())
-                                    .getOrDefault(id, new ArrayList<>());
-                            if (!possibleIndexes.contains(requiredIndex)) {
-                                found = false;
-                            }
-                }
-                if (found) {
-                    result.add(id);
-                }
+    @Override
+    public Set<Integer> searchPhrase(String phrase) {
+        return searchPhrase(analyzer.terms(phrase));
+    }
+
+    private Set<Integer> searchPhrase(String[] words) {
+        if (words.length == 0) {
+            return new HashSet<>();
+        }
+        int[] termIds = invertedIndex.terms().ids(words);
+        for (int termId : termIds) {
+            if (termId == TermDictionary.NO_TERM) {
+                return new HashSet<>();
             }
         }
-        return result;
+        return PhraseMatcher.match(invertedIndex.postingsOf(termIds));
+    }
+
+    public Set<Integer> phraseSearch(String phrase) {
+        return searchPhrase(phrase);
     }
 
 
+    // The matching terms are one binary-searched range of the sorted dictionary; their postings are merged in a
+    // single pass.
     @Override
     public Set<Integer> searchPrefix(String prefix) {
-        return invertedIndex
-                .entrySet()
-                .stream()
-                .filter(entry -> entry.getKey().startsWith(prefix))
-                .flatMap(entry -> entry.getValue().keySet()
-                        .stream())
-                .collect(Collectors.toSet());
-    }
-
-    private Set<Integer> searchBooleanQueue(String query) {
-        // Stack to hold intermediate document sets for operands (results of searchWord)
-        Stack<Set<Integer>> intermediateStack = new Stack<>();
-
-        // Stack to hold logical operators (AND, OR, parentheses)
-        Stack<String> operators = new Stack<>();
-
-        // Tokenize the input query string into words and operators
-        List<String> tokens = tokenize(query);
-
-        for (String token : tokens) {
-            if (token.equals("(")) {
-                // Push opening parenthesis to the operator stack
-                operators.push(token);
-            } else if (token.equals(")")) {
-                // When a closing parenthesis is found, process the expression inside
-                // Keep applying operators until matching "(" is found
-                while (!operators.empty() && !operators.peek().equals("(")) {
-                    applyOperator(intermediateStack, operators.pop());
-                }
-                // Discard the matching "("
-                operators.pop();
-            } else if (token.equals("AND") || token.equals("OR")) {
-                // While there are operators with higher or equal precedence, apply them
-                while (!operators.empty() && precedence(operators.peek()) >= precedence(token)) {
-                    applyOperator(intermediateStack, operators.pop());
-                }
-                // Push the current operator to the stack
-                operators.push(token);
-            } else {
-                // It's a search term, perform word search and push result set to operand stack
-                intermediateStack.push(searchWord(token));
-            }
-        }
+        return dictionary.prefixDocuments(analyzer.normalizePrefix(prefix)).toSet();
+    }
 
-        // Apply any remaining operators
-        while (!operators.isEmpty()) {
-            applyOperator(intermediateStack, operators.pop());
-        }
+    @Override
+    public Set<Integer> searchBooleanQuery(String query) {
+        return BooleanQuery.search(query, this, analyzer).toSet();
+    }
 
-        // Final result is on top of operand stack
-        return intermediateStack.isEmpty() ? new HashSet<>() : intermediateStack.pop();
-    }
-
-    // Assign precedence to operators (AND > OR)
-    private int precedence(String op) {
-        if (op.equals("AND")) return 2;
-        if (op.equals("OR")) return 1;
-        return 0;
-    }
-
-    // Apply the logical operator to top two sets on the operand stack
-    private void applyOperator(Stack<Set<Integer>> intermediateStack, String op) {
-        Set<Integer> right = intermediateStack.pop(); // right operand
-        Set<Integer> left = intermediateStack.pop();  // left operand
-        if (op.equals("AND")) {
-            // Intersection: documents that appear in both sets
-            left.retainAll(right);
-            intermediateStack.push(left);
-        } else if (op.equals("OR")) {
-            // Union: documents that appear in either set
-            left.addAll(right);
-            intermediateStack.push(left);
+    @Override
+    public DocIdIterator iterateWord(String word) {
+        String[] terms = analyzer.terms(word);
+        if (terms.length != 1) {
+            return iteratePhrase(terms);
         }
+        int termId = invertedIndex.termId(terms[0]);
+        return termId == TermDictionary.NO_TERM ? DocIdIterator.empty() : invertedIndex.postingsAt(termId).cursor();
     }
 
+    @Override
+    public DocIdIterator iteratePhrase(String phrase) {
+        return iteratePhrase(analyzer.terms(phrase));
+    }
 
-    private List<String> tokenize(String word) {
-        List<String> tokens = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
-        for (char c : word.toCharArray()) {
-            if (c == '(' || c == ')') {
-                if (sb.length() > 0) {
-                    tokens.add(sb.toString());
-                    sb.setLength(0);
-                }
-                tokens.add(String.valueOf(c));
-            } else if (Character.isWhitespace(c)) {
-                if (sb.length() > 0) {
-                    tokens.add(sb.toString().trim());
-                    sb.setLength(0);
-                }
-            } else {
-                sb.append(c);
-            }
-        }
-        if (sb.length() > 0) {
-            tokens.add(sb.toString().trim());
-        }
-        return tokens;
-    }
-
-    private List<String> tokenizeV2(String phrase) {
-        List<String> tokens = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
-
-        for (char c: phrase.toCharArray()) {
-            if (c == '(' || c == ')') {
-                if (sb.length() > 0) {
-                    tokens.add(sb.toString());
-                    sb.setLength(0);
-                }
-                sb.append(c);
-            } else if (Character.isWhitespace(c)) {
-                if (sb.length() > 0) {
-                    tokens.add(sb.toString());
-                    sb.setLength(0);
-                }
-            } else {
-                sb.append(c);
+    private DocIdIterator iteratePhrase(String[] words) {
+        int[] termIds = invertedIndex.terms().ids(words);
+        for (int termId : termIds) {
+            if (termId == TermDictionary.NO_TERM) {
+                return DocIdIterator.empty();
             }
         }
-        if (sb.length() > 0) {
-            tokens.add(sb.toString().trim());
+        return PhraseMatcher.iterator(invertedIndex.postingsOf(termIds));
+    }
+
+    @Override
+    public DocIdIterator iteratePrefix(String prefix) {
+        return dictionary.prefixIterator(analyzer.normalizePrefix(prefix));
+    }
+
+    // Boolean queries are evaluated on bitmaps, only the boxing into a Set is saved.
+    @Override
+    public DocIdIterator iterateBooleanQuery(String query) {
+        return BooleanQuery.search(query, this, analyzer).iterator();
+    }
+
+    @Override
+    public List<ScoredDocument> searchRanked(String query, int k) {
+        int[] termIds = invertedIndex.terms().ids(analyzer.distinctTerms(query));
+        return RankedSearch.topK(invertedIndex.postingsOf(termIds), docLengths, k);
+    }
+
+    // Word, phrase and boolean queries of the batch share the documents of their terms, the queries run on all cores.
+    @Override
+    public List<Object> searchBatch(List<SearchQuery> queries) {
+        return QueryBatch.search(queries, this, this, analyzer);
+    }
+
+    @Override
+    public String explain(SearchQuery query) {
+        if (query.getType() == SearchQuery.Type.PREFIX) {
+            return dictionary.explainPrefix(analyzer.normalizePrefix(query.getText()));
         }
-        return tokens;
+        return BooleanQuery.explain(query, this, analyzer);
+    }
+
+    @Override
+    public PostingList postings(String term) {
+        return invertedIndex.get(term);
+    }
+
+    @Override
+    public DocIdBitmap allDocuments() {
+        return allDocuments;
     }
 
     // Followup 2
@@ -177,18 +182,37 @@ public class InvertedIndexBasedSearch implements SearchService {
     // ================================
     // Let N be the number of documents.
     // Let W be the total number of words across all documents.
-    private Map<String, Map<Integer, List<Integer>>> buildInvertedIndex() {
-        DocumentService docService = new DocumentService();
-        List<Document> documents = docService.getDocuments();
-        Map<String, Map<Integer, List<Integer>>> invertedIndex = new HashMap<>();
+    //
+    // Postings are collected per term in primitive builders and compressed once every document has been seen.
+    // Large corpora are indexed on all cores, see ParallelIndexBuilder.
+    private TermPostings buildInvertedIndex(List<Document> documents) {
+        long[] lengths = new long[documents.size()];
+        TermPostings postings = new ParallelIndexBuilder().buildPostings(documents, analyzer, lengths);
+        this.docLengths = DocLengths.ofPacked(lengths, lengths.length);
+        this.allDocuments = docLengths.docIds();
+        return postings;
+    }
+
+    static TermPostings buildPostings(List<Document> documents, Analyzer analyzer) {
+        return buildPostings(documents, analyzer, new long[documents.size()]);
+    }
+
+    // Also stores DocLengths.pack(docId, length) of the i-th document in lengths[i], counted in the same pass.
+    static TermPostings buildPostings(List<Document> documents, Analyzer analyzer, long[] lengths) {
+        TermPostings.Builder builder = new TermPostings.Builder();
+        int i = 0;
         for (Document document : documents) {
-            for (Document.Token word : document.getContent()) {
-                invertedIndex.computeIfAbsent(word.getWord(), k -> new HashMap<>())
-                        .computeIfAbsent(document.getId(), k -> new ArrayList<>())
-                        .add(word.getIndex());
-            }
+            lengths[i++] = DocLengths.pack(document.getId(), addPostings(document, analyzer, builder));
         }
-        return invertedIndex;
+        return builder.build();
+    }
+
+    // Streams the terms of the document into the builder; a String is only created for a term seen the first time.
+    // Returns the number of terms, the length of the document.
+    static int addPostings(Document document, Analyzer analyzer, TermPostings.Builder builder) {
+        int docId = document.getId();
+        return analyzer.analyze(document.getStringContent(),
+                (buffer, offset, length, position) -> builder.add(buffer, offset, length, docId, position));
     }
 
-}
\ No newline at end of file
+}
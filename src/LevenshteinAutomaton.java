@@ -0,0 +1,115 @@
+// Accepts the strings within maxEdits insertions, deletions or substitutions of one word, for typo tolerant lookups.
+//
+// The automaton is never built as a graph: its nondeterministic states are simulated bit-parallel (Wu and Manber).
+// After reading some input, bit i of row e is set when the first i chars of the word can be turned into the input
+// with at most e edits, so a state is maxEdits + 1 longs and reading a char is a handful of shifts and ORs per row.
+// The input matches when bit word.length() is set, and no extension of the input can match once the last row is
+// empty, which is what lets a trie walk prune a branch after its first few chars.
+//
+// A walk keeps the states of the current path in a stack from newStateStack(), one state per depth, so stepping
+// down and backtracking allocate nothing. Words are limited to 63 chars, the width of a row.
+public class LevenshteinAutomaton {
+
+    public static final int MAX_EDITS = 2;
+    public static final int MAX_WORD_LENGTH = 63;
+
+    private final int maxEdits;
+    private final int rows;
+    // Bits 0 .. length of a row, and the bit that means the whole word was matched.
+    private final long rowMask;
+    private final long accept;
+    // The distinct chars of the word, and for each one the positions where it occurs.
+    private final char[] chars;
+    private final long[] positions;
+    // Longest input that can still match: the word plus maxEdits inserted chars.
+    private final int maxDepth;
+
+    public LevenshteinAutomaton(String word, int maxEdits) {
+        checkMaxEdits(maxEdits);
+        if (word.length() > MAX_WORD_LENGTH) {
+            throw new IllegalArgumentException("Fuzzy words are limited to " + MAX_WORD_LENGTH + " chars: " + word);
+        }
+        this.maxEdits = maxEdits;
+        this.rows = maxEdits + 1;
+        this.rowMask = -1L >>> (63 - word.length());
+        this.accept = 1L << word.length();
+        this.maxDepth = word.length() + maxEdits;
+
+        char[] distinct = new char[word.length()];
+        long[] masks = new long[word.length()];
+        int count = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int j = 0;
+            while (j < count && distinct[j] != word.charAt(i)) {
+                j++;
+            }
+            if (j == count) {
+                distinct[count++] = word.charAt(i);
+            }
+            masks[j] |= 1L << i;
+        }
+        this.chars = java.util.Arrays.copyOf(distinct, count);
+        this.positions = java.util.Arrays.copyOf(masks, count);
+    }
+
+    public static void checkMaxEdits(int maxEdits) {
+        if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+            throw new IllegalArgumentException("maxEdits must be between 0 and " + MAX_EDITS + ": " + maxEdits);
+        }
+    }
+
+    public int maxEdits() {
+        return maxEdits;
+    }
+
+    // Room for the state of every depth a match can reach; the state of depth d starts at d * (maxEdits + 1).
+    public long[] newStateStack() {
+        return new long[(maxDepth + 1) * rows];
+    }
+
+    // Puts the state for empty input at depth 0: deleting the first e chars of the word costs e edits.
+    public void start(long[] states) {
+        for (int e = 0; e < rows; e++) {
+            states[e] = (-1L >>> (63 - e)) & rowMask;
+        }
+    }
+
+    // Reads c after the input of the state at depth and stores the result at depth + 1. Returns false if no input
+    // that starts like this can be within maxEdits of the word, the point where a walk stops descending.
+    public boolean step(long[] states, int depth, char c) {
+        if (depth >= maxDepth) {
+            return false;
+        }
+        long matches = positionsOf(c);
+        int from = depth * rows;
+        int to = from + rows;
+        states[to] = ((states[from] & matches) << 1) & rowMask;
+        for (int e = 1; e < rows; e++) {
+            long previous = states[from + e - 1];
+            // Match, insertion of c, substitution by c, then deletion of a char of the word.
+            states[to + e] = (((states[from + e] & matches) << 1) | previous | (previous << 1)
+                    | (states[to + e - 1] << 1)) & rowMask;
+        }
+        return states[to + rows - 1] != 0;
+    }
+
+    // Edit distance between the word and the input of the state at depth, or -1 if it is more than maxEdits.
+    public int distance(long[] states, int depth) {
+        int from = depth * rows;
+        for (int e = 0; e < rows; e++) {
+            if ((states[from + e] & accept) != 0) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    private long positionsOf(char c) {
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == c) {
+                return positions[i];
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,407 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Incrementally updated index over DocumentService, organised like an LSM tree.
+//
+// Adds, updates and deletes from DocumentService land in an in-memory write buffer. The buffer is flushed into a new
+// immutable IndexSegment when it holds maxBufferedDocs documents or when the periodic refresh fires, and only then
+// becomes visible to searches (near real time). A delete or update tombstones the older versions of the document in
+// the segments that already exist at flush time; the tombstone is a new segment instance, existing ones are never
+// modified. A background merge folds the smallest segments together once there are more than maxSegments of them,
+// physically dropping tombstoned documents.
+//
+// Searches read the current Snapshot, an immutable list of segments published through a volatile field, so they
+// never take a lock and never block writers. Writers only hold the lock to touch the buffer or to publish a snapshot;
+// building and merging segments happens outside of it.
+public class LiveIndex implements SearchService, DocumentService.DocumentListener, AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger("LiveIndex");
+
+    private final DocumentService documentService;
+    private final int maxBufferedDocs;
+    private final int maxSegments;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Only one flush at a time, so segments are published in the order their buffers were taken.
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Map<Integer, Document> pendingDocs = new LinkedHashMap<>();
+    private Set<Integer> pendingDeletes = new HashSet<>();
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList(), 0);
+    private final AtomicLong segmentIds = new AtomicLong();
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+
+    private final ScheduledExecutorService refresher;
+    private final ExecutorService merger;
+
+    // What a search sees: the segments that were published at one point in time.
+    public static class Snapshot {
+        private final List<IndexSegment> segments;
+        private final long generation;
+
+        Snapshot(List<IndexSegment> segments, long generation) {
+            this.segments = segments;
+            this.generation = generation;
+        }
+
+        public List<IndexSegment> segments() {
+            return segments;
+        }
+
+        public long generation() {
+            return generation;
+        }
+    }
+
+    public LiveIndex() {
+        this(new DocumentService(), 10_000, 1_000, 8);
+    }
+
+    public LiveIndex(DocumentService documentService, int maxBufferedDocs, long refreshMillis, int maxSegments) {
+        if (maxBufferedDocs < 1) {
+            throw new IllegalArgumentException("maxBufferedDocs must be positive: " + maxBufferedDocs);
+        }
+        if (refreshMillis <= 0) {
+            throw new IllegalArgumentException("refreshMillis must be positive: " + refreshMillis);
+        }
+        // Fewer than one segment can never be reached, the merge thread would merge one segment into one forever.
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be positive: " + maxSegments);
+        }
+        this.documentService = documentService;
+        this.maxBufferedDocs = maxBufferedDocs;
+        this.maxSegments = maxSegments;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(daemon("live-index-refresh"));
+        this.merger = Executors.newSingleThreadExecutor(daemon("live-index-merge"));
+
+        // Registering under the write lock means every change after the initial load arrives as an event that is
+        // applied after it.
+        writeLock.lock();
+        try {
+            documentService.addListener(this);
+            for (Document document : documentService.getDocuments()) {
+                pendingDocs.put(document.getId(), document);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        refresh();
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                // A failed refresh must not cancel the schedule, the next run retries with a fresh buffer.
+                LOG.log(System.Logger.Level.WARNING, "Background refresh failed", e);
+            }
+        }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onUpsert(Document document) {
+        boolean full;
+        writeLock.lock();
+        try {
+            // Older versions may live in published segments, tombstone them on the next flush.
+            pendingDeletes.add(document.getId());
+            pendingDocs.put(document.getId(), document);
+            full = pendingDocs.size() >= maxBufferedDocs;
+        } finally {
+            writeLock.unlock();
+        }
+        if (full) {
+            refresh();
+        }
+    }
+
+    @Override
+    public void onDelete(int id) {
+        writeLock.lock();
+        try {
+            pendingDocs.remove(id);
+            pendingDeletes.add(id);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Flushes the write buffer into a new segment and publishes it, making every change so far visible.
+    public void refresh() {
+        flushLock.lock();
+        try {
+            Map<Integer, Document> docs;
+            Set<Integer> deletes;
+            writeLock.lock();
+            try {
+                if (pendingDocs.isEmpty() && pendingDeletes.isEmpty()) {
+                    return;
+                }
+                docs = pendingDocs;
+                deletes = pendingDeletes;
+                pendingDocs = new LinkedHashMap<>();
+                pendingDeletes = new HashSet<>();
+            } finally {
+                writeLock.unlock();
+            }
+
+            IndexSegment segment = docs.isEmpty() ? null
+                    : IndexSegment.build(segmentIds.incrementAndGet(), new ArrayList<>(docs.values()));
+            DocIdBitmap tombstones = toBitmap(deletes);
+
+            writeLock.lock();
+            try {
+                List<IndexSegment> segments = new ArrayList<>();
+                for (IndexSegment existing : snapshot.segments) {
+                    segments.add(existing.withDeletes(tombstones));
+                }
+                if (segment != null) {
+                    segments.add(segment);
+                }
+                publish(segments);
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        maybeMerge();
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    // Changes every time a new snapshot is published.
+    public long generation() {
+        return snapshot.generation;
+    }
+
+    @Override
+    public long indexGeneration() {
+        return generation();
+    }
+
+    @Override
+    public void close() {
+        documentService.removeListener(this);
+        refresher.shutdownNow();
+        merger.shutdownNow();
+    }
+
+    private void maybeMerge() {
+        if (snapshot.segments.size() > maxSegments && mergeScheduled.compareAndSet(false, true)) {
+            merger.execute(() -> {
+                try {
+                    while (snapshot.segments.size() > maxSegments) {
+                        mergeSmallest();
+                    }
+                } finally {
+                    mergeScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    // Merges the smallest segments so that maxSegments / 2 are left over from the current ones.
+    private void mergeSmallest() {
+        List<IndexSegment> candidates = new ArrayList<>(snapshot.segments);
+        candidates.sort(Comparator.comparingInt(IndexSegment::liveDocCount));
+        int mergeCount = Math.max(2, candidates.size() - maxSegments / 2);
+        List<IndexSegment> sources = candidates.subList(0, Math.min(mergeCount, candidates.size()));
+        IndexSegment merged = IndexSegment.merge(segmentIds.incrementAndGet(), sources);
+
+        writeLock.lock();
+        try {
+            Map<Long, IndexSegment> current = new HashMap<>();
+            for (IndexSegment segment : snapshot.segments) {
+                current.put(segment.id(), segment);
+            }
+            // Documents deleted while the merge ran were tombstoned in the source segments; carry them over.
+            DocIdBitmap deletedSinceMerge = DocIdBitmap.EMPTY;
+            for (IndexSegment source : sources) {
+                IndexSegment latest = current.remove(source.id());
+                if (latest == null) {
+                    return;
+                }
+                deletedSinceMerge = deletedSinceMerge.or(latest.deleted().andNot(source.deleted()));
+            }
+            List<IndexSegment> segments = new ArrayList<>(current.values());
+            segments.sort(Comparator.comparingLong(IndexSegment::id));
+            segments.add(merged.withDeletes(deletedSinceMerge));
+            publish(segments);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Must hold the write lock.
+    private void publish(List<IndexSegment> segments) {
+        snapshot = new Snapshot(Collections.unmodifiableList(segments), snapshot.generation + 1);
+    }
+
+    // Segments are built with Analyzer.STANDARD, queries are analyzed the same way.
+    @Override
+    public Set<Integer> searchWord(String word) {
+        String[] terms = Analyzer.STANDARD.terms(word);
+        if (terms.length != 1) {
+            return searchPhrase(terms);
+        }
+        DocIdBitmap result = DocIdBitmap.EMPTY;
+        for (IndexSegment segment : snapshot.segments) {
+            result = result.or(segment.searchWord(terms[0]));
+        }
+        return result.toSet();
+    }
+
+    @Override
+    public Set<Integer> searchPhrase(String phrase) {
+        return searchPhrase(Analyzer.STANDARD.terms(phrase));
+    }
+
+    private Set<Integer> searchPhrase(String[] words) {
+        Set<Integer> result = new HashSet<>();
+        if (words.length == 0) {
+            return result;
+        }
+        for (IndexSegment segment : snapshot.segments) {
+            result.addAll(segment.searchPhrase(words));
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Integer> searchPrefix(String prefix) {
+        String normalized = Analyzer.STANDARD.normalizePrefix(prefix);
+        DocIdBitmap result = DocIdBitmap.EMPTY;
+        for (IndexSegment segment : snapshot.segments) {
+            result = result.or(segment.searchPrefix(normalized));
+        }
+        return result.toSet();
+    }
+
+    @Override
+    public Set<Integer> searchBooleanQuery(String query) {
+        BooleanQuery.Node parsed = BooleanQuery.parse(query);
+        DocIdBitmap result = DocIdBitmap.EMPTY;
+        for (IndexSegment segment : snapshot.segments) {
+            result = result.or(segment.searchBooleanQuery(parsed));
+        }
+        return result.toSet();
+    }
+
+    // The lazy searches merge the iterators of every segment. A document lives in at most one segment, its older
+    // versions are tombstoned, so the union only ever has one of them to skip over.
+    @Override
+    public DocIdIterator iterateWord(String word) {
+        String[] terms = Analyzer.STANDARD.terms(word);
+        if (terms.length != 1) {
+            return iteratePhrase(terms);
+        }
+        List<IndexSegment> segments = snapshot.segments;
+        DocIdIterator[] iterators = new DocIdIterator[segments.size()];
+        for (int i = 0; i < iterators.length; i++) {
+            iterators[i] = segments.get(i).iterateWord(terms[0]);
+        }
+        return DocIdIterator.union(iterators);
+    }
+
+    @Override
+    public DocIdIterator iteratePhrase(String phrase) {
+        return iteratePhrase(Analyzer.STANDARD.terms(phrase));
+    }
+
+    private DocIdIterator iteratePhrase(String[] words) {
+        if (words.length == 0) {
+            return DocIdIterator.empty();
+        }
+        List<IndexSegment> segments = snapshot.segments;
+        DocIdIterator[] iterators = new DocIdIterator[segments.size()];
+        for (int i = 0; i < iterators.length; i++) {
+            iterators[i] = segments.get(i).iteratePhrase(words);
+        }
+        return DocIdIterator.union(iterators);
+    }
+
+    @Override
+    public DocIdIterator iteratePrefix(String prefix) {
+        String normalized = Analyzer.STANDARD.normalizePrefix(prefix);
+        List<IndexSegment> segments = snapshot.segments;
+        DocIdIterator[] iterators = new DocIdIterator[segments.size()];
+        for (int i = 0; i < iterators.length; i++) {
+            iterators[i] = segments.get(i).iteratePrefix(normalized);
+        }
+        return DocIdIterator.union(iterators);
+    }
+
+    // Boolean queries are evaluated on bitmaps per segment, only the boxing into a Set is saved.
+    @Override
+    public DocIdIterator iterateBooleanQuery(String query) {
+        BooleanQuery.Node parsed = BooleanQuery.parse(query);
+        DocIdBitmap result = DocIdBitmap.EMPTY;
+        for (IndexSegment segment : snapshot.segments) {
+            result = result.or(segment.searchBooleanQuery(parsed));
+        }
+        return result.iterator();
+    }
+
+    // Each segment scores with its own statistics and the per-segment top k are merged, the same trade-off as a
+    // sharded index without a global statistics phase.
+    @Override
+    public List<ScoredDocument> searchRanked(String query, int k) {
+        String[] words = Analyzer.STANDARD.distinctTerms(query);
+        PriorityQueue<ScoredDocument> heap = new PriorityQueue<>(Comparator.comparingDouble(ScoredDocument::getScore));
+        for (IndexSegment segment : snapshot.segments) {
+            for (ScoredDocument scored : segment.searchRanked(words, k)) {
+                heap.add(scored);
+                if (heap.size() > k) {
+                    heap.poll();
+                }
+            }
+        }
+        List<ScoredDocument> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(ScoredDocument::getScore).reversed().thenComparing(ScoredDocument::getDocId));
+        return result;
+    }
+
+    // The plan of every segment, the counts in it are per segment.
+    @Override
+    public String explain(SearchQuery query) {
+        List<String> plans = new ArrayList<>();
+        for (IndexSegment segment : snapshot.segments) {
+            plans.add("segment " + segment.id() + ": " + segment.explain(query));
+        }
+        return String.join("; ", plans);
+    }
+
+    private static DocIdBitmap toBitmap(Set<Integer> ids) {
+        int[] sorted = ids.stream().mapToInt(Integer::intValue).sorted().toArray();
+        DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+        for (int id : sorted) {
+            builder.add(id);
+        }
+        return builder.build();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
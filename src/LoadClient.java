@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load generator for a SearchServer: LoadClient <host> <port> <clients> <seconds> <queries file>.
+//
+// Every client is a thread with its own connection that sends a random query of the file as soon as the answer to the
+// previous one arrived. Clients run on virtual threads where the JDK has them, so tens of thousands fit on one box
+// (mind the ephemeral port range of the client machine). The first fifth of the run warms the server up and is not
+// measured; the rest prints throughput, latency percentiles and errors.
+//
+// This is a closed loop: a slow server slows the clients down, so when the server is overloaded the percentiles
+// understate what an open stream of users would see. Compare throughput between runs before reading the tail.
+//
+// The queries file has one query per line, "<TYPE> <text>" with TYPE one of SearchQuery.Type (RANKED queries ask
+// for the top 10, fuzzy ones allow one edit), or just the text for a word query.
+public class LoadClient {
+
+    private static final int RANKED_K = 10;
+    private static final int FUZZY_EDITS = 1;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 5) {
+            System.err.println("Usage: LoadClient <host> <port> <clients> <seconds> <queries file>");
+            System.exit(2);
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int clientCount = Integer.parseInt(args[2]);
+        long seconds = Long.parseLong(args[3]);
+        List<SearchQuery> queries = readQueries(Files.readAllLines(Paths.get(args[4]), StandardCharsets.UTF_8));
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("No queries in " + args[4]);
+        }
+
+        Histogram latency = new Histogram();
+        LongAdder errors = new LongAdder();
+        AtomicBoolean measuring = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch stopped = new CountDownLatch(clientCount);
+        ExecutorService clients = SearchServer.newThreadPerTaskExecutor("load-client");
+        for (int i = 0; i < clientCount; i++) {
+            clients.execute(() -> {
+                try (RemoteSearchService remote = new RemoteSearchService(host, port, 1)) {
+                    while (running.get()) {
+                        SearchQuery query = queries.get(ThreadLocalRandom.current().nextInt(queries.size()));
+                        long start = System.nanoTime();
+                        boolean failed = false;
+                        try {
+                            query.execute(remote);
+                        } catch (RuntimeException e) {
+                            failed = true;
+                        }
+                        if (measuring.get()) {
+                            if (failed) {
+                                errors.increment();
+                            } else {
+                                latency.record(System.nanoTime() - start);
+                            }
+                        }
+                    }
+                } finally {
+                    stopped.countDown();
+                }
+            });
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds) / 5);
+        latency.reset();
+        measuring.set(true);
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds) * 4 / 5);
+        measuring.set(false);
+        long elapsed = System.nanoTime() - start;
+        running.set(false);
+        stopped.await();
+        clients.shutdown();
+
+        Histogram.Snapshot snapshot = latency.snapshot();
+        System.out.printf("%d clients, %.1f s measured: %.0f queries/s, %d errors%n", clientCount, elapsed / 1e9,
+                snapshot.count() / (elapsed / 1e9), errors.sum());
+        System.out.println("latency (us) " + snapshot.toString(1000));
+    }
+
+    private static List<SearchQuery> readQueries(List<String> lines) {
+        List<SearchQuery> queries = new ArrayList<>();
+        for (String line : lines) {
+            String text = SearchQuery.normalize(line);
+            if (text.isEmpty()) {
+                continue;
+            }
+            int space = text.indexOf(' ');
+            SearchQuery.Type type = space < 0 ? null : type(text.substring(0, space));
+            if (type == null) {
+                queries.add(SearchQuery.word(text));
+            } else {
+                int k = type == SearchQuery.Type.RANKED ? RANKED_K
+                        : type == SearchQuery.Type.FUZZY || type == SearchQuery.Type.FUZZY_AUTOCOMPLETE ? FUZZY_EDITS : 0;
+                queries.add(new SearchQuery(type, text.substring(space + 1), k));
+            }
+        }
+        return queries;
+    }
+
+    private static SearchQuery.Type type(String name) {
+        for (SearchQuery.Type type : SearchQuery.Type.values()) {
+            if (type.name().equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Grep-style scan of a one-document-per-line file for a substring, without building an index.
+//
+// The file is mapped in windows of at most WINDOW_SIZE bytes so files over 2 GB work. Every window ends on a newline
+// and is split into newline-aligned chunks that are scanned in parallel on a ForkJoinPool. Matching runs Horspool
+// directly on the mapped bytes and only counts newlines, so nothing is allocated per line. The document ID of a line
+// is its zero-based line number in the file.
+public class MappedFileScanner {
+
+    static final long WINDOW_SIZE = 1L << 30;
+    static final int CHUNK_SIZE = 1 << 22;
+
+    private final ForkJoinPool pool;
+
+    public MappedFileScanner() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public MappedFileScanner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Line numbers of every line containing the pattern, in ascending order.
+    public IntList scan(Path file, String pattern) throws IOException {
+        byte[] needle = pattern.getBytes(StandardCharsets.UTF_8);
+        IntList result = new IntList();
+        // A line never contains a newline, and every line contains the empty string.
+        boolean matchesEveryLine = needle.length == 0;
+        if (indexOf(needle, (byte) '\n') >= 0) {
+            return result;
+        }
+        int[] shifts = matchesEveryLine ? null : shiftTable(needle);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            int lineBase = 0;
+            while (start < size) {
+                long length = Math.min(WINDOW_SIZE, size - start);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                int end = (int) length;
+                if (start + length < size) {
+                    int lastNewline = lastIndexOf(window, (byte) '\n', end);
+                    if (lastNewline < 0) {
+                        throw new IOException("Line longer than " + WINDOW_SIZE + " bytes at offset " + start);
+                    }
+                    end = lastNewline + 1;
+                }
+
+                ChunkResult chunk = pool.invoke(new ScanTask(window, 0, end, needle, shifts, matchesEveryLine));
+                for (int i = 0; i < chunk.matches.size(); i++) {
+                    result.add(lineBase + chunk.matches.get(i));
+                }
+                lineBase += chunk.newlines;
+                start += end;
+            }
+            // The last line is a document even without a trailing newline.
+            if (matchesEveryLine && size > 0 && endsWithoutNewline(channel, size)) {
+                result.add(lineBase);
+            }
+        }
+        return result;
+    }
+
+    private static boolean endsWithoutNewline(FileChannel channel, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, size - 1, 1).get(0) != '\n';
+    }
+
+    private static class ChunkResult {
+        // Line numbers relative to the start of the chunk.
+        final IntList matches;
+        final int newlines;
+
+        ChunkResult(IntList matches, int newlines) {
+            this.matches = matches;
+            this.newlines = newlines;
+        }
+    }
+
+    private static class ScanTask extends RecursiveTask<ChunkResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final MappedByteBuffer buffer;
+        private final int from;
+        private final int to;
+        private final byte[] needle;
+        private final int[] shifts;
+        private final boolean matchesEveryLine;
+
+        ScanTask(MappedByteBuffer buffer, int from, int to, byte[] needle, int[] shifts, boolean matchesEveryLine) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.needle = needle;
+            this.shifts = shifts;
+            this.matchesEveryLine = matchesEveryLine;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            if (to - from > CHUNK_SIZE) {
+                // Split on the first newline after the midpoint so no line is shared between two tasks.
+                int split = indexOf(buffer, (byte) '\n', from + (to - from) / 2, to);
+                if (split >= 0 && split + 1 < to) {
+                    ScanTask left = new ScanTask(buffer, from, split + 1, needle, shifts, matchesEveryLine);
+                    ScanTask right = new ScanTask(buffer, split + 1, to, needle, shifts, matchesEveryLine);
+                    right.fork();
+                    ChunkResult leftResult = left.compute();
+                    ChunkResult rightResult = right.join();
+                    for (int i = 0; i < rightResult.matches.size(); i++) {
+                        leftResult.matches.add(leftResult.newlines + rightResult.matches.get(i));
+                    }
+                    return new ChunkResult(leftResult.matches, leftResult.newlines + rightResult.newlines);
+                }
+            }
+            return scanChunk();
+        }
+
+        private ChunkResult scanChunk() {
+            IntList matches = new IntList();
+            int line = 0;
+            // Everything before lineStart has already had its newlines counted.
+            int lineStart = from;
+            int pos = from;
+            int last = needle.length - 1;
+            while (!matchesEveryLine && pos + last < to) {
+                int i = last;
+                while (i >= 0 && buffer.get(pos + i) == needle[i]) {
+                    i--;
+                }
+                if (i >= 0) {
+                    pos += shifts[buffer.get(pos + last) & 0xFF];
+                    continue;
+                }
+                line += countNewlines(lineStart, pos);
+                matches.add(line);
+                // Only one hit per line matters, continue the search on the next line.
+                int newline = indexOf(buffer, (byte) '\n', pos + needle.length, to);
+                if (newline < 0) {
+                    return new ChunkResult(matches, line);
+                }
+                line++;
+                lineStart = newline + 1;
+                pos = lineStart;
+            }
+            int newlines = line + countNewlines(lineStart, to);
+            if (matchesEveryLine) {
+                for (int l = 0; l < newlines; l++) {
+                    matches.add(l);
+                }
+            }
+            return new ChunkResult(matches, newlines);
+        }
+
+        private int countNewlines(int start, int end) {
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) == '\n') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    // Horspool bad-character table: how far the window may slide when its last byte is b.
+    private static int[] shiftTable(byte[] needle) {
+        int[] shifts = new int[256];
+        Arrays.fill(shifts, needle.length);
+        for (int i = 0; i < needle.length - 1; i++) {
+            shifts[needle[i] & 0xFF] = needle.length - 1 - i;
+        }
+        return shifts;
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(MappedByteBuffer buffer, byte value, int to) {
+        for (int i = to - 1; i >= 0; i--) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,56 +1,230 @@
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.file.Files;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class MemoryMappedSearchImpl implements SearchService{
 
+    // Null when there is no segment, in which case queries fall back to scanning the raw file.
+    private final SegmentReader segment;
+    private final Path rawFile;
+    private final MappedFileScanner scanner = new MappedFileScanner();
+    // Every document of the segment, computed on the first NOT query.
+    private volatile DocIdBitmap allDocuments;
+
+    public MemoryMappedSearchImpl() {
+        this(null, Paths.get("test"));
+    }
+
+    // Serves queries from a segment written by SegmentWriter. The segment is mapped once and shared by all callers.
+    public MemoryMappedSearchImpl(Path segmentPath) {
+        this(openSegment(segmentPath), null);
+    }
+
+    private MemoryMappedSearchImpl(SegmentReader segment, Path rawFile) {
+        this.segment = segment;
+        this.rawFile = rawFile;
+    }
+
+    // Ad-hoc substring search over an unindexed one-document-per-line file, see MappedFileScanner.
+    public static MemoryMappedSearchImpl scanning(Path rawFile) {
+        return new MemoryMappedSearchImpl(null, rawFile);
+    }
+
+    private static SegmentReader openSegment(Path segmentPath) {
+        try {
+            return SegmentReader.open(segmentPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open segment " + segmentPath, e);
+        }
+    }
+
+    // Segments are written with Analyzer.STANDARD and queries against them are analyzed the same way. Without a
+    // segment the query is matched byte for byte against the raw file, there are no terms to analyze into.
     @Override
     public Set<Integer> searchWord(String word) {
-        return searchUsingMemoryMap(word);
+        if (segment == null) {
+            return searchUsingMemoryMap(word);
+        }
+        String[] terms = Analyzer.STANDARD.terms(word);
+        if (terms.length != 1) {
+            return searchPhrase(terms);
+        }
+        PostingList postings = segment.postings(terms[0]);
+        return postings == null ? new HashSet<>() : postings.docIdSet();
     }
 
     @Override
     public Set<Integer> searchPhrase(String phrase) {
-        return searchUsingMemoryMap(phrase);
+        if (segment == null) {
+            return searchUsingMemoryMap(phrase);
+        }
+        return searchPhrase(Analyzer.STANDARD.terms(phrase));
+    }
+
+    private Set<Integer> searchPhrase(String[] words) {
+        if (words.length == 0) {
+            return new HashSet<>();
+        }
+        PostingList[] postings = new PostingList[words.length];
+        for (int i = 0; i < words.length; i++) {
+            postings[i] = segment.postings(words[i]);
+            if (postings[i] == null) {
+                return new HashSet<>();
+            }
+        }
+        return PhraseMatcher.match(postings);
     }
 
     @Override
     public Set<Integer> searchPrefix(String phrase) {
-        return searchUsingMemoryMap(phrase);
+        if (segment == null) {
+            return searchUsingMemoryMap(phrase);
+        }
+        int[] range = segment.prefixRange(Analyzer.STANDARD.normalizePrefix(phrase));
+        Set<Integer> result = new HashSet<>();
+        for (int ordinal = range[0]; ordinal < range[1]; ordinal++) {
+            PostingList.Cursor cursor = segment.postingsAt(ordinal).cursor();
+            for (int doc = cursor.nextDoc(); doc != PostingList.Cursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+                result.add(doc);
+            }
+        }
+        return result;
     }
 
-    private Set<Integer> searchUsingMemoryMap(String word) {
-        String filePath = "test";
-        Set<Integer> potentialDocs = Set.of();
-        try (FileChannel fileChannel = (FileChannel) Files.newByteChannel(Paths.get(filePath), StandardOpenOption.READ)) {
-            MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
-            StringBuilder sb = new StringBuilder();
-            int docId =0;
-            for (int i = 0; i < buffer.limit(); i++) {
-                char c = (char) buffer.get(i);
-                if (c == '\n') {
-                    String content = sb.toString();
-                    if (content.contains(word)) {
-                        potentialDocs.add(docId);
-                    }
-                    sb.setLength(0);
-                    docId++;
-                } else {
-                    sb.append(c);
-                }
+    @Override
+    public Set<Integer> searchBooleanQuery(String query) {
+        if (segment == null) {
+            throw new UnsupportedOperationException("Boolean queries need an index segment");
+        }
+        return BooleanQuery.search(query, termIndex()).toSet();
+    }
+
+    // Without a segment the iterators walk the bitmap of the scan results.
+    @Override
+    public DocIdIterator iterateWord(String word) {
+        if (segment == null) {
+            return scan(word).iterator();
+        }
+        String[] terms = Analyzer.STANDARD.terms(word);
+        if (terms.length != 1) {
+            return iteratePhrase(terms);
+        }
+        PostingList postings = segment.postings(terms[0]);
+        return postings == null ? DocIdIterator.empty() : postings.cursor();
+    }
+
+    @Override
+    public DocIdIterator iteratePhrase(String phrase) {
+        if (segment == null) {
+            return scan(phrase).iterator();
+        }
+        return iteratePhrase(Analyzer.STANDARD.terms(phrase));
+    }
+
+    private DocIdIterator iteratePhrase(String[] words) {
+        PostingList[] postings = new PostingList[words.length];
+        for (int i = 0; i < words.length; i++) {
+            postings[i] = segment.postings(words[i]);
+            if (postings[i] == null) {
+                return DocIdIterator.empty();
             }
-            if (sb.length() > 0) {
-                String content = sb.toString();
-                if (content.contains(word)) {
-                    potentialDocs.add(docId);
+        }
+        return PhraseMatcher.iterator(postings);
+    }
+
+    @Override
+    public DocIdIterator iteratePrefix(String prefix) {
+        if (segment == null) {
+            return scan(prefix).iterator();
+        }
+        int[] range = segment.prefixRange(Analyzer.STANDARD.normalizePrefix(prefix));
+        DocIdIterator[] cursors = new DocIdIterator[range[1] - range[0]];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = segment.postingsAt(range[0] + i).cursor();
+        }
+        return DocIdIterator.union(cursors);
+    }
+
+    @Override
+    public DocIdIterator iterateBooleanQuery(String query) {
+        if (segment == null) {
+            throw new UnsupportedOperationException("Boolean queries need an index segment");
+        }
+        return BooleanQuery.search(query, termIndex()).iterator();
+    }
+
+    // Without a segment the queries scan the raw file one by one.
+    @Override
+    public List<Object> searchBatch(List<SearchQuery> queries) {
+        if (segment == null) {
+            return SearchService.super.searchBatch(queries);
+        }
+        return QueryBatch.search(queries, this, termIndex(), Analyzer.STANDARD);
+    }
+
+    private BooleanQuery.TermIndex termIndex() {
+        return new BooleanQuery.TermIndex() {
+            @Override
+            public PostingList postings(String term) {
+                return segment.postings(term);
+            }
+
+            @Override
+            public DocIdBitmap allDocuments() {
+                return segmentDocuments();
+            }
+        };
+    }
+
+    @Override
+    public List<ScoredDocument> searchRanked(String query, int k) {
+        if (segment == null) {
+            throw new UnsupportedOperationException("Ranked queries need an index segment");
+        }
+        PostingList[] postings = Arrays.stream(Analyzer.STANDARD.distinctTerms(query)).map(segment::postings)
+                .toArray(PostingList[]::new);
+        return RankedSearch.topK(postings, segment.docLengths(), k);
+    }
+
+    private DocIdBitmap segmentDocuments() {
+        DocIdBitmap documents = allDocuments;
+        if (documents == null) {
+            if (segment.docLengths().docCount() > 0) {
+                documents = segment.docLengths().docIds();
+            } else {
+                // Segments written without doc lengths: fall back to the union of every posting list.
+                documents = DocIdBitmap.EMPTY;
+                for (int ordinal = 0; ordinal < segment.termCount(); ordinal++) {
+                    documents = documents.or(DocIdBitmap.of(segment.postingsAt(ordinal)));
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            allDocuments = documents;
+        }
+        return documents;
+    }
+
+    private Set<Integer> searchUsingMemoryMap(String word) {
+        return scan(word).toSet();
+    }
+
+    // The scanner reports the matching lines in ascending order, so they go straight into a bitmap. A file that cannot
+    // be read fails the query instead of looking like one without matches.
+    private DocIdBitmap scan(String word) {
+        IntList lines;
+        try {
+            lines = scanner.scan(rawFile, word);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not scan " + rawFile, e);
+        }
+        DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+        for (int i = 0; i < lines.size(); i++) {
+            builder.add(lines.get(i));
         }
-        return potentialDocs;
+        return builder.build();
     }
 }
@@ -0,0 +1,123 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+// Builds the postings of an inverted index on all cores.
+//
+// The documents are cut into chunks and each ForkJoin worker indexes its chunks into builders of its own, with term
+// IDs of its own, so the scan needs no synchronisation. In the second phase the terms are split into partitions by
+// hash and each partition is merged across chunks and compressed by one worker: a term only ever lives in one
+// partition, so the merge is contention free as well, and the expensive part (sorting and encoding the postings) is
+// spread over all workers. Only the final term IDs are assigned by one thread.
+public class ParallelIndexBuilder {
+
+    // Below this many documents per worker the fork/join overhead is not worth it.
+    static final int MIN_DOCUMENTS_PER_CHUNK = 1024;
+
+    private final ForkJoinPool pool;
+    private final int partitionBits;
+
+    public ParallelIndexBuilder(ForkJoinPool pool) {
+        this.pool = pool;
+        // A few partitions per worker so a partition with many frequent terms does not hold up the merge.
+        int partitions = Integer.highestOneBit(Math.max(1, pool.getParallelism() * 4) - 1) << 1;
+        this.partitionBits = Integer.numberOfTrailingZeros(partitions);
+    }
+
+    public ParallelIndexBuilder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public TermPostings buildPostings(List<Document> documents) {
+        return buildPostings(documents, Analyzer.STANDARD);
+    }
+
+    public TermPostings buildPostings(List<Document> documents, Analyzer analyzer) {
+        return buildPostings(documents, analyzer, new long[documents.size()]);
+    }
+
+    // Also stores DocLengths.pack(docId, length) of the i-th document in lengths[i]. Every chunk fills its own range
+    // of the array while it indexes, so the lengths cost no second pass over the documents.
+    public TermPostings buildPostings(List<Document> documents, Analyzer analyzer, long[] lengths) {
+        int chunkCount = Math.max(1, Math.min(pool.getParallelism() * 4,
+                documents.size() / MIN_DOCUMENTS_PER_CHUNK));
+        if (chunkCount == 1 || pool.getParallelism() == 1) {
+            return InvertedIndexBasedSearch.buildPostings(documents, analyzer, lengths);
+        }
+        int partitionCount = 1 << partitionBits;
+
+        TermPostings.Builder[] partials = new TermPostings.Builder[chunkCount];
+        pool.invoke(new RangeTask(0, chunkCount, chunk -> {
+            int from = (int) ((long) documents.size() * chunk / chunkCount);
+            int to = (int) ((long) documents.size() * (chunk + 1) / chunkCount);
+            TermPostings.Builder builder = new TermPostings.Builder();
+            int i = from;
+            for (Document document : documents.subList(from, to)) {
+                int length = InvertedIndexBasedSearch.addPostings(document, analyzer, builder);
+                lengths[i++] = DocLengths.pack(document.getId(), length);
+            }
+            partials[chunk] = builder;
+        }));
+
+        TermPostings[] merged = new TermPostings[partitionCount];
+        pool.invoke(new RangeTask(0, partitionCount, partition -> merged[partition] = merge(partials, partition)));
+
+        // Term IDs are handed out partition by partition.
+        int termCount = 0;
+        for (TermPostings partition : merged) {
+            termCount += partition.termCount();
+        }
+        TermDictionary terms = new TermDictionary(termCount);
+        PostingList[] postings = new PostingList[termCount];
+        for (TermPostings partition : merged) {
+            for (int termId = 0; termId < partition.termCount(); termId++) {
+                postings[terms.add(partition.term(termId))] = partition.postingsAt(termId);
+            }
+        }
+        return new TermPostings(terms, postings);
+    }
+
+    // Every chunk has its own term IDs; the terms of one partition are merged by name and compressed.
+    private TermPostings merge(TermPostings.Builder[] partials, int partition) {
+        TermPostings.Builder builder = new TermPostings.Builder();
+        for (TermPostings.Builder chunk : partials) {
+            TermDictionary chunkTerms = chunk.terms();
+            for (int termId = 0; termId < chunkTerms.size(); termId++) {
+                if (partition(chunkTerms.hashOf(termId)) == partition) {
+                    builder.merge(chunkTerms.term(termId), chunk.postingsAt(termId));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private int partition(int termHash) {
+        return (termHash * 0x9E3779B9) >>> (Integer.SIZE - partitionBits);
+    }
+
+    // Runs body for every index in [from, to), splitting the range in halves across the pool.
+    static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final IntConsumer body;
+
+        RangeTask(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, body), new RangeTask(middle, to, body));
+        }
+    }
+}
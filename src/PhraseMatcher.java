@@ -0,0 +1,145 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+// Positional phrase matching over posting lists. Shared by every index that stores positions, so the in-memory
+// inverted index and the memory-mapped segments answer phrase queries the same way.
+//
+// Documents are intersected leapfrog style starting from the rarest word: the rarest list proposes a candidate and
+// every other list galloping-advances to it, any overshoot becomes the next candidate. Only documents that contain
+// every word get their positions decoded, and those are merged with one forward two-pointer walk per word. The
+// intersection is driven by the caller through iterator(), so a caller that stops early leaves the rest undecoded.
+public class PhraseMatcher {
+
+    private PhraseMatcher() {
+    }
+
+    // termPostings[i] holds the postings of the i-th word of the phrase. A document matches when some position p of
+    // the first word has word i at position p + i for every i.
+    public static Set<Integer> match(PostingList[] termPostings) {
+        Set<Integer> result = new HashSet<>();
+        DocIdIterator matches = iterator(termPostings);
+        for (int doc = matches.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = matches.nextDoc()) {
+            result.add(doc);
+        }
+        return result;
+    }
+
+    // The same matches, found one at a time as the caller asks for them.
+    public static DocIdIterator iterator(PostingList[] termPostings) {
+        int words = termPostings.length;
+        if (words == 0) {
+            return DocIdIterator.empty();
+        }
+
+        // Phrase offsets ordered from the rarest word to the most common one.
+        Integer[] order = new Integer[words];
+        for (int i = 0; i < words; i++) {
+            if (termPostings[i].isEmpty()) {
+                return DocIdIterator.empty();
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(termPostings[a].docCount(), termPostings[b].docCount()));
+
+        PostingList.Cursor[] cursors = new PostingList.Cursor[words];
+        int[] offsets = new int[words];
+        for (int i = 0; i < words; i++) {
+            cursors[i] = termPostings[order[i]].cursor();
+            offsets[i] = order[i];
+        }
+        return new PhraseIterator(cursors, offsets);
+    }
+
+    private static class PhraseIterator extends DocIdIterator {
+        private final PostingList.Cursor[] cursors;
+        private final int[] offsets;
+        private int[] candidates = new int[8];
+        private int docId = -1;
+
+        PhraseIterator(PostingList.Cursor[] cursors, int[] offsets) {
+            this.cursors = cursors;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        @Override
+        public int nextDoc() {
+            return docId == NO_MORE_DOCS ? NO_MORE_DOCS : advance(docId + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            PostingList.Cursor lead = cursors[0];
+            int doc = lead.advance(target);
+            while (doc != NO_MORE_DOCS) {
+                int next = doc;
+                for (int i = 1; i < cursors.length; i++) {
+                    int found = cursors[i].advance(doc);
+                    if (found != doc) {
+                        next = found;
+                        break;
+                    }
+                }
+                if (next != doc) {
+                    doc = lead.advance(next);
+                    continue;
+                }
+
+                if (candidates.length < lead.freq()) {
+                    candidates = new int[Integer.highestOneBit(lead.freq()) << 1];
+                }
+                if (hasPhrase(cursors, offsets, candidates)) {
+                    return docId = doc;
+                }
+                doc = lead.nextDoc();
+            }
+            return docId = NO_MORE_DOCS;
+        }
+
+        // At most the documents of the rarest word.
+        @Override
+        public long cost() {
+            return cursors[0].cost();
+        }
+    }
+
+    // Candidate phrase starts are the lead word's positions shifted back by its offset. Each further word keeps only
+    // the candidates c for which it occurs at c + offset, found by walking both sorted lists forward once.
+    private static boolean hasPhrase(PostingList.Cursor[] cursors, int[] offsets, int[] candidates) {
+        int[] leadPositions = cursors[0].positions();
+        int count = 0;
+        for (int p = 0; p < cursors[0].freq(); p++) {
+            int start = leadPositions[p] - offsets[0];
+            if (start >= 0) {
+                candidates[count++] = start;
+            }
+        }
+
+        for (int i = 1; i < cursors.length && count > 0; i++) {
+            int[] positions = cursors[i].positions();
+            int freq = cursors[i].freq();
+            int offset = offsets[i];
+            int kept = 0;
+            int p = 0;
+            for (int c = 0; c < count && p < freq; c++) {
+                int required = candidates[c] + offset;
+                while (p < freq && positions[p] < required) {
+                    p++;
+                }
+                if (p < freq && positions[p] == required) {
+                    candidates[kept++] = candidates[c];
+                }
+            }
+            count = kept;
+        }
+        return count > 0;
+    }
+}
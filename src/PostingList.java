@@ -0,0 +1,493 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Compressed posting list for a single term.
+//
+// Doc IDs are kept sorted and grouped into blocks of BLOCK_SIZE documents. Inside a block every doc ID is stored
+// as a variable-byte delta from the previous one, followed by the term frequency. Positions live in a separate
+// region, again delta + variable-byte encoded per document. A small skip table holds the last doc ID of every block
+// so a cursor can jump over whole blocks without decoding them, and the highest frequency inside the block so ranked
+// retrieval can bound a block's score without decoding it either.
+//
+// Layout of the backing buffer:
+//   int docCount
+//   int blockCount
+//   int maxFreq
+//   blockCount * (int lastDocId, int docOffset, int positionOffset, int maxFreq)   skip table
+//   int docBytesLength
+//   byte[docBytesLength] doc/frequency region
+//   byte[]               position region
+//
+// The list only ever reads the buffer with absolute gets, so the same instance can be backed by a heap array or by a
+// slice of a memory-mapped file and be shared between threads.
+public class PostingList {
+
+    public static final int BLOCK_SIZE = 128;
+
+    static final int HEADER_BYTES = 12;
+    static final int SKIP_ENTRY_BYTES = 16;
+
+    public static final PostingList EMPTY = new Builder().build();
+
+    private final ByteBuffer buffer;
+    private final int docCount;
+    private final int blockCount;
+    private final int maxFreq;
+    private final int docRegion;
+    private final int positionRegion;
+
+    private PostingList(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.docCount = buffer.getInt(0);
+        this.blockCount = buffer.getInt(4);
+        this.maxFreq = buffer.getInt(8);
+        int docBytesLengthOffset = HEADER_BYTES + blockCount * SKIP_ENTRY_BYTES;
+        this.docRegion = docBytesLengthOffset + 4;
+        this.positionRegion = docRegion + buffer.getInt(docBytesLengthOffset);
+    }
+
+    // Wraps an already encoded posting list, e.g. a slice of a memory-mapped segment. No bytes are copied.
+    public static PostingList wrap(ByteBuffer encoded) {
+        return new PostingList(encoded.slice());
+    }
+
+    public int docCount() {
+        return docCount;
+    }
+
+    public boolean isEmpty() {
+        return docCount == 0;
+    }
+
+    // Highest term frequency of any document in the list.
+    public int maxFreq() {
+        return maxFreq;
+    }
+
+    // Read-only view of the encoded bytes, used when the list is written into a segment file.
+    public ByteBuffer encoded() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    public int encodedSize() {
+        return buffer.capacity();
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public Set<Integer> docIdSet() {
+        Set<Integer> result = new HashSet<>(docCount * 2);
+        Cursor cursor = cursor();
+        for (int doc = cursor.nextDoc(); doc != Cursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+            result.add(doc);
+        }
+        return result;
+    }
+
+    private int lastDocOfBlock(int block) {
+        return buffer.getInt(HEADER_BYTES + block * SKIP_ENTRY_BYTES);
+    }
+
+    private int docOffsetOfBlock(int block) {
+        return buffer.getInt(HEADER_BYTES + block * SKIP_ENTRY_BYTES + 4);
+    }
+
+    private int positionOffsetOfBlock(int block) {
+        return buffer.getInt(HEADER_BYTES + block * SKIP_ENTRY_BYTES + 8);
+    }
+
+    private int maxFreqOfBlock(int block) {
+        return buffer.getInt(HEADER_BYTES + block * SKIP_ENTRY_BYTES + 12);
+    }
+
+    // First index in [from, to) of the sorted array whose value is >= target, or to if there is none. Probes
+    // from, from + 1, from + 2, from + 4, ... and then binary searches the last gap.
+    static int gallop(int[] values, int from, int to, int target) {
+        int low = from;
+        int step = 1;
+        int high = from;
+        while (high < to && values[high] < target) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, to);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Forward-only iterator over the list. Decodes one block of doc IDs and frequencies at a time; positions are
+    // only decoded for the documents that ask for them. Not thread safe, create one per query.
+    public final class Cursor extends DocIdIterator {
+
+        private final int[] docs = new int[BLOCK_SIZE];
+        private final int[] freqs = new int[BLOCK_SIZE];
+        private int[] positions = new int[8];
+
+        private int block = -1;
+        private int shallowBlock = -1;
+        private int blockLength;
+        private int index;
+        private int docId = -1;
+
+        // Offset into the position region of the positions of document positionDocIndex in the current block.
+        private int positionPointer;
+        private int positionDocIndex;
+        private int decodedPositionsIndex = -1;
+
+        private Cursor() {
+        }
+
+        @Override
+        public int docId() {
+            return docId;
+        }
+
+        public int freq() {
+            return freqs[index];
+        }
+
+        @Override
+        public int nextDoc() {
+            if (docId == NO_MORE_DOCS) {
+                return NO_MORE_DOCS;
+            }
+            if (index + 1 < blockLength) {
+                index++;
+                return docId = docs[index];
+            }
+            if (block + 1 >= blockCount) {
+                return docId = NO_MORE_DOCS;
+            }
+            decodeBlock(block + 1);
+            return docId = docs[index];
+        }
+
+        // Moves to the first document >= target. Whole blocks are skipped by galloping over the skip table, and the
+        // decoded block is searched the same way, so a far target costs O(log distance) instead of a linear walk.
+        @Override
+        public int advance(int target) {
+            if (docId >= target) {
+                return docId;
+            }
+            if (block < 0 || lastDocOfBlock(block) < target) {
+                int next = gallopBlocks(Math.max(block + 1, 0), target);
+                if (next >= blockCount) {
+                    return docId = NO_MORE_DOCS;
+                }
+                decodeBlock(next);
+            }
+            index = gallop(docs, index, blockLength, target);
+            return docId = docs[index];
+        }
+
+        // Documents after the current one.
+        @Override
+        public long cost() {
+            if (docId == NO_MORE_DOCS) {
+                return 0;
+            }
+            return block < 0 ? docCount : docCount - (block * BLOCK_SIZE + index + 1);
+        }
+
+        // Finds the block that would hold target without decoding anything and returns its last doc ID, or
+        // NO_MORE_DOCS if target is past the end. shallowMaxFreq() then bounds the frequency of every doc up to it.
+        public int advanceShallow(int target) {
+            shallowBlock = gallopBlocks(Math.max(Math.max(block, shallowBlock), 0), target);
+            return shallowBlock >= blockCount ? NO_MORE_DOCS : lastDocOfBlock(shallowBlock);
+        }
+
+        public int shallowMaxFreq() {
+            return shallowBlock < 0 || shallowBlock >= blockCount ? 0 : maxFreqOfBlock(shallowBlock);
+        }
+
+        // First block at or after from whose last doc ID is >= target, or blockCount if there is none.
+        private int gallopBlocks(int from, int target) {
+            int low = from;
+            int step = 1;
+            int high = from;
+            while (high < blockCount && lastDocOfBlock(high) < target) {
+                low = high + 1;
+                high = from + step;
+                step <<= 1;
+            }
+            high = Math.min(high, blockCount);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lastDocOfBlock(mid) < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // Positions of the current document, in ascending order. The returned array is reused by the cursor and
+        // only the first freq() entries are valid.
+        public int[] positions() {
+            if (decodedPositionsIndex == index) {
+                return positions;
+            }
+            int freq = freqs[index];
+            while (positionDocIndex < index) {
+                positionPointer = skipVarInts(positionPointer, freqs[positionDocIndex]);
+                positionDocIndex++;
+            }
+            if (positions.length < freq) {
+                positions = new int[Integer.highestOneBit(freq) << 1];
+            }
+            int pointer = positionPointer;
+            int position = 0;
+            for (int i = 0; i < freq; i++) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(pointer++);
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                position += value;
+                positions[i] = position;
+            }
+            positionPointer = pointer;
+            positionDocIndex++;
+            decodedPositionsIndex = index;
+            SearchMetrics.positionsDecoded(freq);
+            return positions;
+        }
+
+        private void decodeBlock(int newBlock) {
+            block = newBlock;
+            blockLength = Math.min(BLOCK_SIZE, docCount - newBlock * BLOCK_SIZE);
+            int pointer = docRegion + docOffsetOfBlock(newBlock);
+            int doc = newBlock == 0 ? 0 : lastDocOfBlock(newBlock - 1);
+            for (int i = 0; i < blockLength; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(pointer++);
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                docs[i] = doc;
+
+                int freq = 0;
+                shift = 0;
+                do {
+                    b = buffer.get(pointer++);
+                    freq |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                freqs[i] = freq;
+            }
+            index = 0;
+            positionPointer = positionRegion + positionOffsetOfBlock(newBlock);
+            positionDocIndex = 0;
+            decodedPositionsIndex = -1;
+            SearchMetrics.postingsDecoded(blockLength);
+        }
+
+        private int skipVarInts(int pointer, int count) {
+            while (count > 0) {
+                if (buffer.get(pointer++) >= 0) {
+                    count--;
+                }
+            }
+            return pointer;
+        }
+    }
+
+    // Collects (docId, position) pairs in any order and encodes them once at the end. Each pair is packed into a
+    // single long so sorting is a primitive sort with no boxing.
+    public static class Builder {
+
+        private long[] entries = new long[4];
+        private int size;
+
+        public void add(int docId, int position) {
+            if (docId < 0 || position < 0) {
+                throw new IllegalArgumentException("Doc IDs and positions must be non-negative: " + docId + "/" + position);
+            }
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length << 1);
+            }
+            entries[size++] = ((long) docId << 32) | position;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        // Takes over everything added to the other builder, e.g. a partial builder from another thread.
+        public void addAll(Builder other) {
+            if (size + other.size > entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(size + other.size, entries.length << 1));
+            }
+            System.arraycopy(other.entries, 0, entries, size, other.size);
+            size += other.size;
+        }
+
+        public PostingList build() {
+            Arrays.sort(entries, 0, size);
+            Encoder encoder = new Encoder(size + 16);
+            int i = 0;
+            while (i < size) {
+                int doc = (int) (entries[i] >>> 32);
+                int end = i;
+                while (end < size && (int) (entries[end] >>> 32) == doc) {
+                    end++;
+                }
+                encoder.startDocument(doc, end - i);
+                for (int j = i; j < end; j++) {
+                    encoder.addPosition((int) entries[j]);
+                }
+                i = end;
+            }
+            return encoder.finish();
+        }
+    }
+
+    // Lists whose documents follow each other, every one only holding doc IDs above those of the ones before it, as
+    // one list. Re-encodes straight from the parts' cursors, so it needs no more memory than the compressed result.
+    public static PostingList concatenate(List<PostingList> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int expectedBytes = 16;
+        for (PostingList part : parts) {
+            expectedBytes += part.encodedSize();
+        }
+        Encoder encoder = new Encoder(expectedBytes / 2);
+        int previousDoc = -1;
+        for (PostingList part : parts) {
+            Cursor cursor = part.cursor();
+            for (int doc = cursor.nextDoc(); doc != Cursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+                if (doc <= previousDoc) {
+                    throw new IllegalArgumentException("Parts overlap at doc " + doc);
+                }
+                int[] positions = cursor.positions();
+                encoder.startDocument(doc, cursor.freq());
+                for (int i = 0; i < cursor.freq(); i++) {
+                    encoder.addPosition(positions[i]);
+                }
+                previousDoc = doc;
+            }
+        }
+        return encoder.finish();
+    }
+
+    // Writes the layout described at the top from documents handed over in increasing doc ID order, each followed by
+    // its positions in increasing order.
+    private static class Encoder {
+        private final ByteArray docBytes;
+        private final ByteArray positionBytes;
+        private final IntList lastDocs = new IntList();
+        private final IntList docOffsets = new IntList();
+        private final IntList positionOffsets = new IntList();
+        private final IntList blockMaxFreqs = new IntList();
+        private int blockMaxFreq;
+        private int maxFreq;
+        private int docCount;
+        private int previousDoc;
+        private int previousPosition;
+
+        Encoder(int initialCapacity) {
+            docBytes = new ByteArray(initialCapacity);
+            positionBytes = new ByteArray(initialCapacity);
+        }
+
+        void startDocument(int doc, int freq) {
+            if (docCount % BLOCK_SIZE == 0) {
+                if (docCount > 0) {
+                    lastDocs.add(previousDoc);
+                    blockMaxFreqs.add(blockMaxFreq);
+                    blockMaxFreq = 0;
+                }
+                docOffsets.add(docBytes.size());
+                positionOffsets.add(positionBytes.size());
+            }
+
+            docBytes.writeVarInt(doc - previousDoc);
+            docBytes.writeVarInt(freq);
+            blockMaxFreq = Math.max(blockMaxFreq, freq);
+            maxFreq = Math.max(maxFreq, freq);
+            previousDoc = doc;
+            previousPosition = 0;
+            docCount++;
+        }
+
+        void addPosition(int position) {
+            positionBytes.writeVarInt(position - previousPosition);
+            previousPosition = position;
+        }
+
+        PostingList finish() {
+            if (docCount > 0) {
+                lastDocs.add(previousDoc);
+                blockMaxFreqs.add(blockMaxFreq);
+            }
+
+            int blockCount = lastDocs.size();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + blockCount * SKIP_ENTRY_BYTES + 4
+                    + docBytes.size() + positionBytes.size());
+            buffer.putInt(docCount);
+            buffer.putInt(blockCount);
+            buffer.putInt(maxFreq);
+            for (int block = 0; block < blockCount; block++) {
+                buffer.putInt(lastDocs.get(block));
+                buffer.putInt(docOffsets.get(block));
+                buffer.putInt(positionOffsets.get(block));
+                buffer.putInt(blockMaxFreqs.get(block));
+            }
+            buffer.putInt(docBytes.size());
+            buffer.put(docBytes.array(), 0, docBytes.size());
+            buffer.put(positionBytes.array(), 0, positionBytes.size());
+            buffer.flip();
+            return new PostingList(buffer);
+        }
+    }
+
+    private static class ByteArray {
+        private byte[] bytes;
+        private int size;
+
+        ByteArray(int initialCapacity) {
+            bytes = new byte[initialCapacity];
+        }
+
+        void writeVarInt(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, size + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        byte[] array() {
+            return bytes;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
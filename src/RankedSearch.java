@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Top-k BM25 retrieval with block-max WAND dynamic pruning.
+//
+// Every query term gets an upper bound on the score it can contribute: BM25 with the list's highest frequency and
+// the shortest document in the index. Cursors are kept sorted by their current doc ID; the pivot is the first cursor
+// at which the summed upper bounds beat the k-th best score so far, and no document before the pivot can make it into
+// the top k. Before a pivot document is scored, the block-max frequencies of the blocks that hold it give a tighter
+// bound; if even that cannot beat the threshold, all cursors skip past those blocks without decoding them. Once the
+// heap is full the threshold rises quickly and most postings are skipped, so the work tracks k instead of the number
+// of matching documents.
+public class RankedSearch {
+
+    static final float K1 = 1.2f;
+    static final float B = 0.75f;
+
+    private RankedSearch() {
+    }
+
+    // Highest scoring documents first. Terms that are missing from the index are ignored.
+    public static List<ScoredDocument> topK(PostingList[] termPostings, DocLengths docLengths, int k) {
+        return topK(termPostings, docLengths, k, DocIdBitmap.EMPTY);
+    }
+
+    // Same as above, skipping the excluded (e.g. deleted) documents.
+    public static List<ScoredDocument> topK(PostingList[] termPostings, DocLengths docLengths, int k,
+                                            DocIdBitmap excluded) {
+        if (k <= 0 || docLengths.docCount() == 0) {
+            return new ArrayList<>();
+        }
+        List<TermScorer> scorers = new ArrayList<>();
+        for (PostingList postings : termPostings) {
+            if (postings != null && !postings.isEmpty()) {
+                scorers.add(new TermScorer(postings, docLengths));
+            }
+        }
+        TermScorer[] terms = scorers.toArray(new TermScorer[0]);
+        for (TermScorer term : terms) {
+            term.cursor.nextDoc();
+        }
+
+        // k comes from the caller, possibly over the wire; the heap never holds more than every document.
+        PriorityQueue<ScoredDocument> heap = new PriorityQueue<>(Math.min(k, docLengths.docCount()) + 1,
+                Comparator.comparingDouble(ScoredDocument::getScore).thenComparing(ScoredDocument::getDocId, Comparator.reverseOrder()));
+        float threshold = 0;
+
+        while (true) {
+            sortByDoc(terms);
+
+            // Find the pivot: the first term at which the summed upper bounds exceed the threshold.
+            float bound = 0;
+            int pivot = -1;
+            for (int i = 0; i < terms.length; i++) {
+                if (terms[i].cursor.docId() == PostingList.Cursor.NO_MORE_DOCS) {
+                    break;
+                }
+                bound += terms[i].upperBound;
+                if (bound > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                break;
+            }
+            int pivotDoc = terms[pivot].cursor.docId();
+            // Every term already sitting on the pivot document contributes to it as well.
+            while (pivot + 1 < terms.length && terms[pivot + 1].cursor.docId() == pivotDoc) {
+                pivot++;
+            }
+
+            // Block-max check: bound the pivot document with the blocks that contain it.
+            float blockBound = 0;
+            int nextCandidate = pivot + 1 < terms.length ? terms[pivot + 1].cursor.docId() : PostingList.Cursor.NO_MORE_DOCS;
+            for (int i = 0; i <= pivot; i++) {
+                int blockEnd = terms[i].cursor.advanceShallow(pivotDoc);
+                blockBound += terms[i].blockUpperBound();
+                if (blockEnd != PostingList.Cursor.NO_MORE_DOCS) {
+                    nextCandidate = Math.min(nextCandidate, blockEnd + 1);
+                }
+            }
+            if (blockBound <= threshold) {
+                for (int i = 0; i <= pivot; i++) {
+                    terms[i].cursor.advance(nextCandidate);
+                }
+                continue;
+            }
+
+            if (terms[0].cursor.docId() == pivotDoc) {
+                if (excluded.contains(pivotDoc)) {
+                    for (int i = 0; i <= pivot; i++) {
+                        terms[i].cursor.nextDoc();
+                    }
+                    continue;
+                }
+                float score = 0;
+                for (int i = 0; i <= pivot; i++) {
+                    score += terms[i].score();
+                    terms[i].cursor.nextDoc();
+                }
+                if (heap.size() < k) {
+                    heap.add(new ScoredDocument(pivotDoc, score));
+                } else if (score > threshold) {
+                    heap.poll();
+                    heap.add(new ScoredDocument(pivotDoc, score));
+                }
+                if (heap.size() == k) {
+                    threshold = heap.peek().getScore();
+                }
+            } else {
+                for (int i = 0; i < pivot && terms[i].cursor.docId() < pivotDoc; i++) {
+                    terms[i].cursor.advance(pivotDoc);
+                }
+            }
+        }
+
+        List<ScoredDocument> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(ScoredDocument::getScore).reversed().thenComparing(ScoredDocument::getDocId));
+        return result;
+    }
+
+    // Insertion sort: only the cursors that just moved are out of place, so this is close to linear.
+    private static void sortByDoc(TermScorer[] terms) {
+        for (int i = 1; i < terms.length; i++) {
+            TermScorer term = terms[i];
+            int doc = term.cursor.docId();
+            int j = i - 1;
+            while (j >= 0 && terms[j].cursor.docId() > doc) {
+                terms[j + 1] = terms[j];
+                j--;
+            }
+            terms[j + 1] = term;
+        }
+    }
+
+    public static float idf(int documentFrequency, int docCount) {
+        return (float) Math.log(1 + (docCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private static class TermScorer {
+        final PostingList.Cursor cursor;
+        final DocLengths docLengths;
+        final float idf;
+        final float averageLength;
+        final float upperBound;
+
+        TermScorer(PostingList postings, DocLengths docLengths) {
+            this.cursor = postings.cursor();
+            this.docLengths = docLengths;
+            this.idf = idf(postings.docCount(), docLengths.docCount());
+            this.averageLength = (float) docLengths.averageLength();
+            this.upperBound = bm25(postings.maxFreq(), docLengths.minLength());
+        }
+
+        float score() {
+            return bm25(cursor.freq(), docLengths.length(cursor.docId()));
+        }
+
+        float blockUpperBound() {
+            return bm25(cursor.shallowMaxFreq(), docLengths.minLength());
+        }
+
+        // Grows with the frequency and shrinks with the document length, so (max freq, min length) is an upper bound.
+        private float bm25(int freq, int length) {
+            float norm = K1 * (1 - B + B * length / averageLength);
+            return idf * freq * (K1 + 1) / (freq + norm);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Client side of SearchServer: a SearchService whose queries run on another process or machine.
+//
+// Keeps up to maxConnections persistent connections; a request borrows an idle one or opens a new one, so concurrent
+// queries do not wait for each other. A connection that fails is closed and not reused. Every request waits at most
+// 30 s for its answer, or the time given to execute(query, timeoutMillis).
+public class RemoteSearchService implements SearchService, AutoCloseable {
+
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private final InetSocketAddress address;
+    private final BlockingQueue<Connection> idle;
+    private volatile boolean closed;
+
+    private static class Connection implements AutoCloseable {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress address, int timeoutMillis) throws IOException {
+            this.socket = new Socket();
+            socket.connect(address, timeoutMillis);
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Nothing left to release.
+            }
+        }
+    }
+
+    public RemoteSearchService(String host, int port, int maxConnections) {
+        this.address = new InetSocketAddress(host, port);
+        this.idle = new ArrayBlockingQueue<>(maxConnections);
+    }
+
+    public RemoteSearchService(String host, int port) {
+        this(host, port, 8);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchWord(String word) {
+        return (Set<Integer>) call(SearchQuery.word(word));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchPhrase(String phrase) {
+        return (Set<Integer>) call(SearchQuery.phrase(phrase));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchPrefix(String prefix) {
+        return (Set<Integer>) call(SearchQuery.prefix(prefix));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> autoCompleteSuggestions(String prefix) {
+        return (List<String>) call(SearchQuery.autoComplete(prefix));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchBooleanQuery(String query) {
+        return (Set<Integer>) call(SearchQuery.booleanQuery(query));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ScoredDocument> searchRanked(String query, int k) {
+        return (List<ScoredDocument>) call(SearchQuery.ranked(query, k));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchFuzzy(String word, int maxEdits) {
+        return (Set<Integer>) call(SearchQuery.fuzzy(word, maxEdits));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> fuzzyAutoCompleteSuggestions(String prefix, int maxEdits) {
+        return (List<String>) call(SearchQuery.fuzzyAutoComplete(prefix, maxEdits));
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    // Runs the query with a tighter timeout than the default, e.g. what is left of a scatter-gather deadline. A
+    // request that times out closes its connection, the late answer would otherwise be read by the next request.
+    public Object execute(SearchQuery query, long timeoutMillis) {
+        return call(query, (int) Math.max(1, Math.min(timeoutMillis, READ_TIMEOUT_MILLIS)));
+    }
+
+    private Object call(SearchQuery query) {
+        return call(query, READ_TIMEOUT_MILLIS);
+    }
+
+    private Object call(SearchQuery query, int timeoutMillis) {
+        if (closed) {
+            throw new IllegalStateException("RemoteSearchService is closed");
+        }
+        Connection connection = idle.poll();
+        try {
+            if (connection == null) {
+                connection = new Connection(address, timeoutMillis);
+            }
+            connection.socket.setSoTimeout(timeoutMillis);
+            SearchProtocol.writeQuery(connection.out, query);
+            connection.out.flush();
+            Object result = SearchProtocol.readResult(connection.in, query.getType());
+            release(connection);
+            return result;
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.close();
+            }
+            throw new UncheckedIOException("Search request to " + address + " failed", e);
+        } catch (RuntimeException e) {
+            // A failure reported by the server leaves the connection in a clean state.
+            if (connection != null) {
+                release(connection);
+            }
+            throw e;
+        }
+    }
+
+    private void release(Connection connection) {
+        if (closed || !idle.offer(connection)) {
+            connection.close();
+        }
+    }
+}
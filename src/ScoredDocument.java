@@ -0,0 +1,8 @@
+import lombok.Data;
+
+@Data
+public class ScoredDocument {
+
+    private final int docId;
+    private final float score;
+}
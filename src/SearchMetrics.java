@@ -0,0 +1,338 @@
+import lombok.Data;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency and work counters for the search hot paths, switched off unless the JVM runs with -Dsearch.metrics=true.
+//
+// ENABLED is a static final, so once the JIT has compiled a caller every "if (ENABLED)" test below is folded away and
+// a disabled build runs the same code as an uninstrumented one. When enabled, work is counted in batches where it is
+// done: a posting list cursor adds a whole block of doc IDs at once and a trie lookup adds the nodes it visited when it
+// ends, into LongAdders that threads do not contend on. Latencies and result sizes are recorded per query type by
+// InstrumentedSearchService, which also logs every query slower than -Dsearch.metrics.slowQueryMillis (100 by default)
+// together with the plan the service explains for it.
+//
+// Everything is read with snapshot(), or over JMX as SearchEngine:type=SearchMetrics once registerMBean() was called.
+public final class SearchMetrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("search.metrics");
+    public static final long SLOW_QUERY_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("search.metrics.slowQueryMillis", 100));
+    public static final String OBJECT_NAME = "SearchEngine:type=SearchMetrics";
+
+    // How many of the latest slow queries are kept for snapshot().
+    private static final int RECENT_SLOW_QUERIES = 64;
+    private static final System.Logger SLOW_QUERY_LOG = System.getLogger("SearchMetrics.slowQueries");
+
+    private static final LongAdder postingsDecoded = new LongAdder();
+    private static final LongAdder positionsDecoded = new LongAdder();
+    private static final LongAdder trieNodesVisited = new LongAdder();
+    private static final LongAdder cacheHits = new LongAdder();
+    private static final LongAdder cacheMisses = new LongAdder();
+    private static final LongAdder slowQueryCount = new LongAdder();
+    // By SearchQuery.Type ordinal; latencies in nanoseconds.
+    private static final Histogram[] latencies = histograms();
+    private static final Histogram[] resultSizes = histograms();
+    private static final ArrayDeque<SlowQuery> recentSlowQueries = new ArrayDeque<>();
+
+    private static boolean registered;
+
+    private SearchMetrics() {
+    }
+
+    // Doc IDs and frequencies decoded from posting lists.
+    public static void postingsDecoded(int count) {
+        if (ENABLED) {
+            postingsDecoded.add(count);
+        }
+    }
+
+    public static void positionsDecoded(int count) {
+        if (ENABLED) {
+            positionsDecoded.add(count);
+        }
+    }
+
+    public static void trieNodesVisited(int count) {
+        if (ENABLED) {
+            trieNodesVisited.add(count);
+        }
+    }
+
+    public static void cacheHit() {
+        if (ENABLED) {
+            cacheHits.increment();
+        }
+    }
+
+    public static void cacheMiss() {
+        if (ENABLED) {
+            cacheMisses.increment();
+        }
+    }
+
+    public static void recordQuery(SearchQuery.Type type, long nanos, int resultSize) {
+        if (ENABLED) {
+            latencies[type.ordinal()].record(nanos);
+            resultSizes[type.ordinal()].record(resultSize);
+        }
+    }
+
+    public static void recordSlowQuery(SearchQuery query, long nanos, int resultSize, String plan) {
+        if (!ENABLED) {
+            return;
+        }
+        SlowQuery slowQuery = new SlowQuery(System.currentTimeMillis(), query, nanos, resultSize, plan);
+        slowQueryCount.increment();
+        synchronized (recentSlowQueries) {
+            if (recentSlowQueries.size() == RECENT_SLOW_QUERIES) {
+                recentSlowQueries.removeFirst();
+            }
+            recentSlowQueries.addLast(slowQuery);
+        }
+        SLOW_QUERY_LOG.log(System.Logger.Level.WARNING, slowQuery.toString());
+    }
+
+    public static Snapshot snapshot() {
+        Map<SearchQuery.Type, Histogram.Snapshot> latencySnapshots = new EnumMap<>(SearchQuery.Type.class);
+        Map<SearchQuery.Type, Histogram.Snapshot> sizeSnapshots = new EnumMap<>(SearchQuery.Type.class);
+        for (SearchQuery.Type type : SearchQuery.Type.values()) {
+            latencySnapshots.put(type, latencies[type.ordinal()].snapshot());
+            sizeSnapshots.put(type, resultSizes[type.ordinal()].snapshot());
+        }
+        List<SlowQuery> slowQueries;
+        synchronized (recentSlowQueries) {
+            slowQueries = new ArrayList<>(recentSlowQueries);
+        }
+        return new Snapshot(postingsDecoded.sum(), positionsDecoded.sum(), trieNodesVisited.sum(), cacheHits.sum(),
+                cacheMisses.sum(), slowQueryCount.sum(), latencySnapshots, sizeSnapshots, slowQueries);
+    }
+
+    public static void reset() {
+        postingsDecoded.reset();
+        positionsDecoded.reset();
+        trieNodesVisited.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        slowQueryCount.reset();
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i].reset();
+            resultSizes[i].reset();
+        }
+        synchronized (recentSlowQueries) {
+            recentSlowQueries.clear();
+        }
+    }
+
+    // Publishes the metrics on the platform MBean server; calling it again does nothing.
+    public static synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by another class loader, e.g. a second copy of the engine in the same JVM.
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+        registered = true;
+    }
+
+    private static Histogram[] histograms() {
+        Histogram[] histograms = new Histogram[SearchQuery.Type.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+        return histograms;
+    }
+
+    @Data
+    public static class SlowQuery {
+
+        private final long timestampMillis;
+        private final SearchQuery query;
+        private final long nanos;
+        private final int resultSize;
+        private final String plan;
+
+        @Override
+        public String toString() {
+            return String.format("Slow %s query \"%s\" took %.3f ms, %d results, plan: %s", query.getType(),
+                    query.getText(), nanos / 1e6, resultSize, plan);
+        }
+    }
+
+    // The metrics at one point in time. Counters are sums since start or the last reset().
+    public static class Snapshot {
+
+        private final long postingsDecoded;
+        private final long positionsDecoded;
+        private final long trieNodesVisited;
+        private final long cacheHits;
+        private final long cacheMisses;
+        private final long slowQueryCount;
+        private final Map<SearchQuery.Type, Histogram.Snapshot> latencies;
+        private final Map<SearchQuery.Type, Histogram.Snapshot> resultSizes;
+        private final List<SlowQuery> recentSlowQueries;
+
+        Snapshot(long postingsDecoded, long positionsDecoded, long trieNodesVisited, long cacheHits, long cacheMisses,
+                 long slowQueryCount, Map<SearchQuery.Type, Histogram.Snapshot> latencies,
+                 Map<SearchQuery.Type, Histogram.Snapshot> resultSizes, List<SlowQuery> recentSlowQueries) {
+            this.postingsDecoded = postingsDecoded;
+            this.positionsDecoded = positionsDecoded;
+            this.trieNodesVisited = trieNodesVisited;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+            this.slowQueryCount = slowQueryCount;
+            this.latencies = latencies;
+            this.resultSizes = resultSizes;
+            this.recentSlowQueries = Collections.unmodifiableList(recentSlowQueries);
+        }
+
+        public long postingsDecoded() {
+            return postingsDecoded;
+        }
+
+        public long positionsDecoded() {
+            return positionsDecoded;
+        }
+
+        public long trieNodesVisited() {
+            return trieNodesVisited;
+        }
+
+        public long cacheHits() {
+            return cacheHits;
+        }
+
+        public long cacheMisses() {
+            return cacheMisses;
+        }
+
+        public long slowQueryCount() {
+            return slowQueryCount;
+        }
+
+        // Nanoseconds.
+        public Histogram.Snapshot latency(SearchQuery.Type type) {
+            return latencies.get(type);
+        }
+
+        public Histogram.Snapshot resultSize(SearchQuery.Type type) {
+            return resultSizes.get(type);
+        }
+
+        // Oldest first.
+        public List<SlowQuery> recentSlowQueries() {
+            return recentSlowQueries;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("postingsDecoded=%d positionsDecoded=%d trieNodesVisited=%d cacheHits=%d "
+                            + "cacheMisses=%d slowQueries=%d%n", postingsDecoded, positionsDecoded, trieNodesVisited,
+                    cacheHits, cacheMisses, slowQueryCount));
+            for (SearchQuery.Type type : SearchQuery.Type.values()) {
+                if (latencies.get(type).count() > 0) {
+                    sb.append(String.format("%s latency(us) %s%n", type, latencies.get(type).toString(1000)));
+                    sb.append(String.format("%s results %s%n", type, resultSizes.get(type)));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private static class MXBean implements SearchMetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return ENABLED;
+        }
+
+        @Override
+        public long getPostingsDecoded() {
+            return postingsDecoded.sum();
+        }
+
+        @Override
+        public long getPositionsDecoded() {
+            return positionsDecoded.sum();
+        }
+
+        @Override
+        public long getTrieNodesVisited() {
+            return trieNodesVisited.sum();
+        }
+
+        @Override
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        @Override
+        public long getCacheMisses() {
+            return cacheMisses.sum();
+        }
+
+        @Override
+        public long getSlowQueryCount() {
+            return slowQueryCount.sum();
+        }
+
+        @Override
+        public Map<String, Long> getQueryCounts() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (SearchQuery.Type type : SearchQuery.Type.values()) {
+                counts.put(type.name(), latencies[type.ordinal()].snapshot().count());
+            }
+            return counts;
+        }
+
+        @Override
+        public Map<String, Double> getLatencyMicros() {
+            Map<String, Double> percentiles = new LinkedHashMap<>();
+            for (SearchQuery.Type type : SearchQuery.Type.values()) {
+                Histogram.Snapshot latency = latencies[type.ordinal()].snapshot();
+                if (latency.count() > 0) {
+                    for (double percentile : new double[]{50, 90, 99, 99.9}) {
+                        percentiles.put(type + " p" + percentile, latency.valueAt(percentile) / 1000.0);
+                    }
+                    percentiles.put(type + " max", latency.max() / 1000.0);
+                }
+            }
+            return percentiles;
+        }
+
+        @Override
+        public List<String> getRecentSlowQueries() {
+            List<String> slowQueries = new ArrayList<>();
+            for (SlowQuery slowQuery : snapshot().recentSlowQueries()) {
+                slowQueries.add(slowQuery.toString());
+            }
+            return slowQueries;
+        }
+
+        @Override
+        public String getSummary() {
+            return snapshot().toString();
+        }
+
+        @Override
+        public void reset() {
+            SearchMetrics.reset();
+        }
+    }
+}
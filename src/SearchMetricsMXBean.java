@@ -0,0 +1,32 @@
+import java.util.List;
+import java.util.Map;
+
+// JMX view of SearchMetrics. Counters are totals since start or the last reset.
+public interface SearchMetricsMXBean {
+
+    boolean isEnabled();
+
+    long getPostingsDecoded();
+
+    long getPositionsDecoded();
+
+    long getTrieNodesVisited();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getSlowQueryCount();
+
+    // Queries answered, by query type.
+    Map<String, Long> getQueryCounts();
+
+    // p50 / p90 / p99 / p99.9 / max latency in microseconds, keyed like "WORD p99.0".
+    Map<String, Double> getLatencyMicros();
+
+    List<String> getRecentSlowQueries();
+
+    String getSummary();
+
+    void reset();
+}
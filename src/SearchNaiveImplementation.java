@@ -10,27 +10,27 @@ public class SearchNaiveImplementation implements SearchService{
 
     private final DocumentService documentService = new DocumentService();
     List<Document> documents = documentService.getDocuments();
+    // Scans the text of every document. Words and phrases match whole analyzed terms, the same semantics as the
+    // indexes, so this is the reference to compare them against.
     @Override
     public Set<Integer> searchWord(String word) {
-
-        return documents.stream()
-                .filter(doc -> doc.getContent().contains(word))
-                .map(doc -> doc.getId())
-                .collect(Collectors.toSet());
+        return searchPhrase(word);
     }
 
     @Override
     public Set<Integer> searchPhrase(String phrase) {
+        String[] terms = Analyzer.STANDARD.terms(phrase);
         return documents.stream()
-                .filter(doc -> doc.getContent().contains(phrase))
+                .filter(doc -> Analyzer.STANDARD.containsPhrase(doc.getStringContent(), terms))
                 .map(doc -> doc.getId())
                 .collect(Collectors.toSet());
     }
 
     @Override
     public Set<Integer> searchPrefix(String phrase) {
+        String prefix = Analyzer.STANDARD.normalizePrefix(phrase);
         return documents.stream()
-                .filter(doc -> doc.getContent().contains(phrase))
+                .filter(doc -> Analyzer.STANDARD.containsPrefix(doc.getStringContent(), prefix))
                 .map(doc -> doc.getId())
                 .collect(Collectors.toSet());
     }
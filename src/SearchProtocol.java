@@ -0,0 +1,104 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Wire format between RemoteSearchService and SearchServer.
+//
+// A request is the query type ordinal (byte), the query text (modified UTF-8) and k (int). A response starts with a
+// status byte; OK is followed by the result, doc ID sets and suggestion lists as a count and their elements, ranked
+// results as a count and (doc ID, score) pairs. The other statuses carry an error message.
+public class SearchProtocol {
+
+    static final byte OK = 0;
+    static final byte UNSUPPORTED = 1;
+    static final byte ERROR = 2;
+
+    private SearchProtocol() {
+    }
+
+    static void writeQuery(DataOutputStream out, SearchQuery query) throws IOException {
+        out.writeByte(query.getType().ordinal());
+        out.writeUTF(query.getText());
+        out.writeInt(query.getK());
+    }
+
+    static SearchQuery readQuery(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        if (type >= SearchQuery.Type.values().length) {
+            throw new IOException("Unknown query type " + type);
+        }
+        return new SearchQuery(SearchQuery.Type.values()[type], in.readUTF(), in.readInt());
+    }
+
+    @SuppressWarnings("unchecked")
+    static void writeResult(DataOutputStream out, SearchQuery.Type type, Object result) throws IOException {
+        out.writeByte(OK);
+        switch (type) {
+            case AUTOCOMPLETE:
+            case FUZZY_AUTOCOMPLETE:
+                List<String> suggestions = (List<String>) result;
+                out.writeInt(suggestions.size());
+                for (String suggestion : suggestions) {
+                    out.writeUTF(suggestion);
+                }
+                break;
+            case RANKED:
+                List<ScoredDocument> scored = (List<ScoredDocument>) result;
+                out.writeInt(scored.size());
+                for (ScoredDocument document : scored) {
+                    out.writeInt(document.getDocId());
+                    out.writeFloat(document.getScore());
+                }
+                break;
+            default:
+                Set<Integer> docIds = (Set<Integer>) result;
+                out.writeInt(docIds.size());
+                for (int docId : docIds) {
+                    out.writeInt(docId);
+                }
+                break;
+        }
+    }
+
+    static void writeError(DataOutputStream out, byte status, String message) throws IOException {
+        out.writeByte(status);
+        out.writeUTF(message == null ? "" : message);
+    }
+
+    // The result of the query, or the server side failure rethrown.
+    static Object readResult(DataInputStream in, SearchQuery.Type type) throws IOException {
+        byte status = in.readByte();
+        if (status == UNSUPPORTED) {
+            throw new UnsupportedOperationException(in.readUTF());
+        }
+        if (status != OK) {
+            throw new IllegalStateException("Remote search failed: " + in.readUTF());
+        }
+        int count = in.readInt();
+        switch (type) {
+            case AUTOCOMPLETE:
+            case FUZZY_AUTOCOMPLETE:
+                List<String> suggestions = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    suggestions.add(in.readUTF());
+                }
+                return suggestions;
+            case RANKED:
+                List<ScoredDocument> scored = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    scored.add(new ScoredDocument(in.readInt(), in.readFloat()));
+                }
+                return scored;
+            default:
+                Set<Integer> docIds = new HashSet<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    docIds.add(in.readInt());
+                }
+                return docIds;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import lombok.Data;
+
+// A query as a value: what kind of search it is plus its normalized text, so equal queries can share cached results.
+@Data
+public class SearchQuery {
+
+    public enum Type {
+        WORD, PHRASE, PREFIX, AUTOCOMPLETE, BOOLEAN, RANKED, FUZZY, FUZZY_AUTOCOMPLETE
+    }
+
+    private final Type type;
+    private final String text;
+    // Number of results for RANKED queries, the maximum edit distance for the fuzzy ones, 0 for the others.
+    private final int k;
+
+    public static SearchQuery word(String word) {
+        return new SearchQuery(Type.WORD, normalize(word), 0);
+    }
+
+    public static SearchQuery phrase(String phrase) {
+        return new SearchQuery(Type.PHRASE, normalize(phrase), 0);
+    }
+
+    public static SearchQuery prefix(String prefix) {
+        return new SearchQuery(Type.PREFIX, normalize(prefix), 0);
+    }
+
+    public static SearchQuery autoComplete(String prefix) {
+        return new SearchQuery(Type.AUTOCOMPLETE, normalize(prefix), 0);
+    }
+
+    public static SearchQuery booleanQuery(String query) {
+        return new SearchQuery(Type.BOOLEAN, normalize(query), 0);
+    }
+
+    public static SearchQuery ranked(String query, int k) {
+        return new SearchQuery(Type.RANKED, normalize(query), k);
+    }
+
+    public static SearchQuery fuzzy(String word, int maxEdits) {
+        return new SearchQuery(Type.FUZZY, normalize(word), maxEdits);
+    }
+
+    public static SearchQuery fuzzyAutoComplete(String prefix, int maxEdits) {
+        return new SearchQuery(Type.FUZZY_AUTOCOMPLETE, normalize(prefix), maxEdits);
+    }
+
+    // Runs the query against the service: a Set<Integer>, or a List<String> / List<ScoredDocument> for the
+    // autocompletions and RANKED.
+    public Object execute(SearchService service) {
+        switch (type) {
+            case WORD:
+                return service.searchWord(text);
+            case PHRASE:
+                return service.searchPhrase(text);
+            case PREFIX:
+                return service.searchPrefix(text);
+            case AUTOCOMPLETE:
+                return service.autoCompleteSuggestions(text);
+            case BOOLEAN:
+                return service.searchBooleanQuery(text);
+            case RANKED:
+                return service.searchRanked(text, k);
+            case FUZZY:
+                return service.searchFuzzy(text, k);
+            case FUZZY_AUTOCOMPLETE:
+                return service.fuzzyAutoCompleteSuggestions(text, k);
+            default:
+                throw new IllegalStateException("Unknown query type " + type);
+        }
+    }
+
+    // Leading and trailing whitespace is dropped and runs of whitespace become one space. Case is kept: the indexes
+    // lowercase through Analyzer.STANDARD, but MemoryMappedSearchImpl without a segment matches the raw file byte for
+    // byte, so "Foo" and "foo" stay separate keys even where they give the same result.
+    //
+    // Runs on every cache lookup, so it is a char loop instead of a regex and text that is already normalized is
+    // returned as it is. trim() drops every char of \s at the ends, so a space inside is always followed by a char.
+    static String normalize(String text) {
+        String trimmed = text.trim();
+        // Skip ahead to the first whitespace that is not a single space.
+        int i = 0;
+        while (i < trimmed.length() && !(isWhitespace(trimmed.charAt(i))
+                && (trimmed.charAt(i) != ' ' || isWhitespace(trimmed.charAt(i + 1))))) {
+            i++;
+        }
+        if (i == trimmed.length()) {
+            return trimmed;
+        }
+        StringBuilder normalized = new StringBuilder(trimmed.length()).append(trimmed, 0, i);
+        boolean inWhitespace = false;
+        for (; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (!isWhitespace(c)) {
+                normalized.append(c);
+                inWhitespace = false;
+            } else if (!inWhitespace) {
+                normalized.append(' ');
+                inWhitespace = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    // The chars of the regex class \s.
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
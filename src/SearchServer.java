@@ -0,0 +1,145 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Serves one SearchService over a local TCP socket, see SearchProtocol for the format.
+//
+// Connections are persistent and every connection gets a thread that answers its requests one after the other;
+// clients run several connections for concurrent requests. On JDK 21 and later these are virtual threads, so tens of
+// thousands of mostly idle connections cost a few KB each instead of a platform thread stack; older JDKs fall back
+// to platform threads. Wrap the service in a CoalescingSearchService to answer a burst of identical queries with one
+// evaluation, and in an InstrumentedSearchService to measure it, as main() does.
+public class SearchServer implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger("SearchServer");
+
+    // Connection attempts the OS queues while the accept loop catches up; it caps this at its own limit (somaxconn).
+    private static final int BACKLOG = 4096;
+    // Requests are a few bytes; responses are flushed in chunks of this size.
+    private static final int INPUT_BUFFER_SIZE = 512;
+    private static final int OUTPUT_BUFFER_SIZE = 4096;
+
+    private final SearchService service;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+
+    // Port 0 picks a free port, see port().
+    public SearchServer(SearchService service, int port) throws IOException {
+        this.service = service;
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.connections = newThreadPerTaskExecutor("search-server-" + serverSocket.getLocalPort());
+        connections.execute(this::acceptLoop);
+    }
+
+    // Indexes a one-document-per-line file, unless its segment from an earlier run is there, and serves it:
+    // SearchServer <lines file> [port] [coalescing window in microseconds]. Run with -Dsearch.metrics=true for
+    // latency histograms over JMX.
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: SearchServer <lines file> [port] [coalescing window micros]");
+            System.exit(2);
+        }
+        Path lines = Paths.get(args[0]);
+        Path segment = Paths.get(args[0] + ".segment");
+        if (!Files.exists(segment)) {
+            System.out.println("Indexed " + new BulkIndexer().index(lines, segment));
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        long windowMicros = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        SearchService service = new InstrumentedSearchService(
+                new CoalescingSearchService(new MemoryMappedSearchImpl(segment), windowMicros));
+        SearchServer server = new SearchServer(service, port);
+        System.out.println("Serving " + segment + " on port " + server.port());
+        // The connection threads are daemons, keep the JVM up until it is killed.
+        Thread.currentThread().join();
+    }
+
+    // One new thread per task: a virtual thread where the JDK has them (21+), a daemon platform thread otherwise.
+    // Looked up reflectively so the project still builds on JDK 17.
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+        connections.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                openSockets.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOG.log(System.Logger.Level.WARNING, "Could not accept a connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(socket.getInputStream(), INPUT_BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE))) {
+            while (true) {
+                SearchQuery query = SearchProtocol.readQuery(in);
+                try {
+                    SearchProtocol.writeResult(out, query.getType(), query.execute(service));
+                } catch (UnsupportedOperationException e) {
+                    SearchProtocol.writeError(out, SearchProtocol.UNSUPPORTED, e.getMessage());
+                } catch (RuntimeException e) {
+                    SearchProtocol.writeError(out, SearchProtocol.ERROR, e.toString());
+                }
+                out.flush();
+            }
+        } catch (EOFException | SocketException e) {
+            // The client went away or the server is closing.
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Connection from " + socket.getRemoteSocketAddress() + " failed", e);
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+}
@@ -1,3 +1,4 @@
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -18,4 +19,69 @@ public interface SearchService {
      default List<String> autoCompleteSuggestions(String prefix) {
          throw new UnsupportedOperationException("Not supported yet.");
      }
+
+    // AND / OR / NOT with parentheses, see BooleanQuery for the grammar.
+    default Set<Integer> searchBooleanQuery(String query) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    // The k best documents for the query words by BM25, highest score first.
+    default List<ScoredDocument> searchRanked(String query, int k) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    // Documents with a word within maxEdits (0 to 2) inserted, deleted or substituted chars of the given one, so a
+    // typo still finds what was meant.
+    default Set<Integer> searchFuzzy(String word, int maxEdits) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    // Suggestions for a prefix typed with up to maxEdits (0 to 2) typos, the closest matches first.
+    default List<String> fuzzyAutoCompleteSuggestions(String prefix, int maxEdits) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    // Lazy counterparts of searchWord, searchPhrase, searchPrefix and searchBooleanQuery: the same documents in
+    // increasing order, produced as the caller iterates, so it can page, count or stop early. Indexes over posting
+    // lists and LiveIndex decode them on demand, and the caching, coalescing and instrumented wrappers pass them
+    // through. Boolean queries are still evaluated on bitmaps first. ShardedSearchService and RemoteSearchService stay
+    // eager: their results arrive whole from the shards or over the wire, and the defaults sort them into an int[].
+    default DocIdIterator iterateWord(String word) {
+        return DocIdIterator.of(searchWord(word));
+    }
+
+    default DocIdIterator iteratePhrase(String phrase) {
+        return DocIdIterator.of(searchPhrase(phrase));
+    }
+
+    default DocIdIterator iteratePrefix(String prefix) {
+        return DocIdIterator.of(searchPrefix(prefix));
+    }
+
+    default DocIdIterator iterateBooleanQuery(String query) {
+        return DocIdIterator.of(searchBooleanQuery(query));
+    }
+
+    // Runs many queries at once and returns their results in the same order, each what SearchQuery.execute returns
+    // for it. Indexes over posting lists override this to decode every posting list the batch needs only once, see
+    // QueryBatch; equal queries may then share one unmodifiable result.
+    default List<Object> searchBatch(List<SearchQuery> queries) {
+        List<Object> results = new ArrayList<>(queries.size());
+        for (SearchQuery query : queries) {
+            results.add(query.execute(this));
+        }
+        return results;
+    }
+
+    // Changes whenever the indexed documents change, so cached results can be dropped. Indexes that are built once
+    // never change it.
+    default long indexGeneration() {
+        return 0;
+    }
+
+    // How the service answers the query, for slow query logs: services backed by posting lists describe the terms
+    // they look up and how many documents each one has, the others only repeat the query.
+    default String explain(SearchQuery query) {
+        return query.getType() + "(" + query.getText() + ")";
+    }
 }
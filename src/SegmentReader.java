@@ -0,0 +1,143 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Read side of the segment format described in SegmentWriter.
+//
+// The file is mapped once when the reader is opened and the mapping is kept for the lifetime of the reader. Lookups
+// binary search the dictionary by comparing the query's UTF-8 bytes directly against the mapped term bytes, and
+// posting lists are returned as slices of the mapping, so nothing is copied onto the heap. All reads use absolute
+// gets, which makes one reader safe to share between any number of query threads.
+public class SegmentReader implements Closeable {
+
+    // Last version written without a checksum.
+    private static final int UNCHECKED_VERSION = 2;
+
+    private final MappedByteBuffer buffer;
+    private final int termCount;
+    private final int dictionaryOffset;
+    private final DocLengths docLengths;
+
+    private SegmentReader(MappedByteBuffer buffer, Path path) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < SegmentWriter.HEADER_BYTES || buffer.getInt(0) != SegmentWriter.MAGIC) {
+            throw new IllegalArgumentException("Not an index segment");
+        }
+        int version = buffer.getInt(4);
+        if (version != SegmentWriter.VERSION && version != UNCHECKED_VERSION) {
+            throw new IllegalArgumentException("Unsupported segment version " + version);
+        }
+        // Reads the whole file once, sequentially, which also pulls it into the page cache before the first query.
+        if (version != UNCHECKED_VERSION
+                && SegmentWriter.checksum(buffer) != buffer.getInt(SegmentWriter.CHECKSUM_OFFSET)) {
+            throw new IOException("Corrupt segment, checksum mismatch: " + path);
+        }
+        this.termCount = buffer.getInt(8);
+        this.dictionaryOffset = buffer.getInt(12);
+        int docCount = buffer.getInt(20);
+        this.docLengths = new DocLengths(buffer.slice(buffer.getInt(24), docCount * 8).asIntBuffer());
+    }
+
+    public static SegmentReader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment larger than 2 GB: " + path);
+            }
+            // The mapping stays valid after the channel is closed.
+            return new SegmentReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+        }
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public DocLengths docLengths() {
+        return docLengths;
+    }
+
+    // Postings of the term, or null if the segment does not contain it.
+    public PostingList postings(String term) {
+        int ordinal = findTerm(term.getBytes(StandardCharsets.UTF_8));
+        return ordinal < 0 ? null : postingsAt(ordinal);
+    }
+
+    public PostingList postingsAt(int ordinal) {
+        int entry = dictionaryOffset + ordinal * SegmentWriter.DICTIONARY_ENTRY_BYTES;
+        return PostingList.wrap(buffer.slice(buffer.getInt(entry + 8), buffer.getInt(entry + 12)));
+    }
+
+    public String termAt(int ordinal) {
+        int entry = dictionaryOffset + ordinal * SegmentWriter.DICTIONARY_ENTRY_BYTES;
+        byte[] bytes = new byte[buffer.getInt(entry + 4)];
+        buffer.get(buffer.getInt(entry), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Ordinal of the term, or -(insertion point) - 1 if it is absent.
+    public int findTerm(byte[] term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareTerm(mid, term, false);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Ordinals [from, to) of every term starting with the prefix. Terms are sorted, so this is a contiguous range.
+    public int[] prefixRange(String prefix) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        int from = findTerm(bytes);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int low = from;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compareTerm(mid, bytes, true) == 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return new int[]{from, low};
+    }
+
+    // Compares the term at ordinal with the given bytes. With prefixOnly set, a term that starts with the bytes
+    // compares as equal.
+    private int compareTerm(int ordinal, byte[] other, boolean prefixOnly) {
+        int entry = dictionaryOffset + ordinal * SegmentWriter.DICTIONARY_ENTRY_BYTES;
+        int offset = buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        int common = Math.min(length, other.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.toUnsignedInt(buffer.get(offset + i)) - Byte.toUnsignedInt(other[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        if (prefixOnly && length >= other.length) {
+            return 0;
+        }
+        return length - other.length;
+    }
+
+    // Nothing to release eagerly: the JDK has no public unmap, the pages are released once the reader and the
+    // posting lists sliced from it are garbage collected.
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// Writes an immutable on-disk index segment that SegmentReader can memory-map and query without deserializing.
+//
+// File layout (big endian, every offset is absolute within the file):
+//   header        int magic, int version, int termCount, int dictionaryOffset, int termBytesOffset,
+//                 int docCount, int docLengthsOffset, int checksum
+//   postings      the encoded PostingList of every term, back to back, in term order
+//   dictionary    termCount * (int termOffset, int termLength, int postingsOffset, int postingsLength)
+//   term bytes    UTF-8 bytes of every term, back to back, in term order
+//   doc lengths   docCount * (int docId, int length), sorted by doc ID
+//
+// Terms must be added in ascending unsigned UTF-8 byte order (TERM_ORDER), which is what the reader binary searches
+// on. Postings are streamed straight to the file; only the dictionary is buffered until close().
+//
+// The checksum is the CRC32C of everything after the header followed by the header up to the checksum, so a torn or
+// corrupted file is refused when it is opened instead of answering queries wrongly. Version 2 files have no checksum
+// (the field was reserved and is 0) and are still read.
+public class SegmentWriter implements Closeable {
+
+    static final int MAGIC = 0x53534547; // "SSEG"
+    static final int VERSION = 3;
+    static final int HEADER_BYTES = 32;
+    static final int CHECKSUM_OFFSET = 28;
+    static final int DICTIONARY_ENTRY_BYTES = 16;
+
+    public static final Comparator<String> TERM_ORDER = (a, b) -> compareUtf8(
+            a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+
+    private final FileChannel channel;
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(1 << 16);
+    private final CRC32C checksum = new CRC32C();
+    private long position = HEADER_BYTES;
+
+    private final IntList dictionary = new IntList();
+    private byte[] termBytes = new byte[1 << 12];
+    private int termBytesLength;
+    private byte[] lastTerm;
+    private DocLengths docLengths = DocLengths.EMPTY;
+    private boolean closed;
+
+    public SegmentWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(HEADER_BYTES);
+    }
+
+    // Builds postings for the given documents and writes them as a single segment.
+    public static void write(Path path, List<Document> documents) throws IOException {
+        long[] lengths = new long[documents.size()];
+        TermPostings postings = new ParallelIndexBuilder().buildPostings(documents, Analyzer.STANDARD, lengths);
+        write(path, postings, DocLengths.ofPacked(lengths, lengths.length));
+    }
+
+    public static void write(Path path, TermPostings postings, DocLengths docLengths) throws IOException {
+        Integer[] order = new Integer[postings.termCount()];
+        for (int termId = 0; termId < order.length; termId++) {
+            order[termId] = termId;
+        }
+        Arrays.sort(order, Comparator.comparing(postings::term, TERM_ORDER));
+        try (SegmentWriter writer = new SegmentWriter(path)) {
+            for (int termId : order) {
+                writer.addTerm(postings.term(termId), postings.postingsAt(termId));
+            }
+            writer.setDocLengths(docLengths);
+        }
+    }
+
+    public void setDocLengths(DocLengths docLengths) {
+        this.docLengths = docLengths;
+    }
+
+    public void addTerm(String term, PostingList postings) throws IOException {
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        if (lastTerm != null && compareUtf8(lastTerm, bytes) >= 0) {
+            throw new IllegalArgumentException("Terms must be added in ascending order, got '" + term + "' after '"
+                    + new String(lastTerm, StandardCharsets.UTF_8) + "'");
+        }
+        lastTerm = bytes;
+
+        ByteBuffer encoded = postings.encoded();
+        int length = encoded.remaining();
+        if (position + length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Segment exceeds the 2 GB limit of a single mapping");
+        }
+        dictionary.add(termBytesLength);
+        dictionary.add(bytes.length);
+        dictionary.add((int) position);
+        dictionary.add(length);
+
+        if (termBytesLength + bytes.length > termBytes.length) {
+            termBytes = Arrays.copyOf(termBytes, Math.max(termBytes.length << 1, termBytesLength + bytes.length));
+        }
+        System.arraycopy(bytes, 0, termBytes, termBytesLength, bytes.length);
+        termBytesLength += bytes.length;
+
+        write(encoded);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            int termCount = dictionary.size() / 4;
+            long dictionaryOffset = position;
+            long termBytesOffset = dictionaryOffset + (long) termCount * DICTIONARY_ENTRY_BYTES;
+            long docLengthsOffset = termBytesOffset + termBytesLength;
+            if (docLengthsOffset + docLengths.docCount() * 8L > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Segment exceeds the 2 GB limit of a single mapping");
+            }
+            for (int i = 0; i < termCount; i++) {
+                putInt((int) termBytesOffset + dictionary.get(i * 4));
+                putInt(dictionary.get(i * 4 + 1));
+                putInt(dictionary.get(i * 4 + 2));
+                putInt(dictionary.get(i * 4 + 3));
+            }
+            write(ByteBuffer.wrap(termBytes, 0, termBytesLength));
+            IntBuffer pairs = docLengths.pairs();
+            while (pairs.hasRemaining()) {
+                putInt(pairs.get());
+            }
+            flushStaging();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(termCount);
+            header.putInt((int) dictionaryOffset);
+            header.putInt((int) termBytesOffset);
+            header.putInt(docLengths.docCount());
+            header.putInt((int) docLengthsOffset);
+            checksum.update(header.array(), 0, CHECKSUM_OFFSET);
+            header.putInt((int) checksum.getValue());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void putInt(int value) throws IOException {
+        if (staging.remaining() < 4) {
+            flushStaging();
+        }
+        staging.putInt(value);
+        position += 4;
+    }
+
+    private void write(ByteBuffer source) throws IOException {
+        position += source.remaining();
+        while (source.hasRemaining()) {
+            if (!staging.hasRemaining()) {
+                flushStaging();
+            }
+            int chunk = Math.min(staging.remaining(), source.remaining());
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + chunk);
+            staging.put(slice);
+            source.position(source.position() + chunk);
+        }
+    }
+
+    private void flushStaging() throws IOException {
+        staging.flip();
+        checksum.update(staging.duplicate());
+        while (staging.hasRemaining()) {
+            channel.write(staging);
+        }
+        staging.clear();
+    }
+
+    // The checksum a segment in the mapped buffer should have, see the top of the file.
+    static int checksum(ByteBuffer segment) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(segment.slice(HEADER_BYTES, segment.capacity() - HEADER_BYTES));
+        checksum.update(segment.slice(0, CHECKSUM_OFFSET));
+        return (int) checksum.getValue();
+    }
+
+    static int compareUtf8(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Scatter-gather over documents hash-partitioned into independent shards.
+//
+// Every query is sent to all shards in parallel and the shard results are merged: doc ID sets are unioned, ranked
+// results are merged into one top k. A shard is any SearchService, so shards can be in-process indexes or
+// RemoteSearchService clients of SearchServers on other processes.
+//
+// Shards that have not answered when the timeout runs out, or that failed, are left out and the merged result is
+// partial; search(SearchQuery) reports which shards are missing, the SearchService methods only count it. Ranked
+// queries score every shard with its own BM25 statistics, which is close to global scoring as long as the hash
+// partitioning keeps the shards statistically alike.
+//
+// Every shard has its own fixed pool of query threads. A shard call that times out keeps running until the shard
+// answers, so a slow or hung shard ties up its own threads and its queries queue behind them, while the other shards
+// keep answering. Remote shards get what is left of the deadline as their socket timeout.
+public class ShardedSearchService implements SearchService, AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger("ShardedSearchService");
+
+    private final List<SearchService> shards;
+    private final List<ExecutorService> executors;
+    private final long timeoutMillis;
+    private final LongAdder partialResponses = new LongAdder();
+
+    // The merged results of the shards that answered in time.
+    public static class Response {
+        private final Object result;
+        private final List<Integer> missingShards;
+
+        Response(Object result, List<Integer> missingShards) {
+            this.result = result;
+            this.missingShards = missingShards;
+        }
+
+        public Object result() {
+            return result;
+        }
+
+        public List<Integer> missingShards() {
+            return missingShards;
+        }
+
+        public boolean isPartial() {
+            return !missingShards.isEmpty();
+        }
+    }
+
+    // As many query threads per shard as there are cores: an in-process shard can use every core while the others
+    // are idle, and a hung shard cannot hold more than that.
+    public ShardedSearchService(List<SearchService> shards, long timeoutMillis) {
+        this(shards, timeoutMillis, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedSearchService(List<SearchService> shards, long timeoutMillis, int threadsPerShard) {
+        if (threadsPerShard < 1) {
+            throw new IllegalArgumentException("threadsPerShard must be positive: " + threadsPerShard);
+        }
+        this.shards = new ArrayList<>(shards);
+        this.timeoutMillis = timeoutMillis;
+        this.executors = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            String name = "shard-query-" + shard;
+            executors.add(Executors.newFixedThreadPool(threadsPerShard, runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    // Splits the documents into shardCount in-process inverted indexes.
+    public static ShardedSearchService inProcess(List<Document> documents, int shardCount, long timeoutMillis) {
+        List<List<Document>> partitions = partition(documents, shardCount);
+        List<SearchService> shards = new ArrayList<>();
+        for (List<Document> partition : partitions) {
+            shards.add(new InvertedIndexBasedSearch(partition));
+        }
+        return new ShardedSearchService(shards, timeoutMillis);
+    }
+
+    // The documents of each shard, by a hash of the doc ID.
+    public static List<List<Document>> partition(List<Document> documents, int shardCount) {
+        List<List<Document>> partitions = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (Document document : documents) {
+            partitions.get(shardOf(document.getId(), shardCount)).add(document);
+        }
+        return partitions;
+    }
+
+    public static int shardOf(int docId, int shardCount) {
+        return Math.floorMod(docId * 0x9E3779B9, shardCount);
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    // How many queries returned without the results of every shard.
+    public long partialResponseCount() {
+        return partialResponses.sum();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchWord(String word) {
+        return (Set<Integer>) search(SearchQuery.word(word)).result();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchPhrase(String phrase) {
+        return (Set<Integer>) search(SearchQuery.phrase(phrase)).result();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchPrefix(String prefix) {
+        return (Set<Integer>) search(SearchQuery.prefix(prefix)).result();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchBooleanQuery(String query) {
+        return (Set<Integer>) search(SearchQuery.booleanQuery(query)).result();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ScoredDocument> searchRanked(String query, int k) {
+        return (List<ScoredDocument>) search(SearchQuery.ranked(query, k)).result();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Integer> searchFuzzy(String word, int maxEdits) {
+        return (Set<Integer>) search(SearchQuery.fuzzy(word, maxEdits)).result();
+    }
+
+    public Response search(SearchQuery query) {
+        if (query.getType() == SearchQuery.Type.AUTOCOMPLETE
+                || query.getType() == SearchQuery.Type.FUZZY_AUTOCOMPLETE) {
+            // Suggestions are terms, not documents; every shard would rank them on its own share of the corpus.
+            throw new UnsupportedOperationException("Autocomplete is not supported across shards");
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<CompletableFuture<Object>> futures = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            SearchService service = shards.get(shard);
+            futures.add(CompletableFuture.supplyAsync(() -> execute(service, query, deadline), executors.get(shard)));
+        }
+
+        List<Object> results = new ArrayList<>(shards.size());
+        List<Integer> missing = new ArrayList<>();
+        RuntimeException failure = null;
+        for (int shard = 0; shard < futures.size(); shard++) {
+            CompletableFuture<Object> future = futures.get(shard);
+            try {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                // Drops the call if it is still queued; one that is running finishes on its shard's thread.
+                future.cancel(false);
+                missing.add(shard);
+            } catch (ExecutionException | CompletionException | CancellationException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                if (cause instanceof UnsupportedOperationException) {
+                    // Every shard runs the same implementation, the query cannot work on any of them.
+                    throw (UnsupportedOperationException) cause;
+                }
+                if (failure == null) {
+                    failure = cause instanceof RuntimeException
+                            ? (RuntimeException) cause : new IllegalStateException(cause);
+                }
+                missing.add(shard);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for shards", e);
+            }
+        }
+        if (results.isEmpty() && failure != null) {
+            throw failure;
+        }
+        if (!missing.isEmpty()) {
+            partialResponses.increment();
+        }
+        return new Response(merge(query, results), Collections.unmodifiableList(missing));
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+        for (SearchService shard : shards) {
+            if (shard instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) shard).close();
+                } catch (Exception e) {
+                    LOG.log(System.Logger.Level.WARNING, "Could not close shard " + shard, e);
+                }
+            }
+        }
+    }
+
+    private static Object execute(SearchService shard, SearchQuery query, long deadline) {
+        if (shard instanceof RemoteSearchService) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            return ((RemoteSearchService) shard).execute(query, remainingMillis);
+        }
+        return query.execute(shard);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object merge(SearchQuery query, List<Object> results) {
+        if (query.getType() == SearchQuery.Type.RANKED) {
+            PriorityQueue<ScoredDocument> heap =
+                    new PriorityQueue<>(Comparator.comparingDouble(ScoredDocument::getScore));
+            for (Object result : results) {
+                for (ScoredDocument scored : (List<ScoredDocument>) result) {
+                    heap.add(scored);
+                    if (heap.size() > query.getK()) {
+                        heap.poll();
+                    }
+                }
+            }
+            List<ScoredDocument> merged = new ArrayList<>(heap);
+            merged.sort(Comparator.comparingDouble(ScoredDocument::getScore).reversed()
+                    .thenComparing(ScoredDocument::getDocId));
+            return merged;
+        }
+        // Shards hold disjoint documents, so the sets only need to be put together.
+        int size = 0;
+        for (Object result : results) {
+            size += ((Set<Integer>) result).size();
+        }
+        Set<Integer> merged = new HashSet<>(size * 2);
+        for (Object result : results) {
+            merged.addAll((Set<Integer>) result);
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+// The terms of an index in sorted order, each with its postings at the same position.
+//
+// All terms that start with a prefix are neighbours in sorted order, so a prefix query is two binary searches for the
+// ends of the range instead of a scan over the whole vocabulary. The term Strings and postings are the ones the index
+// already holds by term ID, so this only costs two reference arrays.
+public class SortedTermDictionary {
+
+    public static final SortedTermDictionary EMPTY = new SortedTermDictionary(new String[0], new PostingList[0]);
+
+    private final String[] terms;
+    private final PostingList[] postings;
+
+    private SortedTermDictionary(String[] terms, PostingList[] postings) {
+        this.terms = terms;
+        this.postings = postings;
+    }
+
+    public static SortedTermDictionary of(TermPostings index) {
+        Integer[] order = new Integer[index.termCount()];
+        for (int termId = 0; termId < order.length; termId++) {
+            order[termId] = termId;
+        }
+        Arrays.sort(order, Comparator.comparing(index::term));
+        String[] terms = new String[order.length];
+        PostingList[] postings = new PostingList[order.length];
+        for (int i = 0; i < order.length; i++) {
+            terms[i] = index.term(order[i]);
+            postings[i] = index.postingsAt(order[i]);
+        }
+        return new SortedTermDictionary(terms, postings);
+    }
+
+    public int termCount() {
+        return terms.length;
+    }
+
+    public String term(int index) {
+        return terms[index];
+    }
+
+    public PostingList postingsAt(int index) {
+        return postings[index];
+    }
+
+    // Positions of the terms starting with the prefix as {from, to}, to exclusive.
+    public int[] prefixRange(String prefix) {
+        if (prefix.isEmpty()) {
+            return new int[]{0, terms.length};
+        }
+        int from = lowerBound(prefix);
+        // Every term with the prefix sorts before the prefix with its last char incremented. A last char of U+FFFF
+        // cannot be incremented, those few terms are walked instead.
+        char last = prefix.charAt(prefix.length() - 1);
+        int to = from;
+        if (last != Character.MAX_VALUE) {
+            to = lowerBound(prefix.substring(0, prefix.length() - 1) + (char) (last + 1));
+        } else {
+            while (to < terms.length && terms[to].startsWith(prefix)) {
+                to++;
+            }
+        }
+        return new int[]{from, to};
+    }
+
+    // The prefix and how many terms it covers, for slow query logs.
+    public String explainPrefix(String prefix) {
+        int[] range = prefixRange(prefix);
+        return "PREFIX(" + prefix + ")[" + (range[1] - range[0]) + " terms]";
+    }
+
+    // Documents containing any term that starts with the prefix.
+    public DocIdBitmap prefixDocuments(String prefix) {
+        int[] range = prefixRange(prefix);
+        return DocIdBitmap.union(Arrays.copyOfRange(postings, range[0], range[1]));
+    }
+
+    // The same documents merged from the postings one at a time, see DocIdIterator.union.
+    public DocIdIterator prefixIterator(String prefix) {
+        int[] range = prefixRange(prefix);
+        DocIdIterator[] cursors = new DocIdIterator[range[1] - range[0]];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = postings[range[0] + i].cursor();
+        }
+        return DocIdIterator.union(cursors);
+    }
+
+    // First position whose term is not smaller than the key.
+    private int lowerBound(String key) {
+        int index = Arrays.binarySearch(terms, key);
+        return index < 0 ? -index - 1 : index;
+    }
+}
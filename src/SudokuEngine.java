@@ -0,0 +1,354 @@
+import java.util.concurrent.ForkJoinPool;
+
+// Sudoku validation and solving on bitboards, for processing boards in bulk.
+//
+// A board is 81 bytes in row-major order, 0 for an empty cell and 1 to 9 for a digit; parse and format convert from
+// and to the usual 81 char line. Every row, column and box is a 9 bit mask of the digits placed in it, so the
+// candidates of a cell are one OR of three masks and a placement is three ORs.
+//
+// Solving alternates constraint propagation and backtracking. Propagation places naked singles (a cell with one
+// candidate left) and hidden singles (a digit with one cell left in a row, column or box) until neither finds
+// anything, and notices a dead end as soon as a cell or a digit of a unit runs out of places. Then the search branches
+// on the empty cell with the fewest candidates; a failed branch is undone from a trail of the cells it placed.
+//
+// An engine allocates its state once and solving a board allocates nothing, so one engine is meant to solve many
+// boards, but only from one thread at a time. solveAll and validateAll give every worker its own.
+public class SudokuEngine {
+
+    public static final int CELLS = 81;
+
+    private static final int ALL_DIGITS = 0x1FF;
+    // Boards per task of a batch, enough to make the cost of a task and its engine negligible.
+    private static final int BATCH_CHUNK = 1024;
+
+    private static final int[] ROW_OF = new int[CELLS];
+    private static final int[] COLUMN_OF = new int[CELLS];
+    private static final int[] BOX_OF = new int[CELLS];
+    // Cells of the 9 rows, 9 columns and 9 boxes.
+    private static final int[][] UNITS = new int[27][9];
+
+    static {
+        for (int cell = 0; cell < CELLS; cell++) {
+            int row = cell / 9;
+            int column = cell % 9;
+            int box = row / 3 * 3 + column / 3;
+            ROW_OF[cell] = row;
+            COLUMN_OF[cell] = column;
+            BOX_OF[cell] = box;
+            UNITS[row][column] = cell;
+            UNITS[9 + column][row] = cell;
+            UNITS[18 + box][row % 3 * 3 + column % 3] = cell;
+        }
+    }
+
+    private final byte[] cells = new byte[CELLS];
+    private final int[] rows = new int[9];
+    private final int[] columns = new int[9];
+    private final int[] boxes = new int[9];
+    // Cells placed since the search started, in order, so a branch can take its placements back.
+    private final int[] trail = new int[CELLS];
+    private int trailSize;
+
+    // True if no row, column or box holds a digit twice; empty cells are allowed. Allocates nothing: the rows are
+    // checked one at a time, the boxes one band of three at a time, and the 81 column bits live in two longs.
+    public static boolean isValid(byte[] board) {
+        long columnsLow = 0;
+        long columnsHigh = 0;
+        int band = 0;
+        for (int row = 0; row < 9; row++) {
+            if (row % 3 == 0) {
+                band = 0;
+            }
+            int seen = 0;
+            for (int column = 0; column < 9; column++) {
+                int digit = board[row * 9 + column];
+                if (digit == 0) {
+                    continue;
+                }
+                if (digit < 1 || digit > 9) {
+                    return false;
+                }
+                int bit = 1 << (digit - 1);
+                int boxBit = bit << (column / 3 * 9);
+                int columnBit = column * 9 + digit - 1;
+                if ((seen & bit) != 0 || (band & boxBit) != 0) {
+                    return false;
+                }
+                if (columnBit < 64) {
+                    if ((columnsLow & (1L << columnBit)) != 0) {
+                        return false;
+                    }
+                    columnsLow |= 1L << columnBit;
+                } else {
+                    if ((columnsHigh & (1L << (columnBit - 64))) != 0) {
+                        return false;
+                    }
+                    columnsHigh |= 1L << (columnBit - 64);
+                }
+                seen |= bit;
+                band |= boxBit;
+            }
+        }
+        return true;
+    }
+
+    // Same check on a board of '1' to '9' and '.' for empty cells; any other char makes the board invalid.
+    public static boolean isValid(char[][] board) {
+        long columnsLow = 0;
+        long columnsHigh = 0;
+        int band = 0;
+        for (int row = 0; row < 9; row++) {
+            if (row % 3 == 0) {
+                band = 0;
+            }
+            int seen = 0;
+            for (int column = 0; column < 9; column++) {
+                char c = board[row][column];
+                if (c == '.') {
+                    continue;
+                }
+                if (c < '1' || c > '9') {
+                    return false;
+                }
+                int bit = 1 << (c - '1');
+                int boxBit = bit << (column / 3 * 9);
+                int columnBit = column * 9 + c - '1';
+                if ((seen & bit) != 0 || (band & boxBit) != 0) {
+                    return false;
+                }
+                if (columnBit < 64) {
+                    if ((columnsLow & (1L << columnBit)) != 0) {
+                        return false;
+                    }
+                    columnsLow |= 1L << columnBit;
+                } else {
+                    if ((columnsHigh & (1L << (columnBit - 64))) != 0) {
+                        return false;
+                    }
+                    columnsHigh |= 1L << (columnBit - 64);
+                }
+                seen |= bit;
+                band |= boxBit;
+            }
+        }
+        return true;
+    }
+
+    // Fills the empty cells of the board with a solution and returns true, or leaves the board as it was and returns
+    // false if it has none. A board with several solutions gets one of them.
+    public boolean solve(byte[] board) {
+        if (!load(board)) {
+            return false;
+        }
+        trailSize = 0;
+        if (!search()) {
+            return false;
+        }
+        System.arraycopy(cells, 0, board, 0, CELLS);
+        return true;
+    }
+
+    // Solves every board in place on all cores; solved[i] tells whether board i had a solution.
+    public static boolean[] solveAll(byte[][] boards) {
+        boolean[] solved = new boolean[boards.length];
+        forEachChunk(boards.length, (engine, i) -> solved[i] = engine.solve(boards[i]));
+        return solved;
+    }
+
+    // isValid of every board, on all cores.
+    public static boolean[] validateAll(byte[][] boards) {
+        boolean[] valid = new boolean[boards.length];
+        forEachChunk(boards.length, (engine, i) -> valid[i] = isValid(boards[i]));
+        return valid;
+    }
+
+    // A board from an 81 char line, '1' to '9' for digits and '.' or '0' for empty cells.
+    public static byte[] parse(CharSequence line) {
+        if (line.length() != CELLS) {
+            throw new IllegalArgumentException("A board has 81 cells, got " + line.length() + ": " + line);
+        }
+        byte[] board = new byte[CELLS];
+        for (int cell = 0; cell < CELLS; cell++) {
+            char c = line.charAt(cell);
+            if (c >= '1' && c <= '9') {
+                board[cell] = (byte) (c - '0');
+            } else if (c != '.' && c != '0') {
+                throw new IllegalArgumentException("Not a digit or empty cell at " + cell + ": " + line);
+            }
+        }
+        return board;
+    }
+
+    // The board as an 81 char line with '.' for empty cells.
+    public static String format(byte[] board) {
+        char[] line = new char[CELLS];
+        for (int cell = 0; cell < CELLS; cell++) {
+            line[cell] = board[cell] == 0 ? '.' : (char) ('0' + board[cell]);
+        }
+        return new String(line);
+    }
+
+    private interface BoardTask {
+        void run(SudokuEngine engine, int board);
+    }
+
+    private static void forEachChunk(int boardCount, BoardTask task) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunkCount = (boardCount + BATCH_CHUNK - 1) / BATCH_CHUNK;
+        if (chunkCount <= 1 || pool.getParallelism() == 1) {
+            SudokuEngine engine = new SudokuEngine();
+            for (int i = 0; i < boardCount; i++) {
+                task.run(engine, i);
+            }
+            return;
+        }
+        pool.invoke(new ParallelIndexBuilder.RangeTask(0, chunkCount, chunk -> {
+            SudokuEngine engine = new SudokuEngine();
+            int to = Math.min(boardCount, (chunk + 1) * BATCH_CHUNK);
+            for (int i = chunk * BATCH_CHUNK; i < to; i++) {
+                task.run(engine, i);
+            }
+        }));
+    }
+
+    // Copies the board in and fills the masks; false if it is not a valid board.
+    private boolean load(byte[] board) {
+        if (board.length != CELLS) {
+            throw new IllegalArgumentException("A board has 81 cells, got " + board.length);
+        }
+        for (int i = 0; i < 9; i++) {
+            rows[i] = 0;
+            columns[i] = 0;
+            boxes[i] = 0;
+        }
+        for (int cell = 0; cell < CELLS; cell++) {
+            int digit = board[cell];
+            cells[cell] = 0;
+            if (digit == 0) {
+                continue;
+            }
+            if (digit < 1 || digit > 9 || (candidates(cell) & (1 << (digit - 1))) == 0) {
+                return false;
+            }
+            set(cell, digit);
+        }
+        return true;
+    }
+
+    private boolean search() {
+        int mark = trailSize;
+        if (!propagate()) {
+            undo(mark);
+            return false;
+        }
+        int best = -1;
+        int bestCount = 10;
+        for (int cell = 0; cell < CELLS && bestCount > 2; cell++) {
+            if (cells[cell] == 0) {
+                int count = Integer.bitCount(candidates(cell));
+                if (count < bestCount) {
+                    best = cell;
+                    bestCount = count;
+                }
+            }
+        }
+        if (best < 0) {
+            return true;
+        }
+        for (int remaining = candidates(best); remaining != 0; remaining &= remaining - 1) {
+            int branch = trailSize;
+            place(best, Integer.numberOfTrailingZeros(remaining) + 1);
+            if (search()) {
+                return true;
+            }
+            undo(branch);
+        }
+        undo(mark);
+        return false;
+    }
+
+    // Places singles until there are none left. Returns false on a contradiction, leaving its placements on the trail
+    // for the caller to undo.
+    private boolean propagate() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int cell = 0; cell < CELLS; cell++) {
+                if (cells[cell] != 0) {
+                    continue;
+                }
+                int candidates = candidates(cell);
+                if (candidates == 0) {
+                    return false;
+                }
+                if ((candidates & (candidates - 1)) == 0) {
+                    place(cell, Integer.numberOfTrailingZeros(candidates) + 1);
+                    changed = true;
+                }
+            }
+            for (int unit = 0; unit < UNITS.length; unit++) {
+                int[] unitCells = UNITS[unit];
+                // Digits that are a candidate of at least one, and of at least two empty cells of the unit.
+                int once = 0;
+                int twice = 0;
+                for (int cell : unitCells) {
+                    if (cells[cell] == 0) {
+                        int candidates = candidates(cell);
+                        twice |= once & candidates;
+                        once |= candidates;
+                    }
+                }
+                if ((once | placed(unit)) != ALL_DIGITS) {
+                    return false;
+                }
+                for (int hidden = once & ~twice; hidden != 0; hidden &= hidden - 1) {
+                    int bit = hidden & -hidden;
+                    for (int cell : unitCells) {
+                        // A cell can lose the digit to an earlier placement of this loop; the next round sees that.
+                        if (cells[cell] == 0 && (candidates(cell) & bit) != 0) {
+                            place(cell, Integer.numberOfTrailingZeros(bit) + 1);
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private int candidates(int cell) {
+        return ~(rows[ROW_OF[cell]] | columns[COLUMN_OF[cell]] | boxes[BOX_OF[cell]]) & ALL_DIGITS;
+    }
+
+    private int placed(int unit) {
+        if (unit < 9) {
+            return rows[unit];
+        }
+        return unit < 18 ? columns[unit - 9] : boxes[unit - 18];
+    }
+
+    private void place(int cell, int digit) {
+        set(cell, digit);
+        trail[trailSize++] = cell;
+    }
+
+    private void set(int cell, int digit) {
+        int bit = 1 << (digit - 1);
+        cells[cell] = (byte) digit;
+        rows[ROW_OF[cell]] |= bit;
+        columns[COLUMN_OF[cell]] |= bit;
+        boxes[BOX_OF[cell]] |= bit;
+    }
+
+    private void undo(int mark) {
+        while (trailSize > mark) {
+            int cell = trail[--trailSize];
+            int bit = ~(1 << (cells[cell] - 1));
+            cells[cell] = 0;
+            rows[ROW_OF[cell]] &= bit;
+            columns[COLUMN_OF[cell]] &= bit;
+            boxes[BOX_OF[cell]] &= bit;
+        }
+    }
+}
@@ -1,73 +1,32 @@
+// The char[][] face of SudokuEngine, for boards of '1' to '9' and '.' for empty cells.
 public class Sudukou {
 
     public boolean isValidSudoku(char[][] board) {
-
-        boolean[][] rows = new boolean[9][9];
-        boolean[][] cols = new boolean[9][9];
-        boolean[][] box = new boolean[9][9];
-
-        for (int i =0; i < 9; i++) {
-            for (int j =0; j < 9; j++) {
-                if (board[i][j] == '.') {
-                    continue;
-                }
-                int value = board[i][j] - '1';
-                int boardKey = ((i /3) * 3) + (j/3);
-
-                if (rows[i][value] || cols[j][value] || box[boardKey][value]) {
-                    return false;
-                }
-                rows[i][value] = true;
-                cols[j][value] = true;
-                box[boardKey][value] = true;
-
-            }
-        }
-        return true;
+        return SudokuEngine.isValid(board);
     }
 
+    // Fills the board in place; a board without a solution is left as it was.
     public void solveSudoku(char[][] board) {
-        traverse(board);
-    }
-
-    private boolean traverse(char[][] board) {
-        for (int i =0; i < 9; i++) {
-            for (int j =0; j < 9; j++) {
-                if (board[i][j] != '.') {
+        byte[] cells = new byte[SudokuEngine.CELLS];
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                char c = board[i][j];
+                if (c == '.') {
                     continue;
                 }
-                for (char c ='1'; c <='9'; c++){
-                    if (isValid(c, i, j, board)) {
-                        board[i][j] = c;
-                        if (traverse(board)) {
-                            return true;
-                        }
-                        board[i][j] = '.';
-                    }
+                if (c < '1' || c > '9') {
+                    return;
                 }
-                return false;
-
+                cells[i * 9 + j] = (byte) (c - '0');
             }
         }
-        return true;
-    }
-
-    private boolean isValid(char value, int row, int col, char[][] board) {
-        for (int i =0; i < 9; i++) {
-            if (board[row][i] == value) {
-                return false;
-            }
-            if (board[i][col] == value ) {
-                return false;
-            }
-
-            int boardX = ((row/3) * 3) + (i /3);
-            int boardY = ((col/3) *3) + (i%3);
-
-            if (board[boardX][boardY] == value) {
-                return false;
+        if (!new SudokuEngine().solve(cells)) {
+            return;
+        }
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                board[i][j] = (char) ('0' + cells[i * 9 + j]);
             }
         }
-        return true;
     }
 }
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+// Assigns every distinct term of an index a dense int ID, 0, 1, 2, ... in the order the terms are first added.
+//
+// Everything else about a term can then live in plain arrays indexed by its ID (postings, frequencies, ...) instead of
+// in maps keyed by String, and a query resolves each of its terms to an ID once before touching any of them. Terms can
+// be looked up with a slice of a char[], which is how an Analyzer streams them, so building an index only creates a
+// String the first time a term is seen.
+//
+// Open addressing over an int table holding ID + 1, with linear probing; the hash of every term is kept by ID so
+// growing the table never rehashes a String. Terms hash like String.hashCode(). Adding is not thread safe; once
+// filled, a dictionary can be read by any number of threads.
+public class TermDictionary {
+
+    public static final int NO_TERM = -1;
+
+    private String[] terms;
+    private int[] hashes;
+    private int[] table;
+    private int size;
+
+    public TermDictionary() {
+        this(16);
+    }
+
+    public TermDictionary(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        terms = new String[capacity];
+        hashes = new int[capacity];
+        table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    // Same value as new String(buffer, offset, length).hashCode().
+    public static int hash(char[] buffer, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + buffer[i];
+        }
+        return h;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String term(int termId) {
+        return terms[termId];
+    }
+
+    // Hash of the term, the same as term(termId).hashCode().
+    public int hashOf(int termId) {
+        return hashes[termId];
+    }
+
+    // ID of the term, or NO_TERM.
+    public int id(char[] buffer, int offset, int length) {
+        return table[slot(buffer, offset, length, hash(buffer, offset, length))] - 1;
+    }
+
+    // Query terms are Strings already, whose hash is cached, so they are probed without copying them into a char[].
+    public int id(String term) {
+        return table[slot(term, term.hashCode())] - 1;
+    }
+
+    // IDs of the terms, NO_TERM for the ones that are not in the dictionary.
+    public int[] ids(String[] terms) {
+        int[] ids = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            ids[i] = id(terms[i]);
+        }
+        return ids;
+    }
+
+    // ID of the term, adding it if it is new.
+    public int add(char[] buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        int slot = slot(buffer, offset, length, hash);
+        return table[slot] != 0 ? table[slot] - 1 : insert(slot, new String(buffer, offset, length), hash);
+    }
+
+    // Keeps the given String instance if the term is new.
+    public int add(String term) {
+        int hash = term.hashCode();
+        int slot = slot(term, hash);
+        return table[slot] != 0 ? table[slot] - 1 : insert(slot, term, hash);
+    }
+
+    private int insert(int slot, String term, int hash) {
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, size << 1);
+            hashes = Arrays.copyOf(hashes, size << 1);
+        }
+        int termId = size++;
+        terms[termId] = term;
+        hashes[termId] = hash;
+        table[slot] = termId + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return termId;
+    }
+
+    // Slot that holds the term, or the empty slot where it belongs.
+    private int slot(char[] buffer, int offset, int length, int hash) {
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (table[slot] != 0) {
+            int termId = table[slot] - 1;
+            if (hashes[termId] == hash && Analyzer.equals(terms[termId], buffer, offset, length)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int slot(String term, int hash) {
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (table[slot] != 0) {
+            int termId = table[slot] - 1;
+            if (hashes[termId] == hash && terms[termId].equals(term)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        table = new int[table.length << 1];
+        int mask = table.length - 1;
+        for (int termId = 0; termId < size; termId++) {
+            int slot = spread(hashes[termId]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = termId + 1;
+        }
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
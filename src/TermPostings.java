@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+// The postings of an index addressed by term ID: the postings of term t are postingsAt(t), t from the TermDictionary.
+//
+// Replaces a Map<String, PostingList>: the terms are stored once in the dictionary, and once a query has resolved its
+// terms to IDs every further access is an array index.
+public class TermPostings {
+
+    public static final TermPostings EMPTY = new TermPostings(new TermDictionary(), new PostingList[0]);
+
+    private final TermDictionary terms;
+    private final PostingList[] postings;
+
+    // postings[t] belongs to term t of the dictionary and must not be null.
+    public TermPostings(TermDictionary terms, PostingList[] postings) {
+        if (postings.length != terms.size()) {
+            throw new IllegalArgumentException("Expected postings for " + terms.size() + " terms, got " + postings.length);
+        }
+        this.terms = terms;
+        this.postings = postings;
+    }
+
+    public TermDictionary terms() {
+        return terms;
+    }
+
+    public int termCount() {
+        return postings.length;
+    }
+
+    public int termId(String term) {
+        return terms.id(term);
+    }
+
+    public String term(int termId) {
+        return terms.term(termId);
+    }
+
+    public PostingList postingsAt(int termId) {
+        return postings[termId];
+    }
+
+    // Postings of the term, or null if the index does not contain it.
+    public PostingList get(String term) {
+        int termId = terms.id(term);
+        return termId == TermDictionary.NO_TERM ? null : postings[termId];
+    }
+
+    // Postings of every term ID, null for NO_TERM.
+    public PostingList[] postingsOf(int[] termIds) {
+        PostingList[] result = new PostingList[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            result[i] = termIds[i] == TermDictionary.NO_TERM ? null : postings[termIds[i]];
+        }
+        return result;
+    }
+
+    // Collects postings per term ID while an index is built.
+    public static class Builder {
+        private final TermDictionary terms = new TermDictionary();
+        private PostingList.Builder[] builders = new PostingList.Builder[16];
+
+        // Records an occurrence of a term streamed by an Analyzer.
+        public void add(char[] buffer, int offset, int length, int docId, int position) {
+            postingsAt(terms.add(buffer, offset, length)).add(docId, position);
+        }
+
+        // Collector of the term's postings, created the first time the term is seen.
+        public PostingList.Builder postingsOf(String term) {
+            return postingsAt(terms.add(term));
+        }
+
+        // Adds postings collected elsewhere, taking the builder over if the term is new.
+        public void merge(String term, PostingList.Builder postings) {
+            int termId = terms.add(term);
+            grow(termId);
+            if (builders[termId] == null) {
+                builders[termId] = postings;
+            } else {
+                builders[termId].addAll(postings);
+            }
+        }
+
+        public TermDictionary terms() {
+            return terms;
+        }
+
+        public PostingList.Builder postingsAt(int termId) {
+            grow(termId);
+            if (builders[termId] == null) {
+                builders[termId] = new PostingList.Builder();
+            }
+            return builders[termId];
+        }
+
+        // Compresses the postings of every term.
+        public TermPostings build() {
+            PostingList[] postings = new PostingList[terms.size()];
+            for (int termId = 0; termId < postings.length; termId++) {
+                postings[termId] = builders[termId].build();
+            }
+            return new TermPostings(terms, postings);
+        }
+
+        private void grow(int termId) {
+            if (termId >= builders.length) {
+                builders = Arrays.copyOf(builders, Math.max(termId + 1, builders.length << 1));
+            }
+        }
+    }
+}
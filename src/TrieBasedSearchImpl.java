@@ -1,142 +1,470 @@
 import javax.swing.tree.TreeNode;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 public class TrieBasedSearchImpl implements SearchService{
-    private final DocumentService documentService = new DocumentService();
-    List<Document> documents = documentService.getDocuments();
+    // Only read to re-check phrase candidates on their text.
+    private final List<Document> documents;
+
+    private static final int MAX_SUGGESTIONS = 20;
+    // Below this many documents per worker the parallel build is not worth it.
+    private static final int MIN_DOCUMENTS_PER_CHUNK = 1024;
 
     private static class TrieNode {
         private Map<Character, TrieNode> children = new HashMap<>();
         Set<Integer> documentIds = new HashSet<>();
+        // documentIds sorted for DocIdIterators, made on the first iteration and dropped when documentIds changes.
+        private volatile int[] sortedDocumentIds;
         boolean isWord = false;
+        // Set on word nodes: the word and how often it occurs across all documents.
+        String word;
+        int frequency;
+        // The most frequent words in this subtree, most frequent first, kept up to date on every insert.
+        TrieNode[] topWords = new TrieNode[0];
 
         public TrieNode() {
 
         }
+
+        DocIdIterator iterator() {
+            int[] sorted = sortedDocumentIds;
+            if (sorted == null) {
+                sorted = new int[documentIds.size()];
+                int count = 0;
+                for (int docId : documentIds) {
+                    sorted[count++] = docId;
+                }
+                Arrays.sort(sorted);
+                sortedDocumentIds = sorted;
+            }
+            return DocIdIterator.of(sorted, 0, sorted.length);
+        }
+
+        // Called on every node of the path of a word whose frequency just went up by one. The other words in the
+        // subtree did not change, so the word either moves up within the list or takes the place of the last one.
+        void offer(TrieNode wordNode) {
+            int index = indexOf(wordNode);
+            if (index < 0) {
+                if (topWords.length < MAX_SUGGESTIONS) {
+                    topWords = Arrays.copyOf(topWords, topWords.length + 1);
+                } else if (!ranksBefore(wordNode, topWords[topWords.length - 1])) {
+                    return;
+                }
+                index = topWords.length - 1;
+                topWords[index] = wordNode;
+            }
+            while (index > 0 && ranksBefore(wordNode, topWords[index - 1])) {
+                topWords[index] = topWords[index - 1];
+                index--;
+            }
+            topWords[index] = wordNode;
+        }
+
+        private int indexOf(TrieNode wordNode) {
+            for (int i = 0; i < topWords.length; i++) {
+                if (topWords[i] == wordNode) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Rebuilds the top words of this subtree from scratch, children first. The top words of a subtree can only
+        // be the node's own word or top words of its children.
+        void refreshTopWords() {
+            for (TrieNode child : children.values()) {
+                child.refreshTopWords();
+            }
+            rankTopWords();
+        }
+
+        // Recomputes this node's top words from its own word and the top words of its children.
+        void rankTopWords() {
+            List<TrieNode> candidates = new ArrayList<>();
+            if (isWord) {
+                candidates.add(this);
+            }
+            for (TrieNode child : children.values()) {
+                candidates.addAll(Arrays.asList(child.topWords));
+            }
+            candidates.sort(TrieNode::compareRank);
+            topWords = candidates.subList(0, Math.min(MAX_SUGGESTIONS, candidates.size())).toArray(new TrieNode[0]);
+        }
+
+        // Adds the words of another trie, which must be built without ranking; call refreshTopWords afterwards.
+        void mergeFrom(TrieNode other) {
+            isWord |= other.isWord;
+            if (other.word != null) {
+                word = other.word;
+            }
+            frequency += other.frequency;
+            documentIds.addAll(other.documentIds);
+            sortedDocumentIds = null;
+            for (Map.Entry<Character, TrieNode> entry : other.children.entrySet()) {
+                TrieNode existing = children.putIfAbsent(entry.getKey(), entry.getValue());
+                if (existing != null) {
+                    existing.mergeFrom(entry.getValue());
+                }
+            }
+        }
+
+        private static boolean ranksBefore(TrieNode a, TrieNode b) {
+            return compareRank(a, b) < 0;
+        }
+
+        // Higher frequency first, ties in alphabetical order.
+        private static int compareRank(TrieNode a, TrieNode b) {
+            return a.frequency != b.frequency ? Integer.compare(b.frequency, a.frequency) : a.word.compareTo(b.word);
+        }
     }
-    private static TrieNode root = new TrieNode();
+    private final TrieNode root;
+
     public TrieBasedSearchImpl() {
+        this(new DocumentService().getDocuments());
+    }
+
+    public TrieBasedSearchImpl(List<Document> documents) {
+        this(documents, new TrieNode());
         buildTrieIndex(documents);
     }
-    @Override
-    public Set<Integer> searchWord(String word) {
-        TrieNode node = root;
-        for (char c : word.toCharArray()) {
-            if (!node.children.containsKey(c)) {
-                return Collections.emptySet();
+
+    private TrieBasedSearchImpl(List<Document> documents, TrieNode root) {
+        this.documents = documents;
+        this.root = root;
+    }
+
+    // A trie over the words of a snapshot written by writeSnapshot; the documents are only used to re-check phrases.
+    public static TrieBasedSearchImpl loadSnapshot(Path path, List<Document> documents) throws IOException {
+        TrieNode root = new TrieNode();
+        TrieSnapshot.read(path, (word, frequency, docIds) -> {
+            TrieNode node = root;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.children.computeIfAbsent(word.charAt(i), k -> new TrieNode());
+            }
+            node.isWord = true;
+            node.word = word;
+            node.frequency = frequency;
+            node.documentIds = new HashSet<>(docIds.length * 2);
+            for (int docId : docIds) {
+                node.documentIds.add(docId);
+            }
+        });
+        root.refreshTopWords();
+        return new TrieBasedSearchImpl(documents, root);
+    }
+
+    // Loads the snapshot at the path, or indexes the documents of the DocumentService and writes it there.
+    public static TrieBasedSearchImpl loadOrBuild(Path snapshot) {
+        List<Document> documents = new DocumentService().getDocuments();
+        return IndexSnapshot.loadOrBuild(snapshot, path -> loadSnapshot(path, documents),
+                () -> new TrieBasedSearchImpl(documents), TrieBasedSearchImpl::writeSnapshot);
+    }
+
+    // Writes every word of the trie, in sorted order, see TrieSnapshot.
+    public void writeSnapshot(Path path) throws IOException {
+        try (TrieSnapshot.Writer writer = new TrieSnapshot.Writer(path)) {
+            writeWords(root, writer);
+        }
+    }
+
+    private static void writeWords(TrieNode node, TrieSnapshot.Writer writer) throws IOException {
+        if (node.isWord) {
+            int[] docIds = new int[node.documentIds.size()];
+            int i = 0;
+            for (int docId : node.documentIds) {
+                docIds[i++] = docId;
             }
-            node = node.children.get(c);
+            Arrays.sort(docIds);
+            writer.addWord(node.word, node.frequency, docIds);
+        }
+        Character[] keys = node.children.keySet().toArray(new Character[0]);
+        Arrays.sort(keys);
+        for (Character key : keys) {
+            writeWords(node.children.get(key), writer);
         }
+    }
 
-        return node.isWord ? node.documentIds : Collections.emptySet();
+    // Words are analyzed like the documents; one that analyzes into several terms is searched as a phrase.
+    @Override
+    public Set<Integer> searchWord(String word) {
+        String[] terms = Analyzer.STANDARD.terms(word);
+        return terms.length == 1 ? termDocuments(terms[0]) : searchPhrase(terms);
+    }
+
+    private Set<Integer> termDocuments(String term) {
+        TrieNode node = searchPrefixNode(term);
+        return node != null && node.isWord ? Collections.unmodifiableSet(node.documentIds) : Collections.emptySet();
     }
 
     @Override
     public Set<Integer> searchPhrase(String phrase) {
-        TrieNode node = root;
-        String[] words = phrase.split("\\s+");
-        Set<Integer> candidates = new HashSet<>(searchWord(words[0].toLowerCase()));
+        return searchPhrase(Analyzer.STANDARD.terms(phrase));
+    }
+
+    // Documents that contain every word are candidates; the ones that have them next to each other are re-checked
+    // on their text.
+    private Set<Integer> searchPhrase(String[] words) {
+        if (words.length == 0) {
+            return new HashSet<>();
+        }
+        Set<Integer> candidates = new HashSet<>(termDocuments(words[0]));
         for (int i = 1; i < words.length; i++) {
-            candidates.retainAll(searchWord(words[i].toLowerCase()));
+            candidates.retainAll(termDocuments(words[i]));
         }
         return documents.stream()
                 .filter(document -> candidates.contains(document.getId()))
-                .filter(document -> document.getContent().contains(phrase))
+                .filter(document -> Analyzer.STANDARD.containsPhrase(document.getStringContent(), words))
                 .map(document -> document.getId())
                 .collect(Collectors.toSet());
     }
 
     @Override
     public Set<Integer> searchPrefix(String prefix) {
-        TrieNode current = root;
-        for (char c : prefix.toCharArray()) {
-            if (!current.children.containsKey(c)) {
-                return Collections.emptySet();
-            }
-            current = current.children.get(c);
+        TrieNode current = searchPrefixNode(Analyzer.STANDARD.normalizePrefix(prefix));
+        return current == null ? Collections.emptySet() : Collections.unmodifiableSet(current.documentIds);
+    }
+
+    // The sets of the nodes are unordered, so a node's documents are sorted once, on its first iteration.
+    @Override
+    public DocIdIterator iterateWord(String word) {
+        String[] terms = Analyzer.STANDARD.terms(word);
+        if (terms.length != 1) {
+            return DocIdIterator.of(searchPhrase(terms));
         }
-        return current.documentIds;
+        TrieNode node = searchPrefixNode(terms[0]);
+        return node != null && node.isWord ? node.iterator() : DocIdIterator.empty();
     }
 
+    @Override
+    public DocIdIterator iteratePrefix(String prefix) {
+        TrieNode current = searchPrefixNode(Analyzer.STANDARD.normalizePrefix(prefix));
+        return current == null ? DocIdIterator.empty() : current.iterator();
+    }
+
+    // The 20 most frequent words starting with the prefix, most frequent first. Every node already holds the top
+    // words of its subtree, so this costs O(prefix length + 20) however many words share the prefix.
     @Override
     public List<String> autoCompleteSuggestions(String prefix) {
        if (prefix.isEmpty()) {
            return Collections.emptyList();
        }
 
-       TrieNode prefixNode =searchPrefixNode(prefix);
+       TrieNode prefixNode =searchPrefixNode(Analyzer.STANDARD.normalizePrefix(prefix));
 
        if (prefixNode == null) {
            return Collections.emptyList();
        }
-       List<String> suggestions = new ArrayList<>();
-       collectWords(prefixNode, prefix, suggestions);
+       List<String> suggestions = new ArrayList<>(prefixNode.topWords.length);
+       for (TrieNode wordNode : prefixNode.topWords) {
+           suggestions.add(wordNode.word);
+       }
        return suggestions;
     }
 
-    private void collectWords(TrieNode node, String currentPrefix, List<String> suggestions) {
-        if (currentPrefix.isEmpty()) {
-            return;
+    // Documents with a word within maxEdits of the given one. A word that analyzes into several terms matches the
+    // documents that have a close word for each of them, anywhere in the text.
+    @Override
+    public Set<Integer> searchFuzzy(String word, int maxEdits) {
+        LevenshteinAutomaton.checkMaxEdits(maxEdits);
+        String[] terms = Analyzer.STANDARD.terms(word);
+        Set<Integer> result = null;
+        for (int i = 0; i < terms.length && (result == null || !result.isEmpty()); i++) {
+            Set<Integer> termResult = new HashSet<>();
+            walkFuzzy(new LevenshteinAutomaton(terms[i], maxEdits), (node, distance) -> {
+                if (node.isWord) {
+                    termResult.addAll(node.documentIds);
+                }
+            });
+            if (result == null) {
+                result = termResult;
+            } else {
+                result.retainAll(termResult);
+            }
         }
+        return result == null ? new HashSet<>() : result;
+    }
 
-        if (suggestions.size() == 20) {
-            return;
+    // The 20 best words that start with something within maxEdits of the prefix: fewest edits first, then most
+    // frequent. Every node the prefix can end on holds the top words of its subtree, so this only walks the part of
+    // the trie within reach of the prefix.
+    @Override
+    public List<String> fuzzyAutoCompleteSuggestions(String prefix, int maxEdits) {
+        LevenshteinAutomaton.checkMaxEdits(maxEdits);
+        String normalized = Analyzer.STANDARD.normalizePrefix(prefix);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
         }
+        // A word below several matching nodes counts with its smallest distance.
+        Map<TrieNode, Integer> distances = new HashMap<>();
+        walkFuzzy(new LevenshteinAutomaton(normalized, maxEdits), (node, distance) -> {
+            for (TrieNode wordNode : node.topWords) {
+                distances.merge(wordNode, distance, Math::min);
+            }
+        });
+        List<TrieNode> candidates = new ArrayList<>(distances.keySet());
+        candidates.sort(Comparator.<TrieNode>comparingInt(distances::get).thenComparing(TrieNode::compareRank));
+        List<String> suggestions = new ArrayList<>(Math.min(MAX_SUGGESTIONS, candidates.size()));
+        for (TrieNode wordNode : candidates.subList(0, Math.min(MAX_SUGGESTIONS, candidates.size()))) {
+            suggestions.add(wordNode.word);
+        }
+        return suggestions;
+    }
 
-        for (char c : node.children.keySet()) {
-            String prefix = currentPrefix + c;
-            collectWords(node.children.get(c), prefix, suggestions);
-            if (suggestions.size() == 20) {
-                return;
+    private interface FuzzyVisitor {
+        // Called for every node whose path is within the automaton's edit distance.
+        void visit(TrieNode node, int distance);
+    }
+
+    private void walkFuzzy(LevenshteinAutomaton automaton, FuzzyVisitor visitor) {
+        long[] states = automaton.newStateStack();
+        automaton.start(states);
+        SearchMetrics.trieNodesVisited(walkFuzzy(root, automaton, states, 0, visitor));
+    }
+
+    // Depth first in lockstep with the automaton; a branch is left as soon as no word below it can match. Returns the
+    // number of nodes it visited.
+    private static int walkFuzzy(TrieNode node, LevenshteinAutomaton automaton, long[] states, int depth,
+                                 FuzzyVisitor visitor) {
+        int distance = automaton.distance(states, depth);
+        if (distance >= 0) {
+            visitor.visit(node, distance);
+        }
+        int visited = 1;
+        for (Map.Entry<Character, TrieNode> child : node.children.entrySet()) {
+            if (automaton.step(states, depth, child.getKey())) {
+                visited += walkFuzzy(child.getValue(), automaton, states, depth + 1, visitor);
             }
         }
+        return visited;
     }
 
     private TrieNode searchPrefixNode(String string) {
         TrieNode node = root;
-        for (char c : string.toCharArray()) {
-            node = node.children.get(c);
+        for (int i = 0; i < string.length(); i++) {
+            node = node.children.get(string.charAt(i));
             if (node == null) {
+                SearchMetrics.trieNodesVisited(i + 1);
                 return null;
             }
         }
+        SearchMetrics.trieNodesVisited(string.length() + 1);
         return node;
     }
 
-    public static void buildTrieIndex(List<Document> documents) {
-        for (Document document : documents) {
-            List<String> words = document.getContent()
-                    .stream()
-                    .map(token -> token.getWord())
-                    .collect(Collectors.toList());
-            for (String word : words) {
-                insertWord(word, document.getId());
+    // Large corpora are indexed on all cores: every ForkJoin worker fills a private trie with its share of the
+    // documents, the private tries are merged in parallel one first character at a time, and the top word caches are
+    // rebuilt once the frequencies are final.
+    public void buildTrieIndex(List<Document> documents) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunkCount = Math.min(pool.getParallelism() * 4, documents.size() / MIN_DOCUMENTS_PER_CHUNK);
+        if (chunkCount <= 1 || pool.getParallelism() == 1) {
+            buildTrieIndexSequentially(documents);
+            return;
+        }
+
+        TrieNode[] partials = new TrieNode[chunkCount];
+        pool.invoke(new ParallelIndexBuilder.RangeTask(0, chunkCount, chunk -> {
+            TrieNode partial = new TrieNode();
+            int from = (int) ((long) documents.size() * chunk / chunkCount);
+            int to = (int) ((long) documents.size() * (chunk + 1) / chunkCount);
+            for (Document document : documents.subList(from, to)) {
+                int docId = document.getId();
+                Analyzer.STANDARD.analyze(document.getStringContent(),
+                        (buffer, offset, length, position) -> addWord(partial, buffer, offset, length, docId));
             }
+            partials[chunk] = partial;
+        }));
+
+        Set<Character> firstChars = new HashSet<>(root.children.keySet());
+        for (TrieNode partial : partials) {
+            firstChars.addAll(partial.children.keySet());
         }
-    }
+        Character[] keys = firstChars.toArray(new Character[0]);
+        TrieNode[] merged = new TrieNode[keys.length];
+        pool.invoke(new ParallelIndexBuilder.RangeTask(0, keys.length, i -> {
+            // Start from the subtree already in the index, if any, so rebuilding keeps adding to it.
+            TrieNode subtree = root.children.get(keys[i]);
+            for (TrieNode partial : partials) {
+                TrieNode child = partial.children.get(keys[i]);
+                if (child == null) {
+                    continue;
+                }
+                if (subtree == null) {
+                    subtree = child;
+                } else {
+                    subtree.mergeFrom(child);
+                }
+            }
+            subtree.refreshTopWords();
+            merged[i] = subtree;
+        }));
 
-    // In this each node holds the information of where the word is in the document
-    public static void insertWord(String word, int docId) {
-        TrieNode node = root;
+        for (int i = 0; i < keys.length; i++) {
+            root.children.put(keys[i], merged[i]);
+        }
+        for (TrieNode partial : partials) {
+            // Only the empty word ends at the root itself.
+            partial.children.clear();
+            root.mergeFrom(partial);
+        }
+        root.rankTopWords();
+    }
 
-        for (char c : word.toCharArray()) {
-            node = node.children.computeIfAbsent(c, k -> new TrieNode());
+    private void buildTrieIndexSequentially(List<Document> documents) {
+        for (Document document : documents) {
+            int docId = document.getId();
+            Analyzer.STANDARD.analyze(document.getStringContent(),
+                    (buffer, offset, length, position) -> insertWord(buffer, offset, length, docId));
+        }
+    }
 
+    // Inserts without maintaining the top word caches, for the private tries of a parallel build.
+    private static void addWord(TrieNode trieRoot, char[] buffer, int offset, int length, int docId) {
+        TrieNode node = trieRoot;
+        for (int i = offset; i < offset + length; i++) {
+            node = node.children.computeIfAbsent(buffer[i], k -> new TrieNode());
         }
-        node.isWord = true;
-        node.documentIds.add(docId);
+        addOccurrence(node, buffer, offset, length, docId);
     }
 
     // In this each node holds the information of where the word is in the document
-    public static void insertWordWithDocIdInWord(String word, int docId) {
-        TrieNode node = root;
+    public void insertWord(String word, int docId) {
+        insertWord(word.toCharArray(), 0, word.length(), docId);
+    }
 
-        for (char c : word.toCharArray()) {
-            node = node.children.computeIfAbsent(c, k -> new TrieNode());
+    private void insertWord(char[] buffer, int offset, int length, int docId) {
+        TrieNode node = root;
+        for (int i = offset; i < offset + length; i++) {
+            node = node.children.computeIfAbsent(buffer[i], k -> new TrieNode());
+        }
+        addOccurrence(node, buffer, offset, length, docId);
+        // Walk the path a second time rather than remembering it, so an insert allocates nothing for a known word.
+        TrieNode onPath = root;
+        onPath.offer(node);
+        for (int i = offset; i < offset + length; i++) {
+            onPath = onPath.children.get(buffer[i]);
+            onPath.offer(node);
         }
+    }
+
+    // The word's String is only created the first time the word is seen.
+    private static void addOccurrence(TrieNode node, char[] buffer, int offset, int length, int docId) {
         node.isWord = true;
-        node.documentIds.add(docId);
+        if (node.documentIds.add(docId)) {
+            node.sortedDocumentIds = null;
+        }
+        if (node.word == null) {
+            node.word = new String(buffer, offset, length);
+        }
+        node.frequency++;
+    }
+
+    // In this each node holds the information of where the word is in the document
+    public void insertWordWithDocIdInWord(String word, int docId) {
+        insertWord(word, docId);
     }
 
 }
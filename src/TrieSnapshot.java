@@ -0,0 +1,162 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+// Snapshot of the words of a TrieBasedSearchImpl: every word with its frequency and the documents it occurs in, which
+// is all the trie holds. Loading inserts each distinct word once instead of analyzing every document again; the top
+// word caches are derived from the frequencies afterwards.
+//
+// File layout (big endian):
+//   header   int magic, int version, int wordCount, int checksum
+//   words    wordCount * (varint byteLength, UTF-8 bytes, varint frequency, varint docCount,
+//                         docCount * varint doc ID delta from the previous one)
+//
+// Varints are 7 bits per byte, low bits first, high bit set on every byte but the last; doc IDs are sorted and their
+// deltas wrap like int arithmetic. The checksum is the CRC32C of the words followed by the header up to the checksum,
+// as in SegmentWriter. The file is read with one sequential pass over a mapping, checksum first.
+public class TrieSnapshot {
+
+    static final int MAGIC = 0x53545249; // "STRI"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int CHECKSUM_OFFSET = 12;
+
+    public interface WordVisitor {
+        void visit(String word, int frequency, int[] docIds);
+    }
+
+    private TrieSnapshot() {
+    }
+
+    // Calls the visitor with every word in the order it was written. Throws IOException for a file that is not a
+    // snapshot of this version or fails its checksum, before visiting any word.
+    public static void read(Path path, WordVisitor visitor) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Trie snapshot larger than 2 GB: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a trie snapshot: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported trie snapshot version " + buffer.getInt(4) + ": " + path);
+        }
+        if (checksum(buffer) != buffer.getInt(CHECKSUM_OFFSET)) {
+            throw new IOException("Corrupt trie snapshot, checksum mismatch: " + path);
+        }
+        int wordCount = buffer.getInt(8);
+        buffer.position(HEADER_BYTES);
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < wordCount; i++) {
+            int length = readVarInt(buffer);
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            String word = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            int frequency = readVarInt(buffer);
+            int[] docIds = new int[readVarInt(buffer)];
+            int docId = 0;
+            for (int j = 0; j < docIds.length; j++) {
+                docId += readVarInt(buffer);
+                docIds[j] = docId;
+            }
+            visitor.visit(word, frequency, docIds);
+        }
+    }
+
+    // Streams words to the file; the header is filled in by close().
+    public static class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final CRC32C checksum = new CRC32C();
+        private final OutputStream out;
+        private int wordCount;
+        private boolean closed;
+
+        public Writer(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_BYTES);
+            // Buffered before the checksum, so the CRC runs over whole buffers rather than single bytes.
+            this.out = new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), checksum),
+                    1 << 16);
+        }
+
+        // The doc IDs must be sorted and distinct.
+        public void addWord(String word, int frequency, int[] docIds) throws IOException {
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            out.write(bytes);
+            writeVarInt(frequency);
+            writeVarInt(docIds.length);
+            int previous = 0;
+            for (int docId : docIds) {
+                writeVarInt(docId - previous);
+                previous = docId;
+            }
+            wordCount++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(wordCount);
+                checksum.update(header.array(), 0, CHECKSUM_OFFSET);
+                header.putInt((int) checksum.getValue());
+                header.flip();
+                channel.write(header, 0);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    private static int checksum(ByteBuffer snapshot) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(snapshot.slice(HEADER_BYTES, snapshot.capacity() - HEADER_BYTES));
+        checksum.update(snapshot.slice(0, CHECKSUM_OFFSET));
+        return (int) checksum.getValue();
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+// Weight-bounded cache with W-TinyLFU admission and eviction.
+//
+// New entries go into a small LRU window (1% of the weight). Entries pushed out of the window become candidates for
+// the main space, a segmented LRU of probation (20%) and protected (80%) entries; a probation entry that is read again
+// is promoted to protected. When the main space is full a candidate only gets in if the frequency sketch says it has
+// been asked for more often than the probation entry it would evict. One-off queries therefore pass through the window
+// without pushing out the popular ones, while a query that suddenly becomes popular still gets in.
+//
+// Reads are a ConcurrentHashMap lookup and never block. Recording the access in the policy needs the eviction lock;
+// a read only takes it if it is free and otherwise skips the bookkeeping, so under contention some accesses are not
+// counted. Writes always take the lock.
+public class WTinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    private final ToIntFunction<V> weigher;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final AccessOrderQueue<K, V> window = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> probation = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> protectedQueue = new AccessOrderQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public WTinyLfuCache(long maximumWeight, ToIntFunction<V> weigher) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("maximumWeight must be positive: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.protectedMaximum = (maximumWeight - windowMaximum) * 80 / 100;
+        this.sketch = new FrequencySketch(maximumWeight);
+    }
+
+    // The cached value, or null.
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            if (evictionLock.tryLock()) {
+                try {
+                    sketch.increment(key.hashCode());
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+            return null;
+        }
+        hits.increment();
+        if (evictionLock.tryLock()) {
+            try {
+                onAccess(node);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    // Caches the value unless it is heavier than the whole cache. This may evict other entries, or the new one.
+    public void put(K key, V value) {
+        int weight = weigher.applyAsInt(value);
+        if (weight > maximumWeight) {
+            return;
+        }
+        Node<K, V> node = new Node<>(key, value, weight);
+        evictionLock.lock();
+        try {
+            Node<K, V> old = map.put(key, node);
+            if (old != null) {
+                remove(old);
+            }
+            node.queue = WINDOW;
+            window.addLast(node);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        evictionLock.lock();
+        try {
+            Node<K, V> node = map.remove(key);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            map.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long weight() {
+        evictionLock.lock();
+        try {
+            return totalWeight();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    // Must hold the eviction lock.
+    private void onAccess(Node<K, V> node) {
+        if (node.removed) {
+            return;
+        }
+        sketch.increment(node.key.hashCode());
+        if (node.queue == WINDOW) {
+            window.moveToBack(node);
+        } else if (node.queue == PROTECTED) {
+            protectedQueue.moveToBack(node);
+        } else {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedQueue.addLast(node);
+            // Protected is over its share: its least recent entries get another chance in probation.
+            while (protectedQueue.weight > protectedMaximum) {
+                Node<K, V> demoted = protectedQueue.pollFirst();
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        }
+    }
+
+    // Must hold the eviction lock.
+    private void evict() {
+        while (window.weight > windowMaximum) {
+            Node<K, V> candidate = window.pollFirst();
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+        }
+        while (totalWeight() > maximumWeight) {
+            Node<K, V> victim = probation.peekFirst();
+            Node<K, V> candidate = probation.peekLast();
+            Node<K, V> evicted;
+            if (victim == null) {
+                evicted = protectedQueue.isEmpty() ? window.peekFirst() : protectedQueue.peekFirst();
+            } else if (victim == candidate) {
+                evicted = victim;
+            } else {
+                // Ties go against the candidate, so a scan of new queries cannot flush the cache.
+                boolean admit = sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode());
+                evicted = admit ? victim : candidate;
+            }
+            map.remove(evicted.key, evicted);
+            remove(evicted);
+            evictions.increment();
+        }
+    }
+
+    private void remove(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            window.remove(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+        } else {
+            protectedQueue.remove(node);
+        }
+        node.removed = true;
+    }
+
+    private long totalWeight() {
+        return window.weight + probation.weight + protectedQueue.weight;
+    }
+
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+
+        Stats(long hitCount, long missCount, long evictionCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+        }
+
+        public long hitCount() {
+            return hitCount;
+        }
+
+        public long missCount() {
+            return missCount;
+        }
+
+        public long evictionCount() {
+            return evictionCount;
+        }
+
+        public double hitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d evictions=%d hitRate=%.3f", hitCount, missCount, evictionCount,
+                    hitRate());
+        }
+    }
+
+    private static class Node<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        // Policy state, guarded by the eviction lock.
+        int queue;
+        boolean removed;
+        Node<K, V> previous;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    // Doubly linked list through the nodes, least recently used first, that also tracks the weight it holds.
+    private static class AccessOrderQueue<K, V> {
+        private Node<K, V> first;
+        private Node<K, V> last;
+        long weight;
+
+        boolean isEmpty() {
+            return first == null;
+        }
+
+        Node<K, V> peekFirst() {
+            return first;
+        }
+
+        Node<K, V> peekLast() {
+            return last;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.previous = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            weight += node.weight;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.previous == null) {
+                first = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void clear() {
+            for (Node<K, V> node = first; node != null; node = node.next) {
+                node.removed = true;
+            }
+            first = null;
+            last = null;
+            weight = 0;
+        }
+    }
+}
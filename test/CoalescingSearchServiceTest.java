@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CoalescingSearchServiceTest {
+
+    // The first word query blocks until released; every answer is the generation the query was evaluated at.
+    private static class SlowIndex implements SearchService {
+        final AtomicLong generation = new AtomicLong();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Set<Integer> searchWord(String word) {
+            if (calls.getAndIncrement() == 0) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Set.of((int) generation.get());
+        }
+
+        @Override
+        public Set<Integer> searchPhrase(String phrase) {
+            return Set.of();
+        }
+
+        @Override
+        public Set<Integer> searchPrefix(String prefix) {
+            return Set.of();
+        }
+
+        @Override
+        public List<String> autoCompleteSuggestions(String prefix) {
+            return List.of();
+        }
+
+        @Override
+        public long indexGeneration() {
+            return generation.get();
+        }
+    }
+
+    @Test
+    void callersOfTheSameGenerationShareOneEvaluation() throws Exception {
+        SlowIndex index = new SlowIndex();
+        CoalescingSearchService service = new CoalescingSearchService(index);
+        CompletableFuture<Set<Integer>> first = CompletableFuture.supplyAsync(() -> service.searchWord("apple"));
+        index.entered.await();
+
+        CompletableFuture<Set<Integer>> second = CompletableFuture.supplyAsync(() -> service.searchWord("apple"));
+        while (service.coalescedCount() == 0) {
+            Thread.onSpinWait();
+        }
+        index.release.countDown();
+
+        assertEquals(Set.of(0), first.get(5, TimeUnit.SECONDS));
+        assertEquals(Set.of(0), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, service.evaluationCount());
+    }
+
+    @Test
+    void aCallerAfterAnIndexChangeDoesNotJoinAnOlderEvaluation() throws Exception {
+        SlowIndex index = new SlowIndex();
+        CoalescingSearchService service = new CoalescingSearchService(index);
+        CompletableFuture<Set<Integer>> stale = CompletableFuture.supplyAsync(() -> service.searchWord("apple"));
+        index.entered.await();
+
+        index.generation.set(1);
+        try {
+            // Joining the evaluation still blocked in the delegate would time out here.
+            assertEquals(Set.of(1), CompletableFuture.supplyAsync(() -> service.searchWord("apple"))
+                    .get(5, TimeUnit.SECONDS));
+            assertEquals(0, service.coalescedCount());
+        } finally {
+            index.release.countDown();
+        }
+        stale.get(5, TimeUnit.SECONDS);
+        assertEquals(2, service.evaluationCount());
+    }
+}
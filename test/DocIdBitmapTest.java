@@ -0,0 +1,143 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocIdBitmapTest {
+
+    // IDs over several 2^16 chunks: some dense enough for a bitmap container, some sparse enough for an array one,
+    // and some right around the limit between the two.
+    private static TreeSet<Integer> randomIds(Random random) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (int chunk = 0; chunk < 8; chunk++) {
+            int count;
+            switch (random.nextInt(4)) {
+                case 0:
+                    count = random.nextInt(100);
+                    break;
+                case 1:
+                    count = DocIdBitmap.ARRAY_LIMIT - 50 + random.nextInt(100);
+                    break;
+                case 2:
+                    count = 20_000 + random.nextInt(40_000);
+                    break;
+                default:
+                    count = 0;
+            }
+            int added = 0;
+            while (added < count) {
+                if (ids.add((chunk << 16) + random.nextInt(1 << 16))) {
+                    added++;
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static DocIdBitmap bitmapOf(TreeSet<Integer> ids) {
+        DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+        for (int id : ids) {
+            builder.add(id);
+        }
+        return builder.build();
+    }
+
+    private static void assertSameIds(TreeSet<Integer> expected, DocIdBitmap actual) {
+        assertEquals(expected.size(), actual.cardinality());
+        assertEquals(expected, actual.toSet());
+        DocIdIterator iterator = actual.iterator();
+        for (int id : expected) {
+            assertEquals(id, iterator.nextDoc());
+        }
+        assertEquals(DocIdIterator.NO_MORE_DOCS, iterator.nextDoc());
+    }
+
+    @Test
+    void buildsTheIdsThatWereAdded() {
+        Random random = new Random(1);
+        for (int run = 0; run < 8; run++) {
+            TreeSet<Integer> ids = randomIds(random);
+            DocIdBitmap bitmap = bitmapOf(ids);
+            assertSameIds(ids, bitmap);
+            for (int probe = 0; probe < 2000; probe++) {
+                int id = random.nextInt(9 << 16);
+                assertEquals(ids.contains(id), bitmap.contains(id));
+            }
+        }
+    }
+
+    @Test
+    void setAlgebraMatchesTreeSets() {
+        Random random = new Random(2);
+        for (int run = 0; run < 10; run++) {
+            TreeSet<Integer> left = randomIds(random);
+            TreeSet<Integer> right = randomIds(random);
+            DocIdBitmap a = bitmapOf(left);
+            DocIdBitmap b = bitmapOf(right);
+
+            TreeSet<Integer> and = new TreeSet<>(left);
+            and.retainAll(right);
+            assertSameIds(and, a.and(b));
+
+            TreeSet<Integer> or = new TreeSet<>(left);
+            or.addAll(right);
+            assertSameIds(or, a.or(b));
+
+            TreeSet<Integer> andNot = new TreeSet<>(left);
+            andNot.removeAll(right);
+            assertSameIds(andNot, a.andNot(b));
+        }
+    }
+
+    @Test
+    void andNotOfItselfIsEmpty() {
+        DocIdBitmap bitmap = bitmapOf(randomIds(new Random(3)));
+        assertTrue(bitmap.andNot(bitmap).isEmpty());
+        assertTrue(bitmap.and(DocIdBitmap.EMPTY).isEmpty());
+        assertEquals(bitmap.cardinality(), bitmap.or(DocIdBitmap.EMPTY).cardinality());
+    }
+
+    @Test
+    void andWithPostingsMatchesAndWithBitmap() {
+        Random random = new Random(4);
+        TreeSet<Integer> left = randomIds(random);
+        TreeSet<Integer> right = randomIds(random);
+        PostingList.Builder postings = new PostingList.Builder();
+        for (int id : right) {
+            postings.add(id, 0);
+        }
+        PostingList list = postings.build();
+
+        TreeSet<Integer> expected = new TreeSet<>(left);
+        expected.retainAll(right);
+        assertSameIds(expected, bitmapOf(left).and(list));
+        assertSameIds(right, DocIdBitmap.of(list));
+    }
+
+    @Test
+    void iteratorAdvancesAcrossContainers() {
+        Random random = new Random(5);
+        TreeSet<Integer> ids = randomIds(random);
+        DocIdBitmap bitmap = bitmapOf(ids);
+        for (int run = 0; run < 2000; run++) {
+            int target = random.nextInt(9 << 16);
+            Integer expected = ids.ceiling(target);
+            assertEquals(expected == null ? DocIdIterator.NO_MORE_DOCS : expected, bitmap.iterator().advance(target));
+        }
+    }
+
+    @Test
+    void idsMustBeAddedInAscendingOrder() {
+        DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+        builder.add(5);
+        builder.add(5);
+        assertThrows(IllegalArgumentException.class, () -> builder.add(4));
+        assertThrows(IllegalArgumentException.class, () -> builder.add(-1));
+        assertFalse(builder.build().contains(4));
+    }
+}
@@ -0,0 +1,141 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IndexSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private static List<Document> randomDocuments(int count) {
+        Random random = new Random(count);
+        String[] words = {"apple", "apricot", "banana", "blueberry", "cherry", "cranberry", "date", "fig", "grape",
+                "Gr\u00f6\u00dfe", "na\u00efve", "caf\u00e9"};
+        List<Document> documents = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 2 + random.nextInt(12); i++) {
+                text.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            documents.add(new Document(id * 2, text.toString()));
+        }
+        return documents;
+    }
+
+    private static void flipByte(Path path, long offset) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[(int) offset] ^= 0x10;
+        Files.write(path, bytes);
+    }
+
+    private static void assertSameAnswers(SearchService expected, SearchService actual) {
+        for (String query : new String[]{"apple", "cherry", "gr\u00f6\u00dfe", "caf\u00e9", "missing"}) {
+            assertEquals(expected.searchWord(query), actual.searchWord(query), query);
+            assertEquals(expected.searchPrefix(query.substring(0, 2)), actual.searchPrefix(query.substring(0, 2)));
+            assertEquals(expected.searchPhrase("apple " + query), actual.searchPhrase("apple " + query));
+        }
+        assertEquals(expected.searchRanked("apple fig", 10), actual.searchRanked("apple fig", 10));
+        assertEquals(expected.searchBooleanQuery("apple AND NOT fig"), actual.searchBooleanQuery("apple AND NOT fig"));
+    }
+
+    @Test
+    void segmentReadsBackTheIndexItWasWrittenFrom() throws IOException {
+        List<Document> documents = randomDocuments(2000);
+        InvertedIndexBasedSearch index = new InvertedIndexBasedSearch(documents);
+        Path path = directory.resolve("index.seg");
+        index.writeSnapshot(path);
+
+        InvertedIndexBasedSearch loaded = InvertedIndexBasedSearch.loadSnapshot(path);
+        assertSameAnswers(index, loaded);
+        assertSameAnswers(index, new MemoryMappedSearchImpl(path));
+    }
+
+    @Test
+    void segmentWithACorruptByteIsRefused() throws IOException {
+        Path path = directory.resolve("index.seg");
+        new InvertedIndexBasedSearch(randomDocuments(500)).writeSnapshot(path);
+        long size = Files.size(path);
+
+        // A byte in the postings, one in the doc lengths at the end, and the term count in the header.
+        for (long offset : new long[]{SegmentWriter.HEADER_BYTES + 3, size - 2, 8}) {
+            Path copy = directory.resolve("corrupt-" + offset + ".seg");
+            Files.copy(path, copy);
+            flipByte(copy, offset);
+            IOException e = assertThrows(IOException.class, () -> SegmentReader.open(copy));
+            assertEquals("Corrupt segment, checksum mismatch: " + copy, e.getMessage());
+        }
+    }
+
+    @Test
+    void truncatedSegmentIsRefused() throws IOException {
+        Path path = directory.resolve("index.seg");
+        new InvertedIndexBasedSearch(randomDocuments(500)).writeSnapshot(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        assertThrows(IOException.class, () -> SegmentReader.open(path));
+    }
+
+    @Test
+    void corruptSnapshotIsRebuiltAndRewritten() throws IOException {
+        List<Document> documents = randomDocuments(300);
+        InvertedIndexBasedSearch original = new InvertedIndexBasedSearch(documents);
+        Path path = directory.resolve("index.seg");
+        original.writeSnapshot(path);
+        flipByte(path, Files.size(path) / 2);
+
+        InvertedIndexBasedSearch[] built = new InvertedIndexBasedSearch[1];
+        InvertedIndexBasedSearch loaded = IndexSnapshot.loadOrBuild(path, InvertedIndexBasedSearch::loadSnapshot,
+                () -> built[0] = new InvertedIndexBasedSearch(documents), InvertedIndexBasedSearch::writeSnapshot);
+        assertNotNull(built[0]);
+        assertSame(built[0], loaded);
+        assertSameAnswers(original, loaded);
+        // The rewritten snapshot is intact again.
+        assertSameAnswers(original, InvertedIndexBasedSearch.loadSnapshot(path));
+    }
+
+    @Test
+    void trieSnapshotReadsBackTheTrieItWasWrittenFrom() throws IOException {
+        List<Document> documents = randomDocuments(1000);
+        TrieBasedSearchImpl trie = new TrieBasedSearchImpl(documents);
+        Path path = directory.resolve("trie.snap");
+        trie.writeSnapshot(path);
+
+        TrieBasedSearchImpl loaded = TrieBasedSearchImpl.loadSnapshot(path, documents);
+        for (String query : new String[]{"apple", "cherry", "gr\u00f6\u00dfe", "caf\u00e9", "missing"}) {
+            assertEquals(trie.searchWord(query), loaded.searchWord(query));
+            assertEquals(trie.searchPrefix(query.substring(0, 1)), loaded.searchPrefix(query.substring(0, 1)));
+            assertEquals(trie.autoCompleteSuggestions(query.substring(0, 1)),
+                    loaded.autoCompleteSuggestions(query.substring(0, 1)));
+        }
+    }
+
+    @Test
+    void trieSnapshotWithACorruptByteIsRefused() throws IOException {
+        Path path = directory.resolve("trie.snap");
+        new TrieBasedSearchImpl(randomDocuments(300)).writeSnapshot(path);
+        long size = Files.size(path);
+
+        for (long offset : new long[]{TrieSnapshot.HEADER_BYTES + 1, size - 1, 8}) {
+            Path copy = directory.resolve("corrupt-" + offset + ".snap");
+            Files.copy(path, copy);
+            flipByte(copy, offset);
+            IOException e = assertThrows(IOException.class,
+                    () -> TrieSnapshot.read(copy, (word, frequency, docIds) -> { }));
+            assertEquals("Corrupt trie snapshot, checksum mismatch: " + copy, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LevenshteinAutomatonTest {
+
+    // Plain dynamic programming edit distance, insertions, deletions and substitutions all costing 1.
+    private static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    // Distance as the automaton sees it, -1 when it is more than maxEdits.
+    private static int automatonDistance(LevenshteinAutomaton automaton, String input) {
+        long[] states = automaton.newStateStack();
+        automaton.start(states);
+        for (int i = 0; i < input.length(); i++) {
+            if (!automaton.step(states, i, input.charAt(i))) {
+                return -1;
+            }
+        }
+        return automaton.distance(states, input.length());
+    }
+
+    // A small alphabet, so random words are often within a couple of edits of each other.
+    private static String randomWord(Random random, int maxLength) {
+        StringBuilder word = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(4)));
+        }
+        return word.toString();
+    }
+
+    @Test
+    void distanceMatchesDynamicProgramming() {
+        Random random = new Random(1);
+        for (int run = 0; run < 20_000; run++) {
+            String word = randomWord(random, 8);
+            String input = randomWord(random, 10);
+            int maxEdits = random.nextInt(LevenshteinAutomaton.MAX_EDITS + 1);
+            int expected = editDistance(word, input);
+            assertEquals(expected <= maxEdits ? expected : -1,
+                    automatonDistance(new LevenshteinAutomaton(word, maxEdits), input),
+                    word + " / " + input + " with " + maxEdits + " edits");
+        }
+    }
+
+    // A walk stops descending where step returns false; no longer input may match after that.
+    @Test
+    void aRejectedPrefixHasNoMatchingExtension() {
+        Random random = new Random(2);
+        for (int run = 0; run < 5_000; run++) {
+            String word = randomWord(random, 6);
+            int maxEdits = 1 + random.nextInt(LevenshteinAutomaton.MAX_EDITS);
+            LevenshteinAutomaton automaton = new LevenshteinAutomaton(word, maxEdits);
+            String input = randomWord(random, 8);
+            long[] states = automaton.newStateStack();
+            automaton.start(states);
+            for (int i = 0; i < input.length(); i++) {
+                if (!automaton.step(states, i, input.charAt(i))) {
+                    String prefix = input.substring(0, i + 1);
+                    for (int extension = 0; extension < 20; extension++) {
+                        String longer = prefix + randomWord(random, 4);
+                        assertTrue(editDistance(word, longer) > maxEdits, word + " / " + longer);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    @Test
+    void longestSupportedWordWorks() {
+        String word = "a".repeat(LevenshteinAutomaton.MAX_WORD_LENGTH);
+        LevenshteinAutomaton automaton = new LevenshteinAutomaton(word, 2);
+        assertEquals(0, automatonDistance(automaton, word));
+        assertEquals(1, automatonDistance(automaton, word.substring(1)));
+        assertEquals(2, automatonDistance(automaton, word + "bb"));
+        assertEquals(-1, automatonDistance(automaton, word.substring(3)));
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new LevenshteinAutomaton("word", -1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LevenshteinAutomaton("word", LevenshteinAutomaton.MAX_EDITS + 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LevenshteinAutomaton("a".repeat(LevenshteinAutomaton.MAX_WORD_LENGTH + 1), 1));
+    }
+
+    @Test
+    void fuzzySearchFindsTheDocumentsWithACloseWord() {
+        Random random = new Random(3);
+        List<Document> documents = new ArrayList<>();
+        for (int id = 0; id < 500; id++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                text.append('x').append(randomWord(random, 6)).append(' ');
+            }
+            documents.add(new Document(id, text.toString()));
+        }
+        SearchService[] services = {new TrieBasedSearchImpl(documents), new DoubleArrayTrieSearchImpl(documents)};
+
+        for (int run = 0; run < 300; run++) {
+            String query = "x" + randomWord(random, 6);
+            int maxEdits = random.nextInt(LevenshteinAutomaton.MAX_EDITS + 1);
+            Set<Integer> expected = new HashSet<>();
+            for (Document document : documents) {
+                for (String term : Analyzer.STANDARD.terms(document.getStringContent())) {
+                    if (editDistance(query, term) <= maxEdits) {
+                        expected.add(document.getId());
+                    }
+                }
+            }
+            for (SearchService service : services) {
+                assertEquals(expected, service.searchFuzzy(query, maxEdits),
+                        service.getClass().getSimpleName() + " " + query + " with " + maxEdits + " edits");
+            }
+        }
+    }
+
+    @Test
+    void fuzzySuggestionsStartWithSomethingCloseToThePrefix() {
+        Random random = new Random(4);
+        List<Document> documents = new ArrayList<>();
+        for (int id = 0; id < 300; id++) {
+            documents.add(new Document(id, randomWord(random, 8) + " " + randomWord(random, 8)));
+        }
+        SearchService[] services = {new TrieBasedSearchImpl(documents), new DoubleArrayTrieSearchImpl(documents)};
+
+        for (int run = 0; run < 200; run++) {
+            String prefix = "a" + randomWord(random, 3);
+            int maxEdits = random.nextInt(LevenshteinAutomaton.MAX_EDITS + 1);
+            for (SearchService service : services) {
+                for (String suggestion : service.fuzzyAutoCompleteSuggestions(prefix, maxEdits)) {
+                    int closest = Integer.MAX_VALUE;
+                    for (int end = 0; end <= suggestion.length(); end++) {
+                        closest = Math.min(closest, editDistance(prefix, suggestion.substring(0, end)));
+                    }
+                    assertTrue(closest <= maxEdits, suggestion + " for " + prefix);
+                }
+            }
+        }
+    }
+}
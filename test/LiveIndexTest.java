@@ -0,0 +1,244 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveIndexTest {
+
+    // DocumentService keeps its documents in a static map, every test removes what it added.
+    private final DocumentService documentService = new DocumentService();
+    private final Set<Integer> added = new HashSet<>();
+    private LiveIndex index;
+
+    @AfterEach
+    void tearDown() {
+        if (index != null) {
+            index.close();
+        }
+        for (int id : added) {
+            documentService.deleteDocument(id);
+        }
+    }
+
+    private LiveIndex open(int maxBufferedDocs, int maxSegments) {
+        // The periodic refresh is far enough out that only the test decides when changes become visible.
+        index = new LiveIndex(documentService, maxBufferedDocs, 600_000, maxSegments);
+        return index;
+    }
+
+    private void upsert(int id, String text) {
+        added.add(id);
+        documentService.addDocument(new Document(id, text));
+    }
+
+    @Test
+    void changesBecomeVisibleOnRefresh() {
+        LiveIndex index = open(1000, 8);
+        upsert(1, "apple pie");
+        upsert(2, "banana split");
+        assertTrue(index.searchWord("apple").isEmpty());
+
+        index.refresh();
+        assertEquals(Set.of(1), index.searchWord("apple"));
+        assertEquals(Set.of(2), index.searchPrefix("ban"));
+        assertEquals(Set.of(1), index.searchPhrase("apple pie"));
+    }
+
+    @Test
+    void anUpdateReplacesTheOlderVersion() {
+        LiveIndex index = open(1000, 8);
+        upsert(1, "apple pie");
+        index.refresh();
+
+        upsert(1, "cherry pie");
+        index.refresh();
+        assertTrue(index.searchWord("apple").isEmpty());
+        assertEquals(Set.of(1), index.searchWord("cherry"));
+        assertEquals(Set.of(1), index.searchWord("pie"));
+        assertEquals(1, index.searchRanked("pie", 10).size());
+    }
+
+    @Test
+    void aDeleteHidesTheDocument() {
+        LiveIndex index = open(1000, 8);
+        upsert(1, "apple pie");
+        upsert(2, "apple tart");
+        index.refresh();
+
+        documentService.deleteDocument(1);
+        assertEquals(Set.of(1, 2), index.searchWord("apple"));
+        index.refresh();
+        assertEquals(Set.of(2), index.searchWord("apple"));
+        assertEquals(Set.of(2), index.searchBooleanQuery("apple OR pie"));
+        assertEquals(List.of(2), index.searchRanked("apple pie", 10).stream()
+                .map(ScoredDocument::getDocId)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void aFullBufferIsFlushedWithoutARefresh() {
+        LiveIndex index = open(3, 8);
+        upsert(1, "apple");
+        upsert(2, "apple");
+        assertTrue(index.searchWord("apple").isEmpty());
+        upsert(3, "apple");
+        assertEquals(Set.of(1, 2, 3), index.searchWord("apple"));
+    }
+
+    // Random upserts and deletes with a refresh after every round, checked against the documents themselves. Two
+    // segments at most forces a merge after almost every refresh, so tombstones have to survive merges.
+    @Test
+    void searchesFollowTheDocumentsThroughMerges() throws InterruptedException {
+        LiveIndex index = open(10_000, 2);
+        Random random = new Random(1);
+        Map<Integer, String> expected = new HashMap<>();
+        String[] words = new String[30];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "w" + i;
+        }
+
+        for (int round = 0; round < 40; round++) {
+            for (int change = 0; change < 50; change++) {
+                int id = random.nextInt(300);
+                if (random.nextInt(4) == 0) {
+                    documentService.deleteDocument(id);
+                    expected.remove(id);
+                } else {
+                    StringBuilder text = new StringBuilder();
+                    for (int i = 0; i < 5; i++) {
+                        text.append(words[random.nextInt(words.length)]).append(' ');
+                    }
+                    upsert(id, text.toString());
+                    expected.put(id, text.toString());
+                }
+            }
+            index.refresh();
+            for (String word : words) {
+                Set<Integer> matching = new HashSet<>();
+                expected.forEach((id, text) -> {
+                    if (Arrays.asList(Analyzer.STANDARD.terms(text)).contains(word)) {
+                        matching.add(id);
+                    }
+                });
+                assertEquals(matching, index.searchWord(word), word + " in round " + round);
+                assertEquals(matching.size(), index.iterateWord(word).count());
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (index.snapshot().segments().size() > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(index.snapshot().segments().size() <= 2);
+        int live = 0;
+        for (IndexSegment segment : index.snapshot().segments()) {
+            live += segment.liveDocCount();
+        }
+        assertEquals(expected.size(), live);
+    }
+
+    // Two threads race on the same id, upsert against upsert and upsert against delete. Whatever the store ends up
+    // with is what the index must serve once the changes are refreshed.
+    @Test
+    void racingChangesToOneDocumentEndInTheStoredVersion() throws Exception {
+        // A listener ahead of the index that takes a while, which leaves room for the other thread to overtake.
+        Random random = new Random(2);
+        DocumentService.DocumentListener slow = new DocumentService.DocumentListener() {
+            @Override
+            public void onUpsert(Document document) {
+                pause();
+            }
+
+            @Override
+            public void onDelete(int id) {
+                pause();
+            }
+
+            private void pause() {
+                try {
+                    Thread.sleep(0, random.nextInt(500_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        documentService.addListener(slow);
+        LiveIndex index = open(10_000, 8);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 500; round++) {
+                int id = round % 10;
+                added.add(id);
+                boolean delete = round % 2 == 1;
+                CyclicBarrier start = new CyclicBarrier(2);
+                Future<?> first = threads.submit(() -> {
+                    await(start);
+                    documentService.addDocument(new Document(id, "alpha"));
+                });
+                Future<?> second = threads.submit(() -> {
+                    await(start);
+                    if (delete) {
+                        documentService.deleteDocument(id);
+                    } else {
+                        documentService.addDocument(new Document(id, "beta"));
+                    }
+                });
+                first.get();
+                second.get();
+                index.refresh();
+
+                String stored = documentService.getDocuments().stream()
+                        .filter(document -> document.getId() == id)
+                        .map(Document::getStringContent)
+                        .findFirst().orElse(null);
+                assertEquals("alpha".equals(stored), index.searchWord("alpha").contains(id), "round " + round);
+                assertEquals("beta".equals(stored), index.searchWord("beta").contains(id), "round " + round);
+            }
+        } finally {
+            threads.shutdownNow();
+            documentService.removeListener(slow);
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void invalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new LiveIndex(documentService, 0, 1000, 8));
+        assertThrows(IllegalArgumentException.class, () -> new LiveIndex(documentService, 100, 0, 8));
+        assertThrows(IllegalArgumentException.class, () -> new LiveIndex(documentService, 100, 1000, 0));
+    }
+
+    @Test
+    void theGenerationChangesWithEveryPublishedSnapshot() {
+        LiveIndex index = open(1000, 8);
+        long before = index.indexGeneration();
+        index.refresh();
+        assertEquals(before, index.indexGeneration(), "nothing to flush");
+        upsert(1, "apple");
+        index.refresh();
+        assertTrue(index.indexGeneration() > before);
+    }
+}
@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryMappedSearchImplTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void scanningMatchesLinesByteForByte() throws IOException {
+        Path file = directory.resolve("documents.txt");
+        Files.writeString(file, "apple pie\nbanana split\nApple tart\npineapple\n");
+        MemoryMappedSearchImpl service = MemoryMappedSearchImpl.scanning(file);
+
+        assertEquals(Set.of(0, 3), service.searchWord("apple"));
+        assertEquals(Set.of(1), service.searchPhrase("banana split"));
+        assertTrue(service.searchPrefix("cherry").isEmpty());
+        assertEquals(2, service.iterateWord("apple").count());
+    }
+
+    @Test
+    void anUnreadableFileFailsTheQuery() {
+        MemoryMappedSearchImpl service = MemoryMappedSearchImpl.scanning(directory.resolve("missing.txt"));
+        assertThrows(UncheckedIOException.class, () -> service.searchWord("apple"));
+        assertThrows(UncheckedIOException.class, () -> service.iteratePrefix("app"));
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelIndexBuilderTest {
+
+    private static List<Document> randomDocuments(Random random, int count) {
+        List<Document> documents = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int i = 0; i < length; i++) {
+                text.append("w").append(random.nextInt(500)).append(random.nextInt(8) == 0 ? ", " : " ");
+            }
+            documents.add(new Document(id * 2 + random.nextInt(2), text.toString()));
+        }
+        return documents;
+    }
+
+    private static List<Integer> docs(PostingList postings) {
+        List<Integer> docs = new ArrayList<>();
+        PostingList.Cursor cursor = postings.cursor();
+        for (int doc = cursor.nextDoc(); doc != PostingList.Cursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+            docs.add(doc);
+            docs.add(cursor.freq());
+        }
+        return docs;
+    }
+
+    @Test
+    void chunkedBuildMatchesASinglePass() {
+        List<Document> documents = randomDocuments(new Random(1), ParallelIndexBuilder.MIN_DOCUMENTS_PER_CHUNK * 8);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            long[] lengths = new long[documents.size()];
+            TermPostings parallel = new ParallelIndexBuilder(pool).buildPostings(documents, Analyzer.STANDARD, lengths);
+            TermPostings sequential = InvertedIndexBasedSearch.buildPostings(documents, Analyzer.STANDARD);
+
+            assertEquals(sequential.termCount(), parallel.termCount());
+            for (int termId = 0; termId < sequential.termCount(); termId++) {
+                String term = sequential.term(termId);
+                assertEquals(docs(sequential.postingsAt(termId)), docs(parallel.get(term)), term);
+            }
+
+            DocLengths expected = DocLengths.of(documents);
+            DocLengths actual = DocLengths.ofPacked(lengths, lengths.length);
+            assertEquals(expected.docCount(), actual.docCount());
+            for (int i = 0; i < expected.docCount(); i++) {
+                assertEquals(expected.docIdAt(i), actual.docIdAt(i));
+                assertEquals(expected.lengthAt(i), actual.lengthAt(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
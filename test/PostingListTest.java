@@ -0,0 +1,187 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PostingListTest {
+
+    // Doc ID -> sorted positions, several blocks long with gaps that need multi-byte deltas.
+    private static TreeMap<Integer, int[]> randomPostings(Random random, int docCount) {
+        TreeMap<Integer, int[]> postings = new TreeMap<>();
+        int doc = random.nextInt(10);
+        for (int i = 0; i < docCount; i++) {
+            int[] positions = new int[1 + random.nextInt(5)];
+            int position = random.nextInt(3);
+            for (int j = 0; j < positions.length; j++) {
+                positions[j] = position;
+                position += 1 + random.nextInt(random.nextBoolean() ? 4 : 40_000);
+            }
+            postings.put(doc, positions);
+            doc += 1 + random.nextInt(random.nextInt(10) == 0 ? 100_000 : 50);
+        }
+        return postings;
+    }
+
+    private static PostingList encode(TreeMap<Integer, int[]> postings, Random random) {
+        List<long[]> pairs = new ArrayList<>();
+        postings.forEach((doc, positions) -> {
+            for (int position : positions) {
+                pairs.add(new long[]{doc, position});
+            }
+        });
+        // The builder takes pairs in any order.
+        Collections.shuffle(pairs, random);
+        PostingList.Builder builder = new PostingList.Builder();
+        for (long[] pair : pairs) {
+            builder.add((int) pair[0], (int) pair[1]);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void cursorReturnsEveryDocumentWithItsPositions() {
+        Random random = new Random(1);
+        TreeMap<Integer, int[]> expected = randomPostings(random, 5 * PostingList.BLOCK_SIZE + 17);
+        PostingList list = encode(expected, random);
+
+        assertEquals(expected.size(), list.docCount());
+        assertEquals(expected.values().stream().mapToInt(p -> p.length).max().getAsInt(), list.maxFreq());
+        PostingList.Cursor cursor = list.cursor();
+        assertEquals(-1, cursor.docId());
+        for (Map.Entry<Integer, int[]> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), cursor.nextDoc());
+            assertEquals(entry.getValue().length, cursor.freq());
+            assertArrayEquals(entry.getValue(), Arrays.copyOf(cursor.positions(), cursor.freq()));
+        }
+        assertEquals(PostingList.Cursor.NO_MORE_DOCS, cursor.nextDoc());
+        assertEquals(PostingList.Cursor.NO_MORE_DOCS, cursor.nextDoc());
+        assertEquals(expected.keySet(), list.docIdSet());
+    }
+
+    @Test
+    void advanceLandsOnTheFirstDocumentAtOrAfterTheTarget() {
+        Random random = new Random(2);
+        TreeMap<Integer, int[]> expected = randomPostings(random, 20 * PostingList.BLOCK_SIZE);
+        PostingList list = encode(expected, random);
+        int last = expected.lastKey();
+
+        for (int run = 0; run < 200; run++) {
+            PostingList.Cursor cursor = list.cursor();
+            int current = -1;
+            while (current != PostingList.Cursor.NO_MORE_DOCS) {
+                // Mostly short hops inside a block, sometimes jumps over many blocks at once.
+                int target = current + 1 + random.nextInt(random.nextInt(4) == 0 ? last / 4 + 1 : 200);
+                Integer next = expected.ceilingKey(target);
+                int doc = cursor.advance(target);
+                assertEquals(next == null ? PostingList.Cursor.NO_MORE_DOCS : next, doc);
+                if (next != null) {
+                    assertEquals(expected.get(next).length, cursor.freq());
+                    assertArrayEquals(expected.get(next), Arrays.copyOf(cursor.positions(), cursor.freq()));
+                    assertEquals(doc, cursor.advance(doc - 1), "advance must not move backwards");
+                }
+                current = doc;
+            }
+        }
+    }
+
+    @Test
+    void advanceToTheLastDocumentOfEveryBlock() {
+        PostingList.Builder builder = new PostingList.Builder();
+        int docCount = 4 * PostingList.BLOCK_SIZE;
+        for (int doc = 0; doc < docCount; doc++) {
+            builder.add(doc * 3, 0);
+        }
+        PostingList list = builder.build();
+
+        PostingList.Cursor cursor = list.cursor();
+        for (int block = 0; block < 4; block++) {
+            int lastOfBlock = ((block + 1) * PostingList.BLOCK_SIZE - 1) * 3;
+            assertEquals(lastOfBlock, cursor.advance(lastOfBlock));
+            assertEquals(lastOfBlock + 3 == docCount * 3 ? PostingList.Cursor.NO_MORE_DOCS : lastOfBlock + 3,
+                    cursor.nextDoc());
+        }
+    }
+
+    @Test
+    void shallowAdvanceBoundsTheFrequenciesOfTheBlock() {
+        Random random = new Random(3);
+        TreeMap<Integer, int[]> expected = randomPostings(random, 8 * PostingList.BLOCK_SIZE);
+        PostingList list = encode(expected, random);
+        Integer[] docs = expected.keySet().toArray(new Integer[0]);
+
+        PostingList.Cursor cursor = list.cursor();
+        for (int target = 0; target <= docs[docs.length - 1]; target += 1 + random.nextInt(5000)) {
+            int blockEnd = cursor.advanceShallow(target);
+            int first = expected.ceilingKey(target);
+            assertTrue(blockEnd >= first);
+            int maxFreq = 0;
+            for (int doc : expected.subMap(first, true, blockEnd, true).keySet()) {
+                maxFreq = Math.max(maxFreq, expected.get(doc).length);
+            }
+            assertTrue(cursor.shallowMaxFreq() >= maxFreq);
+        }
+    }
+
+    @Test
+    void costCountsTheDocumentsLeft() {
+        PostingList.Builder builder = new PostingList.Builder();
+        for (int doc = 0; doc < 300; doc++) {
+            builder.add(doc, 0);
+        }
+        PostingList.Cursor cursor = builder.build().cursor();
+        assertEquals(300, cursor.cost());
+        cursor.advance(200);
+        assertEquals(99, cursor.cost());
+    }
+
+    @Test
+    void wrappedBytesDecodeLikeTheOriginal() {
+        Random random = new Random(4);
+        TreeMap<Integer, int[]> expected = randomPostings(random, 3 * PostingList.BLOCK_SIZE);
+        PostingList list = PostingList.wrap(encode(expected, random).encoded());
+        assertEquals(expected.keySet(), list.docIdSet());
+    }
+
+    @Test
+    void concatenateKeepsDocumentsAndPositions() {
+        Random random = new Random(5);
+        TreeMap<Integer, int[]> expected = randomPostings(random, 6 * PostingList.BLOCK_SIZE + 3);
+        List<PostingList> parts = new ArrayList<>();
+        List<Integer> docs = new ArrayList<>(expected.keySet());
+        int from = 0;
+        while (from < docs.size()) {
+            int to = Math.min(docs.size(), from + 1 + random.nextInt(300));
+            parts.add(encode(new TreeMap<>(expected.subMap(docs.get(from), true, docs.get(to - 1), true)), random));
+            from = to;
+        }
+
+        PostingList.Cursor cursor = PostingList.concatenate(parts).cursor();
+        for (Map.Entry<Integer, int[]> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), cursor.nextDoc());
+            assertArrayEquals(entry.getValue(), Arrays.copyOf(cursor.positions(), cursor.freq()));
+        }
+        assertEquals(PostingList.Cursor.NO_MORE_DOCS, cursor.nextDoc());
+    }
+
+    @Test
+    void emptyListHasNoDocuments() {
+        assertTrue(PostingList.EMPTY.isEmpty());
+        assertEquals(PostingList.Cursor.NO_MORE_DOCS, PostingList.EMPTY.cursor().nextDoc());
+        assertEquals(PostingList.Cursor.NO_MORE_DOCS, PostingList.EMPTY.cursor().advance(5));
+    }
+
+    @Test
+    void negativeDocIdsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new PostingList.Builder().add(-1, 0));
+    }
+}
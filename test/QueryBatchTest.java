@@ -0,0 +1,45 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryBatchTest {
+
+    private static final List<Document> DOCUMENTS = List.of(
+            new Document(1, "apple pie and banana smoothie"),
+            new Document(2, "banana apple fruit salad"),
+            new Document(3, "chocolate pie and lemon tart"));
+
+    // Repeated queries and terms no document contains included.
+    private static final List<SearchQuery> QUERIES = List.of(
+            SearchQuery.word("apple"), SearchQuery.word("zzz"), SearchQuery.word("zzz"),
+            SearchQuery.phrase("apple pie"), SearchQuery.phrase("zzz pie"),
+            SearchQuery.booleanQuery("pie AND NOT zzz"), SearchQuery.booleanQuery("zzz OR banana"));
+
+    @TempDir
+    Path directory;
+
+    private static void assertSameAsOneByOne(SearchService service) {
+        List<Object> batch = service.searchBatch(QUERIES);
+        assertEquals(QUERIES.size(), batch.size());
+        for (int i = 0; i < QUERIES.size(); i++) {
+            assertEquals(QUERIES.get(i).execute(service), batch.get(i), QUERIES.get(i).toString());
+        }
+    }
+
+    @Test
+    void aBatchAnswersLikeTheQueriesOneByOne() {
+        assertSameAsOneByOne(new InvertedIndexBasedSearch(DOCUMENTS));
+    }
+
+    @Test
+    void aSegmentBatchAnswersLikeTheQueriesOneByOne() throws IOException {
+        Path segment = directory.resolve("documents.seg");
+        SegmentWriter.write(segment, DOCUMENTS);
+        assertSameAsOneByOne(new MemoryMappedSearchImpl(segment));
+    }
+}
@@ -0,0 +1,147 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RankedSearchTest {
+
+    private static final float EPSILON = 1e-4f;
+
+    // Zipf-like word frequencies, so some terms span many blocks and others only a few documents.
+    private static List<Document> randomDocuments(Random random, int count, String[] vocabulary) {
+        List<Document> documents = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            StringBuilder text = new StringBuilder();
+            int length = 3 + random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                double rank = Math.abs(random.nextGaussian() * vocabulary.length / 4);
+                int word = (int) Math.min(vocabulary.length - 1, rank);
+                text.append(vocabulary[word]).append(' ');
+            }
+            documents.add(new Document(id * 3 + random.nextInt(3), text.toString()));
+        }
+        return documents;
+    }
+
+    private static String[] vocabulary(int size) {
+        String[] words = new String[size];
+        for (int i = 0; i < size; i++) {
+            words[i] = "w" + i;
+        }
+        return words;
+    }
+
+    // Every matching document scored exhaustively with the same BM25 formula.
+    private static Map<Integer, Float> bruteForce(PostingList[] termPostings, DocLengths docLengths,
+                                                  DocIdBitmap excluded) {
+        Map<Integer, Float> scores = new HashMap<>();
+        float averageLength = (float) docLengths.averageLength();
+        for (PostingList postings : termPostings) {
+            if (postings == null) {
+                continue;
+            }
+            float idf = RankedSearch.idf(postings.docCount(), docLengths.docCount());
+            PostingList.Cursor cursor = postings.cursor();
+            for (int doc = cursor.nextDoc(); doc != PostingList.Cursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+                if (excluded.contains(doc)) {
+                    continue;
+                }
+                int freq = cursor.freq();
+                float norm = RankedSearch.K1
+                        * (1 - RankedSearch.B + RankedSearch.B * docLengths.length(doc) / averageLength);
+                scores.merge(doc, idf * freq * (RankedSearch.K1 + 1) / (freq + norm), Float::sum);
+            }
+        }
+        return scores;
+    }
+
+    private static void assertTopK(Map<Integer, Float> expected, List<ScoredDocument> actual, int k) {
+        assertEquals(Math.min(k, expected.size()), actual.size());
+        List<Float> best = new ArrayList<>(expected.values());
+        best.sort((a, b) -> Float.compare(b, a));
+        for (int i = 0; i < actual.size(); i++) {
+            ScoredDocument document = actual.get(i);
+            assertTrue(expected.containsKey(document.getDocId()));
+            assertEquals(expected.get(document.getDocId()), document.getScore(), EPSILON);
+            // The k-th best score may be shared by several documents, only the scores have to agree.
+            assertEquals(best.get(i), document.getScore(), EPSILON);
+            if (i > 0) {
+                assertTrue(actual.get(i - 1).getScore() >= document.getScore());
+            }
+        }
+    }
+
+    @Test
+    void topKMatchesExhaustiveScoring() {
+        Random random = new Random(1);
+        String[] vocabulary = vocabulary(400);
+        List<Document> documents = randomDocuments(random, 5000, vocabulary);
+        TermPostings postings = InvertedIndexBasedSearch.buildPostings(documents, Analyzer.STANDARD);
+        DocLengths docLengths = DocLengths.of(documents);
+
+        for (int run = 0; run < 200; run++) {
+            PostingList[] terms = new PostingList[1 + random.nextInt(4)];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = postings.get(vocabulary[random.nextInt(random.nextBoolean() ? 20 : vocabulary.length)]);
+            }
+            int k = 1 + random.nextInt(random.nextBoolean() ? 10 : 500);
+            assertTopK(bruteForce(terms, docLengths, DocIdBitmap.EMPTY),
+                    RankedSearch.topK(terms, docLengths, k), k);
+        }
+    }
+
+    @Test
+    void excludedDocumentsAreNeverReturned() {
+        Random random = new Random(2);
+        String[] vocabulary = vocabulary(100);
+        List<Document> documents = randomDocuments(random, 3000, vocabulary);
+        TermPostings postings = InvertedIndexBasedSearch.buildPostings(documents, Analyzer.STANDARD);
+        DocLengths docLengths = DocLengths.of(documents);
+        DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+        for (int i = 0; i < docLengths.docCount(); i++) {
+            if (random.nextInt(3) == 0) {
+                builder.add(docLengths.docIdAt(i));
+            }
+        }
+        DocIdBitmap excluded = builder.build();
+
+        for (int run = 0; run < 100; run++) {
+            PostingList[] terms = {
+                    postings.get(vocabulary[random.nextInt(30)]),
+                    postings.get(vocabulary[random.nextInt(30)])
+            };
+            int k = 1 + random.nextInt(50);
+            List<ScoredDocument> top = RankedSearch.topK(terms, docLengths, k, excluded);
+            for (ScoredDocument document : top) {
+                assertFalse(excluded.contains(document.getDocId()));
+            }
+            assertTopK(bruteForce(terms, docLengths, excluded), top, k);
+        }
+    }
+
+    @Test
+    void hugeKReturnsEveryMatch() {
+        List<Document> documents = List.of(new Document(1, "apple pie"), new Document(2, "apple"),
+                new Document(3, "banana"));
+        TermPostings postings = InvertedIndexBasedSearch.buildPostings(documents, Analyzer.STANDARD);
+        PostingList[] terms = {postings.get("apple")};
+        DocLengths docLengths = DocLengths.of(documents);
+
+        assertEquals(2, RankedSearch.topK(terms, docLengths, Integer.MAX_VALUE).size());
+        assertEquals(2, RankedSearch.topK(terms, docLengths, 100_000_000).size());
+    }
+
+    @Test
+    void missingTermsAndEmptyIndexesGiveNoResults() {
+        DocLengths oneDocument = DocLengths.of(List.of(new Document(1, "a")));
+        assertTrue(RankedSearch.topK(new PostingList[]{null}, oneDocument, 5).isEmpty());
+        assertTrue(RankedSearch.topK(new PostingList[0], DocLengths.EMPTY, 5).isEmpty());
+    }
+}
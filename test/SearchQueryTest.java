@@ -0,0 +1,30 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SearchQueryTest {
+
+    @Test
+    void normalizeCollapsesWhitespaceLikeTheRegex() {
+        Random random = new Random(1);
+        char[] alphabet = {'a', 'B', ' ', ' ', '\t', '\n', '\r', '\f', '\u000B', '\u0001', '\u00a0'};
+        for (int run = 0; run < 20_000; run++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String text = new String(chars);
+            assertEquals(text.trim().replaceAll("\\s+", " "), SearchQuery.normalize(text));
+        }
+    }
+
+    @Test
+    void normalizedTextIsReturnedAsItIs() {
+        String text = "apple pie AND NOT banana";
+        assertSame(text, SearchQuery.normalize(text));
+        assertEquals(SearchQuery.word("  apple\t pie "), SearchQuery.word("apple pie"));
+    }
+}
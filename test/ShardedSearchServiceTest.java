@@ -0,0 +1,102 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedSearchServiceTest {
+
+    // Answers word queries only once the latch is released.
+    private static SearchService hungShard(CountDownLatch release) {
+        return new SearchService() {
+            @Override
+            public Set<Integer> searchWord(String word) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Set.of();
+            }
+
+            @Override
+            public Set<Integer> searchPhrase(String phrase) {
+                return Set.of();
+            }
+
+            @Override
+            public Set<Integer> searchPrefix(String prefix) {
+                return Set.of();
+            }
+
+            @Override
+            public List<String> autoCompleteSuggestions(String prefix) {
+                return List.of();
+            }
+        };
+    }
+
+    private static List<Document> documents() {
+        List<Document> documents = new ArrayList<>();
+        for (int id = 0; id < 100; id++) {
+            documents.add(new Document(id, id % 2 == 0 ? "apple" : "banana"));
+        }
+        return documents;
+    }
+
+    private static long threadsNamed(String name) {
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals(name)).count();
+    }
+
+    @Test
+    void theResultsOfEveryShardAreMerged() {
+        try (ShardedSearchService sharded = ShardedSearchService.inProcess(documents(), 3, 5_000)) {
+            assertEquals(50, sharded.searchWord("apple").size());
+            assertEquals(100, sharded.searchBooleanQuery("apple OR banana").size());
+            assertEquals(10, sharded.searchRanked("banana", 10).size());
+            assertEquals(0, sharded.partialResponseCount());
+        }
+    }
+
+    @Test
+    void aHungShardOnlyHoldsItsOwnThreads() {
+        CountDownLatch release = new CountDownLatch(1);
+        List<SearchService> shards = new ArrayList<>();
+        for (List<Document> partition : ShardedSearchService.partition(documents(), 2)) {
+            shards.add(new InvertedIndexBasedSearch(partition));
+        }
+        shards.add(hungShard(release));
+
+        try (ShardedSearchService sharded = new ShardedSearchService(shards, 20, 2)) {
+            for (int query = 0; query < 20; query++) {
+                ShardedSearchService.Response response = sharded.search(SearchQuery.word("apple"));
+                assertEquals(List.of(2), response.missingShards());
+                assertEquals(50, ((Set<?>) response.result()).size());
+            }
+            assertEquals(20, sharded.partialResponseCount());
+            assertTrue(threadsNamed("shard-query-2") <= 2);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void aRemoteShardGivesUpAtTheDeadline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (SearchServer server = new SearchServer(hungShard(release), 0);
+             RemoteSearchService remote = new RemoteSearchService("localhost", server.port())) {
+            long start = System.nanoTime();
+            assertThrows(UncheckedIOException.class, () -> remote.execute(SearchQuery.word("apple"), 100));
+            assertTrue(System.nanoTime() - start < 5_000_000_000L, "gave up after the deadline, not after 30 s");
+            assertEquals(Set.of(), remote.searchPrefix("app"));
+        } finally {
+            release.countDown();
+        }
+    }
+}
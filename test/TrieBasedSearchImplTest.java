@@ -0,0 +1,25 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrieBasedSearchImplTest {
+
+    @Test
+    void resultsCannotChangeTheIndex() {
+        TrieBasedSearchImpl index = new TrieBasedSearchImpl(List.of(
+                new Document(1, "apple pie"), new Document(2, "apple tart")));
+
+        Set<Integer> word = index.searchWord("apple");
+        assertThrows(UnsupportedOperationException.class, () -> word.remove(1));
+        Set<Integer> prefix = index.searchPrefix("apple");
+        assertThrows(UnsupportedOperationException.class, () -> prefix.add(3));
+
+        assertEquals(Set.of(1, 2), index.searchWord("apple"));
+        assertEquals(Set.of(1, 2), index.searchPrefix("apple"));
+        assertEquals(Set.of(1), index.searchPhrase("apple pie"));
+    }
+}